@@ -0,0 +1,138 @@
+package nl.bertriksikken.pm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.pm.cayenne.TtnCayenneDecoder;
+import nl.bertriksikken.pm.cayenne.TtnCayenneMessage;
+import nl.bertriksikken.pm.json.JsonDecoder;
+import nl.bertriksikken.pm.json.JsonDecoderConfig;
+import nl.bertriksikken.pm.json.JsonDecoderItem;
+import nl.bertriksikken.pm.sps30.Sps30Decoder;
+import nl.bertriksikken.pm.sps30.Sps30Message;
+import nl.bertriksikken.pm.ttnulm.TtnUlmDecoder;
+import nl.bertriksikken.pm.ttnulm.TtnUlmMessage;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+import nl.bertriksikken.ttn.dto.Ttnv3UplinkParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the payload decoders, both the message parsing and the decoding into sensor data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadDecoderBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Ttnv3UplinkParser parser = new Ttnv3UplinkParser();
+
+    private final Sps30Decoder sps30Decoder = new Sps30Decoder();
+    private final TtnUlmDecoder ttnUlmDecoder = new TtnUlmDecoder();
+    private final TtnCayenneDecoder cayenneDecoder = new TtnCayenneDecoder();
+    private JsonDecoder jsonDecoder;
+
+    private TtnUplinkMessage sps30Uplink;
+    private TtnUplinkMessage ttnUlmUplink;
+    private TtnUplinkMessage cayenneUplink;
+    private byte[] cayennePayload;
+    private TtnUplinkMessage jsonUplink;
+
+    @Setup
+    public void setup() throws IOException {
+        // cayenne payload with several channels
+        cayenneUplink = parser.parse(readFixture("ttnv3_mqtt_message.json"));
+        cayennePayload = cayenneUplink.getRawPayload();
+
+        // SPS30 payload from a typical outdoor measurement
+        sps30Uplink = new TtnUplinkMessage("app", "device", "eui", sps30Payload(), null, Sps30Message.LORAWAN_PORT);
+
+        // noise payload
+        jsonUplink = parser.parse(readFixture("ttnv3_json_message.json"));
+        JsonDecoderConfig config = new JsonDecoderConfig();
+        config.add(new JsonDecoderItem("/la/avg", ESensorItem.NOISE_LA_EQ));
+        config.add(new JsonDecoderItem("/la/min", ESensorItem.NOISE_LA_MIN));
+        config.add(new JsonDecoderItem("/la/max", ESensorItem.NOISE_LA_MAX));
+        jsonDecoder = new JsonDecoder(config);
+
+        // TTN v2 message, only the raw payload is used
+        byte[] ttnUlmPayload = mapper.readTree(readFixture("ttn_ttnulm_message.json")).get("payload_raw")
+                .binaryValue();
+        ttnUlmUplink = new TtnUplinkMessage("app", "device", "eui", ttnUlmPayload, null, 1);
+    }
+
+    // mass in 0.1 ug/m3, counts in #/cm3 and the typical particle size in nm, all big-endian
+    private static byte[] sps30Payload() {
+        ByteBuffer bb = ByteBuffer.allocate(20);
+        bb.putShort((short) 123).putShort((short) 156).putShort((short) 172).putShort((short) 180);
+        bb.putShort((short) 85).putShort((short) 98).putShort((short) 100).putShort((short) 101).putShort((short) 101);
+        bb.putShort((short) 523);
+        return bb.array();
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        try (InputStream is = getClass().getResourceAsStream("/" + name)) {
+            return is.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public Sps30Message sps30Message() throws PayloadParseException {
+        return Sps30Message.parse(sps30Uplink.getPayload());
+    }
+
+    @Benchmark
+    public SensorData sps30Decoder() throws PayloadParseException {
+        SensorData data = new SensorData();
+        sps30Decoder.decode(sps30Uplink, data);
+        return data;
+    }
+
+    @Benchmark
+    public TtnUlmMessage ttnUlmMessage() throws PayloadParseException {
+        return TtnUlmMessage.parse(ttnUlmUplink.getPayload());
+    }
+
+    @Benchmark
+    public SensorData ttnUlmDecoder() throws PayloadParseException {
+        SensorData data = new SensorData();
+        ttnUlmDecoder.decode(ttnUlmUplink, data);
+        return data;
+    }
+
+    // the original cayenne path, building a message with all items
+    @Benchmark
+    public TtnCayenneMessage ttnCayenneMessage() throws PayloadParseException {
+        return TtnCayenneMessage.parse(cayennePayload);
+    }
+
+    @Benchmark
+    public SensorData ttnCayenneDecoder() throws PayloadParseException {
+        SensorData data = new SensorData();
+        cayenneDecoder.decode(cayenneUplink, data);
+        return data;
+    }
+
+    @Benchmark
+    public SensorData jsonDecoder() {
+        SensorData data = new SensorData();
+        jsonDecoder.decode(jsonUplink, data);
+        return data;
+    }
+
+}
@@ -0,0 +1,63 @@
+package nl.bertriksikken.pm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding and reading the items of a typical uplink: particulate matter, meteo and position.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorDataBenchmark {
+
+    private static final ESensorItem[] ITEMS = {ESensorItem.PM10, ESensorItem.PM2_5, ESensorItem.PM1_0,
+            ESensorItem.TEMPERATURE, ESensorItem.HUMIDITY, ESensorItem.PRESSURE, ESensorItem.GPS_LAT,
+            ESensorItem.GPS_LON};
+
+    private final double[] values = {12.3, 8.1, 4.5, 21.7, 56.2, 101325.0, 52.0212, 4.7089};
+    private final SensorData data = new SensorData();
+
+    @Setup
+    public void setup() {
+        put(data);
+    }
+
+    private void put(SensorData sensorData) {
+        for (int i = 0; i < ITEMS.length; i++) {
+            sensorData.putValue(ITEMS[i], values[i]);
+        }
+    }
+
+    @Benchmark
+    public SensorData put() {
+        SensorData sensorData = new SensorData();
+        put(sensorData);
+        return sensorData;
+    }
+
+    @Benchmark
+    public double get() {
+        double sum = 0.0;
+        for (ESensorItem item : ITEMS) {
+            if (data.hasValid(item)) {
+                sum += data.getDouble(item);
+            }
+        }
+        return sum;
+    }
+
+}
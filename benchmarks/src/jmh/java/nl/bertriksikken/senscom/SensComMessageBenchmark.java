@@ -0,0 +1,89 @@
+package nl.bertriksikken.senscom;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.SensorData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the sensor.community messages for an uplink, from sensor data to serialized JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensComMessageBenchmark {
+
+    private static final String SOFTWARE_VERSION = "sensor-data-bridge";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SensorData data = new SensorData();
+    private Map<ESensComPin, SensComMessage> messages;
+
+    @Setup
+    public void setup() {
+        // SPS30 with a BME280 and GPS, which uploads to pins 1, 9 and 11
+        data.putValue(ESensorItem.PM1_0, 4.5);
+        data.putValue(ESensorItem.PM2_5, 8.1);
+        data.putValue(ESensorItem.PM4_0, 10.4);
+        data.putValue(ESensorItem.PM10, 12.3);
+        data.putValue(ESensorItem.PM0_5_N, 31.0);
+        data.putValue(ESensorItem.PM1_0_N, 36.0);
+        data.putValue(ESensorItem.PM2_5_N, 37.0);
+        data.putValue(ESensorItem.PM4_0_N, 37.0);
+        data.putValue(ESensorItem.PM10_N, 37.0);
+        data.putValue(ESensorItem.PM_TPS, 0.512);
+        data.putValue(ESensorItem.TEMPERATURE, 21.75);
+        data.putValue(ESensorItem.HUMIDITY, 56.25);
+        data.putValue(ESensorItem.PRESSURE, 101325.0);
+        data.putValue(ESensorItem.GPS_LAT, 52.021234);
+        data.putValue(ESensorItem.GPS_LON, 4.708912);
+        data.putValue(ESensorItem.GPS_ALT, 3.2);
+        messages = SensComWorker.buildMessages(SOFTWARE_VERSION, data);
+    }
+
+    @Benchmark
+    public void format(Blackhole blackhole) {
+        blackhole.consume(ESensComItem.PM10.format(12.3));
+        blackhole.consume(ESensComItem.PM_TPS.format(0.512));
+        blackhole.consume(ESensComItem.GPS_LAT.format(52.021234));
+        blackhole.consume(ESensComItem.PRESSURE.format(101325.0));
+    }
+
+    @Benchmark
+    public Map<ESensComPin, SensComMessage> buildMessages() {
+        return SensComWorker.buildMessages(SOFTWARE_VERSION, data);
+    }
+
+    @Benchmark
+    public void serialize(Blackhole blackhole) throws JsonProcessingException {
+        for (SensComMessage message : messages.values()) {
+            blackhole.consume(mapper.writeValueAsBytes(message));
+        }
+    }
+
+    // building and serializing, as done for every uplink
+    @Benchmark
+    public void buildAndSerialize(Blackhole blackhole) throws JsonProcessingException {
+        for (SensComMessage message : SensComWorker.buildMessages(SOFTWARE_VERSION, data).values()) {
+            blackhole.consume(mapper.writeValueAsBytes(message));
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package nl.bertriksikken.ttn.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tree-based TTN v3 uplink parsing with the streaming parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Ttnv3UplinkParserBenchmark {
+
+    @Param({"ttnv3_mqtt_message.json", "ttnv3_json_message.json"})
+    public String fixture;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Ttnv3UplinkParser parser = new Ttnv3UplinkParser();
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream is = getClass().getResourceAsStream("/" + fixture)) {
+            json = is.readAllBytes();
+        }
+    }
+
+    // the original path: bytes to string, string to DTO tree, DTO tree to uplink message
+    @Benchmark
+    public TtnUplinkMessage treeParser() throws IOException {
+        String message = new String(json, StandardCharsets.US_ASCII);
+        return mapper.readValue(message, Ttnv3UplinkMessage.class).toTtnUplinkMessage();
+    }
+
+    @Benchmark
+    public TtnUplinkMessage streamingParser() throws IOException {
+        return parser.parse(json);
+    }
+
+}
@@ -6,11 +6,16 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Locale;
 
+import nl.sikken.bertrik.cayenne.formatter.GpsFormatter;
+
 /**
  * Representation of one measurement item in a cayenne message.
  */
 public final class CayenneItem {
 
+    // location format of the full scale GPS payload
+    static final GpsFormatter FULL_SCALE_GPS = GpsFormatter.fullScale();
+
     private final int channel;
     private final ECayenneItem type;
     private final Number[] values;
@@ -93,6 +98,23 @@ public final class CayenneItem {
         }
     }
 
+    /**
+     * Parses one location of a full scale GPS payload from the byte buffer and
+     * returns it as a GPS location item.
+     *
+     * @param bb      the byte buffer
+     * @param channel the channel to assign to the item
+     * @return a new cayenne item
+     * @throws CayenneException if an error occurs during parsing
+     */
+    public static CayenneItem parseFullScaleGps(ByteBuffer bb, int channel) throws CayenneException {
+        try {
+            return new CayenneItem(channel, ECayenneItem.GPS_LOCATION, FULL_SCALE_GPS.parse(bb));
+        } catch (BufferUnderflowException e) {
+            throw new CayenneException(e);
+        }
+    }
+
     @Override
     public String toString() {
         return String.format(Locale.ROOT, "{chan=%d,type=%s,value=%s}", channel, type, Arrays.toString(format()));
@@ -1,37 +1,59 @@
 package nl.sikken.bertrik.cayenne;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
- * A cayenne message containing cayenne data items.
+ * A cayenne message containing cayenne data items.<br>
+ * <br>
+ * Items are indexed by channel and by type as they are added, so lookups do
+ * not have to scan all items.
  */
 public final class CayenneMessage {
 
+    // number of items that fit in the index, positions are stored as unsigned byte
+    private static final int MAX_INDEXED = 255;
+    private static final int TYPE_COUNT = ECayenneItem.values().length;
+    private static final int MAX_LENGTH = Stream.of(ECayenneItem.values()).mapToInt(ECayenneItem::getLength).max()
+            .orElse(0);
+
     private final ECayennePayloadFormat format;
     private final List<CayenneItem> items = new ArrayList<>();
 
+    // position (plus one) of the first item for each channel and each type, 0 if there is none
+    private final byte[] channelIndex = new byte[256];
+    private final byte[] typeIndex = new byte[TYPE_COUNT];
+    // true if the index is not sufficient, because a channel occurs more than once or there are too many items
+    private boolean scanNeeded;
+
     public CayenneMessage() {
         this(ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD);
     }
 
     /**
      * @param format the payload format (e.g. parsed from the LoRaWAN port),
-     *               currently only DYNAMIC_SENSOR_PAYLOAD and PACKED_SENSOR_PAYLOAD
-     *               are supported.
+     *               currently only DYNAMIC_SENSOR_PAYLOAD, PACKED_SENSOR_PAYLOAD
+     *               and FULL_SCALE_GPS_PAYLOAD are supported.
      */
     public CayenneMessage(ECayennePayloadFormat format) {
+        checkFormat(format);
+        this.format = format;
+    }
+
+    private static void checkFormat(ECayennePayloadFormat format) {
         switch (format) {
             case DYNAMIC_SENSOR_PAYLOAD:
             case PACKED_SENSOR_PAYLOAD:
+            case FULL_SCALE_GPS_PAYLOAD:
                 break;
             default:
                 throw new IllegalArgumentException("Payload format not supported: " + format);
         }
-        this.format = format;
     }
 
     /**
@@ -41,7 +63,44 @@ public final class CayenneMessage {
      * @throws CayenneException in case of a parsing problem
      */
     public void parse(byte[] data) throws CayenneException {
-        ByteBuffer bb = ByteBuffer.wrap(data);
+        parse(ByteBuffer.wrap(data), format, this::add);
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer into a cayenne message, without copying them.
+     *
+     * @param bb the raw data
+     * @throws CayenneException in case of a parsing problem
+     */
+    public void parse(ByteBuffer bb) throws CayenneException {
+        parse(bb, format, this::add);
+    }
+
+    /**
+     * Parses the byte array, passing each item to the visitor as soon as it is
+     * decoded, without collecting the items in a message.
+     *
+     * @param data    the raw data
+     * @param format  the payload format, DYNAMIC_SENSOR_PAYLOAD, PACKED_SENSOR_PAYLOAD or FULL_SCALE_GPS_PAYLOAD
+     * @param visitor the visitor that receives the items
+     * @throws CayenneException in case of a parsing problem, items before the problem have already been visited
+     */
+    public static void parse(byte[] data, ECayennePayloadFormat format, ICayenneVisitor visitor)
+            throws CayenneException {
+        parse(ByteBuffer.wrap(data), format, visitor);
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer, passing each item to the visitor as soon as it is decoded.
+     *
+     * @param bb      the raw data
+     * @param format  the payload format, DYNAMIC_SENSOR_PAYLOAD, PACKED_SENSOR_PAYLOAD or FULL_SCALE_GPS_PAYLOAD
+     * @param visitor the visitor that receives the items
+     * @throws CayenneException in case of a parsing problem, items before the problem have already been visited
+     */
+    public static void parse(ByteBuffer bb, ECayennePayloadFormat format, ICayenneVisitor visitor)
+            throws CayenneException {
+        checkFormat(format);
         int channel = 0;
         while (bb.hasRemaining()) {
             CayenneItem item;
@@ -53,13 +112,71 @@ public final class CayenneMessage {
                     item = CayenneItem.parsePacked(bb, channel);
                     channel++;
                     break;
+                case FULL_SCALE_GPS_PAYLOAD:
+                    item = CayenneItem.parseFullScaleGps(bb, channel);
+                    channel++;
+                    break;
                 default:
                     throw new IllegalStateException("Unsupported cayenne payload: " + format);
             }
-            add(item);
+            visitor.visit(item);
         }
     }
 
+    /**
+     * Parses the byte array, passing the values of each item to the visitor as
+     * primitives, so no objects are allocated for each item or value.
+     *
+     * @param data    the raw data
+     * @param format  the payload format, DYNAMIC_SENSOR_PAYLOAD, PACKED_SENSOR_PAYLOAD or FULL_SCALE_GPS_PAYLOAD
+     * @param visitor the visitor that receives the values
+     * @throws CayenneException in case of a parsing problem, items before the problem have already been visited
+     */
+    public static void parseValues(byte[] data, ECayennePayloadFormat format, ICayenneValueVisitor visitor)
+            throws CayenneException {
+        parseValues(ByteBuffer.wrap(data), format, visitor);
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer, passing the values of each item to the visitor as primitives.
+     *
+     * @param bb      the raw data
+     * @param format  the payload format, DYNAMIC_SENSOR_PAYLOAD, PACKED_SENSOR_PAYLOAD or FULL_SCALE_GPS_PAYLOAD
+     * @param visitor the visitor that receives the values
+     * @throws CayenneException in case of a parsing problem, items before the problem have already been visited
+     */
+    public static void parseValues(ByteBuffer bb, ECayennePayloadFormat format, ICayenneValueVisitor visitor)
+            throws CayenneException {
+        checkFormat(format);
+        // one array for each number of values, reused for all items
+        double[][] buffers = new double[MAX_LENGTH + 1][];
+        int sequenceChannel = 0;
+        try {
+            while (bb.hasRemaining()) {
+                if (format == ECayennePayloadFormat.FULL_SCALE_GPS_PAYLOAD) {
+                    double[] values = buffer(buffers, ECayenneItem.GPS_LOCATION.getLength());
+                    CayenneItem.FULL_SCALE_GPS.parseInto(bb, values, 0);
+                    visitor.visit(sequenceChannel++, ECayenneItem.GPS_LOCATION, values);
+                    continue;
+                }
+                int channel = (format == ECayennePayloadFormat.PACKED_SENSOR_PAYLOAD) ? sequenceChannel++ : bb.get();
+                ECayenneItem type = ECayenneItem.parse(bb.get() & 0xFF);
+                double[] values = buffer(buffers, type.getLength());
+                type.parseInto(bb, values, 0);
+                visitor.visit(channel, type, values);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new CayenneException(e);
+        }
+    }
+
+    private static double[] buffer(double[][] buffers, int length) {
+        if (buffers[length] == null) {
+            buffers[length] = new double[length];
+        }
+        return buffers[length];
+    }
+
     /**
      * Adds a cayenne measurement item to the message.
      *
@@ -67,6 +184,26 @@ public final class CayenneMessage {
      */
     public void add(CayenneItem item) {
         items.add(item);
+        int position = items.size();
+        if (position > MAX_INDEXED) {
+            scanNeeded = true;
+            return;
+        }
+        int channel = item.getChannel() & 0xFF;
+        if (channelIndex[channel] == 0) {
+            channelIndex[channel] = (byte) position;
+        } else {
+            scanNeeded = true;
+        }
+        int type = item.getType().ordinal();
+        if (typeIndex[type] == 0) {
+            typeIndex[type] = (byte) position;
+        }
+    }
+
+    // returns the indexed item at the position stored in an index
+    private CayenneItem indexed(byte position) {
+        return (position != 0) ? items.get((position & 0xFF) - 1) : null;
     }
 
     /**
@@ -100,7 +237,16 @@ public final class CayenneMessage {
      * @return the item, or null if it does not exist
      */
     public CayenneItem find(ECayenneItem type, int channel) {
-        return items.stream().filter(i -> (i.getType() == type) && (i.getChannel() == channel)).findFirst().orElse(null);
+        if (!scanNeeded) {
+            CayenneItem item = indexed(channelIndex[channel & 0xFF]);
+            return ((item != null) && (item.getType() == type) && (item.getChannel() == channel)) ? item : null;
+        }
+        for (CayenneItem item : items) {
+            if ((item.getType() == type) && (item.getChannel() == channel)) {
+                return item;
+            }
+        }
+        return null;
     }
 
     /**
@@ -110,7 +256,16 @@ public final class CayenneMessage {
      * @return the item, or null if it does not exist
      */
     public CayenneItem ofType(ECayenneItem type) {
-        return items.stream().filter(i -> (i.getType() == type)).findFirst().orElse(null);
+        CayenneItem item = indexed(typeIndex[type.ordinal()]);
+        if ((item != null) || (items.size() <= MAX_INDEXED)) {
+            return item;
+        }
+        for (CayenneItem candidate : items) {
+            if (candidate.getType() == type) {
+                return candidate;
+            }
+        }
+        return null;
     }
 
     /**
@@ -120,7 +275,16 @@ public final class CayenneMessage {
      * @return the item, or null if it does not exist
      */
     public CayenneItem ofChannel(int channel) {
-        return items.stream().filter(i -> (i.getChannel() == channel)).findFirst().orElse(null);
+        if (!scanNeeded) {
+            CayenneItem item = indexed(channelIndex[channel & 0xFF]);
+            return ((item != null) && (item.getChannel() == channel)) ? item : null;
+        }
+        for (CayenneItem item : items) {
+            if (item.getChannel() == channel) {
+                return item;
+            }
+        }
+        return null;
     }
 
     @Override
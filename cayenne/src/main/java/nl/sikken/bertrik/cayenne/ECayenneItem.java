@@ -6,8 +6,6 @@ import nl.sikken.bertrik.cayenne.formatter.IFormatter;
 import nl.sikken.bertrik.cayenne.formatter.IntegerFormatter;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -18,23 +16,37 @@ public enum ECayenneItem {
     DIGITAL_OUTPUT(1, new IntegerFormatter(1, 1, false)), //
     ANALOG_INPUT(2, new FloatFormatter(1, 2, 0.01, true)), //
     ANALOG_OUTPUT(3, new FloatFormatter(1, 2, 0.01, true)), //
+    GENERIC_SENSOR(100, new IntegerFormatter(1, 4, false)), //
     ILLUMINANCE(101, new FloatFormatter(1, 2, 1.0, false)), //
     PRESENCE(102, new IntegerFormatter(1, 1, false)), //
     TEMPERATURE(103, new FloatFormatter(1, 2, 0.1, true)), //
     HUMIDITY(104, new FloatFormatter(1, 1, 0.5, false)), //
     ACCELEROMETER(113, new FloatFormatter(3, 2, 0.001, true)), //
     BAROMETER(115, new FloatFormatter(1, 2, 0.1, false)), //
+    VOLTAGE(116, new FloatFormatter(1, 2, 0.01, false)), // V
+    CURRENT(117, new FloatFormatter(1, 2, 0.001, false)), // A
+    FREQUENCY(118, new IntegerFormatter(1, 4, false)), // Hz
+    PERCENTAGE(120, new IntegerFormatter(1, 1, false)), // %
+    ALTITUDE(121, new IntegerFormatter(1, 2, true)), // m
+    CONCENTRATION(125, new IntegerFormatter(1, 2, false)), // ppm
+    POWER(128, new IntegerFormatter(1, 2, false)), // W
+    DISTANCE(130, new FloatFormatter(1, 4, 0.001, false)), // m
+    ENERGY(131, new FloatFormatter(1, 4, 0.001, false)), // kWh
+    DIRECTION(132, new IntegerFormatter(1, 2, false)), // degrees
+    UNIX_TIME(133, new IntegerFormatter(1, 4, false)), // seconds since 1970
     GYROMETER(134, new FloatFormatter(3, 2, 0.01, true)), //
+    COLOUR(135, new IntegerFormatter(3, 1, false)), // r, g, b
     GPS_LOCATION(136, new GpsFormatter()), //
+    SWITCH(142, new IntegerFormatter(1, 1, false)), //
     ;
 
     private final int type;
     private final IFormatter formatter;
 
-    // reverse lookup table
-    private static final Map<Integer, ECayenneItem> LOOKUP = new HashMap<>();
+    // reverse lookup table, indexed by type code
+    private static final ECayenneItem[] LOOKUP = new ECayenneItem[256];
     static {
-        Stream.of(values()).forEach((e) -> LOOKUP.put(e.getType(), e));
+        Stream.of(values()).forEach((e) -> LOOKUP[e.getType()] = e);
     }
 
     /**
@@ -52,10 +64,11 @@ public enum ECayenneItem {
      * Parses a type code into an enum.
      * 
      * @param type the type code
-     * @return the enum, or null if not found
+     * @return the enum
+     * @throws CayenneException if the type code is not known
      */
     public static ECayenneItem parse(int type) throws CayenneException {
-        ECayenneItem item = LOOKUP.get(type);
+        ECayenneItem item = ((type >= 0) && (type < LOOKUP.length)) ? LOOKUP[type] : null;
         if (item == null) {
             throw new CayenneException("Invalid cayenne type " + type);
         }
@@ -86,6 +99,24 @@ public enum ECayenneItem {
         return formatter.parse(bb);
     }
 
+    /**
+     * Parses the contents of the byte buffer into primitive values.
+     *
+     * @param bb     the byte buffer to parse from
+     * @param out    the array to store the values in
+     * @param offset the index in the array of the first value
+     */
+    public void parseInto(ByteBuffer bb, double[] out, int offset) {
+        formatter.parseInto(bb, out, offset);
+    }
+
+    /**
+     * @return the number of values of this type
+     */
+    public int getLength() {
+        return formatter.getLength();
+    }
+
     /**
      * Encodes an array of numerical values into a byte buffer.
      * 
@@ -18,6 +18,12 @@ public enum ECayennePayloadFormat {
 
     private final int port;
 
+    // lookup table by port
+    private static final ECayennePayloadFormat[] LOOKUP = new ECayennePayloadFormat[256];
+    static {
+        Stream.of(values()).forEach((e) -> LOOKUP[e.port] = e);
+    }
+
     ECayennePayloadFormat(int port) {
         this.port = port;
     }
@@ -26,8 +32,12 @@ public enum ECayennePayloadFormat {
         return port;
     }
 
-    static ECayennePayloadFormat fromPort(int port) {
-        return Stream.of(values()).filter(v -> v.port == port).findFirst().orElse(null);
+    /**
+     * @param port the LoRaWAN port
+     * @return the payload format for the port, or null if there is none
+     */
+    public static ECayennePayloadFormat fromPort(int port) {
+        return ((port >= 0) && (port < LOOKUP.length)) ? LOOKUP[port] : null;
     }
 
 }
@@ -0,0 +1,21 @@
+package nl.sikken.bertrik.cayenne;
+
+/**
+ * Receives the values of a cayenne message as primitives while it is being
+ * parsed.
+ */
+@FunctionalInterface
+public interface ICayenneValueVisitor {
+
+    /**
+     * Called for each item, in the order it appears in the raw data.
+     *
+     * @param channel the channel of the item
+     * @param type    the type of the item
+     * @param values  the values of the item, with the length of the type. The
+     *                array is reused for the next item, so it is only valid
+     *                during this call.
+     */
+    void visit(int channel, ECayenneItem type, double[] values);
+
+}
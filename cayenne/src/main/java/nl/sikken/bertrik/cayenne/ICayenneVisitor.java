@@ -0,0 +1,16 @@
+package nl.sikken.bertrik.cayenne;
+
+/**
+ * Receives the items of a cayenne message while it is being parsed.
+ */
+@FunctionalInterface
+public interface ICayenneVisitor {
+
+    /**
+     * Called for each item, in the order it appears in the raw data.
+     *
+     * @param item the parsed item
+     */
+    void visit(CayenneItem item);
+
+}
@@ -15,8 +15,8 @@ public abstract class BaseFormatter implements IFormatter {
      * @param signed whether it should be interpreted as signed value or not
      * @return the value
      */
-    protected int getValue(ByteBuffer bb, int n, boolean signed) {
-        int val = bb.get();
+    protected long getValue(ByteBuffer bb, int n, boolean signed) {
+        long val = bb.get();
         val = signed ? val : val & 0xFF;
         for (int i = 1; i < n; i++) {
             val <<= 8;
@@ -32,7 +32,7 @@ public abstract class BaseFormatter implements IFormatter {
      * @param n     the number of bytes to put
      * @param value the value to encode
      */
-    protected void putValue(ByteBuffer bb, int n, int value) {
+    protected void putValue(ByteBuffer bb, int n, long value) {
         int shift = (n - 1) * 8;
         for (int i = 0; i < n; i++) {
             byte b = (byte) ((value >> shift) & 0xFF);
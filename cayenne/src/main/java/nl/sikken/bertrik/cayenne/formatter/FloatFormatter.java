@@ -47,6 +47,18 @@ public final class FloatFormatter extends BaseFormatter {
         return values;
     }
 
+    @Override
+    public void parseInto(ByteBuffer bb, double[] out, int offset) {
+        for (int i = 0; i < length; i++) {
+            out[offset + i] = scale * getValue(bb, size, signed);
+        }
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public String[] format(Number[] values) {
         String[] formatted = new String[length];
@@ -59,7 +71,7 @@ public final class FloatFormatter extends BaseFormatter {
     @Override
     public void encode(ByteBuffer bb, Number[] values) {
         for (int i = 0; i < length; i++) {
-            putValue(bb, size, (int) Math.round(values[i].doubleValue() / scale));
+            putValue(bb, size, Math.round(values[i].doubleValue() / scale));
         }
     }
 
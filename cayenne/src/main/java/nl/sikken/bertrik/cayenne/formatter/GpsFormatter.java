@@ -9,29 +9,66 @@ import java.util.stream.Stream;
  */
 public final class GpsFormatter extends BaseFormatter {
 
-    private static final double LAT_LON_SCALE = 1E-4;
     private static final double ALT_SCALE = 1E-2;
 
+    private final int latLonSize;
+    private final double latLonScale;
+    private final String latLonFormat;
+
+    /**
+     * Constructor for the GPS location of the dynamic and packed payloads,
+     * latitude and longitude in 3 bytes with 0.0001 degree resolution.
+     */
+    public GpsFormatter() {
+        this(3, 1E-4, "%.4f");
+    }
+
+    private GpsFormatter(int latLonSize, double latLonScale, String latLonFormat) {
+        this.latLonSize = latLonSize;
+        this.latLonScale = latLonScale;
+        this.latLonFormat = latLonFormat;
+    }
+
+    /**
+     * @return formatter for the full scale GPS payload, latitude and longitude
+     *         in 4 bytes with 0.0000001 degree resolution
+     */
+    public static GpsFormatter fullScale() {
+        return new GpsFormatter(4, 1E-7, "%.7f");
+    }
+
     @Override
     public Double[] parse(ByteBuffer bb) {
-        double lat = LAT_LON_SCALE * getValue(bb, 3, true);
-        double lon = LAT_LON_SCALE * getValue(bb, 3, true);
+        double lat = latLonScale * getValue(bb, latLonSize, true);
+        double lon = latLonScale * getValue(bb, latLonSize, true);
         double alt = ALT_SCALE * getValue(bb, 3, true);
         return new Double[]{lat, lon, alt};
     }
 
+    @Override
+    public void parseInto(ByteBuffer bb, double[] out, int offset) {
+        out[offset] = latLonScale * getValue(bb, latLonSize, true);
+        out[offset + 1] = latLonScale * getValue(bb, latLonSize, true);
+        out[offset + 2] = ALT_SCALE * getValue(bb, 3, true);
+    }
+
+    @Override
+    public int getLength() {
+        return 3;
+    }
+
     @Override
     public String[] format(Number[] numbers) {
         double[] values = Stream.of(numbers).mapToDouble(Number::doubleValue).toArray();
-        return new String[]{String.format(Locale.ROOT, "%.4f", values[0]),
-                String.format(Locale.ROOT, "%.4f", values[1]), String.format(Locale.ROOT, "%.2f", values[2])};
+        return new String[]{String.format(Locale.ROOT, latLonFormat, values[0]),
+                String.format(Locale.ROOT, latLonFormat, values[1]), String.format(Locale.ROOT, "%.2f", values[2])};
     }
 
     @Override
     public void encode(ByteBuffer bb, Number[] values) {
-        putValue(bb, 3, (int) Math.round(values[0].doubleValue() / LAT_LON_SCALE));
-        putValue(bb, 3, (int) Math.round(values[1].doubleValue() / LAT_LON_SCALE));
-        putValue(bb, 3, (int) Math.round(values[2].doubleValue() / ALT_SCALE));
+        putValue(bb, latLonSize, Math.round(values[0].doubleValue() / latLonScale));
+        putValue(bb, latLonSize, Math.round(values[1].doubleValue() / latLonScale));
+        putValue(bb, 3, Math.round(values[2].doubleValue() / ALT_SCALE));
     }
 
 }
@@ -19,6 +19,20 @@ public interface IFormatter {
      */
     Number[] parse(ByteBuffer bb);
 
+    /**
+     * Parses raw data into primitive doubles, without allocating.
+     *
+     * @param bb     the byte buffer
+     * @param out    the array to store the values in
+     * @param offset the index in the array of the first value
+     */
+    void parseInto(ByteBuffer bb, double[] out, int offset);
+
+    /**
+     * @return the number of values of the data, e.g. 3 for a GPS location
+     */
+    int getLength();
+
     /**
      * Formats the data into an array of strings. For example, for a GPS location it
      * outputs: latitude in [0], longitude in [1], altitude in [2].
@@ -24,18 +24,31 @@ public final class IntegerFormatter extends BaseFormatter {
 
     @Override
     public Number[] parse(ByteBuffer bb) {
-        Integer[] values = new Integer[length];
+        // 4-byte unsigned values do not fit in an int
+        Long[] values = new Long[length];
         for (int i = 0; i < length; i++) {
             values[i] = getValue(bb, size, signed);
         }
         return values;
     }
 
+    @Override
+    public void parseInto(ByteBuffer bb, double[] out, int offset) {
+        for (int i = 0; i < length; i++) {
+            out[offset + i] = getValue(bb, size, signed);
+        }
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public String[] format(Number[] values) {
         String[] formatted = new String[length];
         for (int i = 0; i < length; i++) {
-            formatted[i] = String.format(Locale.ROOT, "%d", values[i].intValue());
+            formatted[i] = String.format(Locale.ROOT, "%d", values[i].longValue());
         }
         return formatted;
     }
@@ -43,7 +56,7 @@ public final class IntegerFormatter extends BaseFormatter {
     @Override
     public void encode(ByteBuffer bb, Number[] values) {
         for (int i = 0; i < length; i++) {
-            putValue(bb, size, values[i].intValue());
+            putValue(bb, size, values[i].longValue());
         }
     }
 
@@ -5,7 +5,11 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * Unit tests for CayenneMessage.
@@ -249,4 +253,139 @@ public final class CayenneMessageTest {
         Assertions.assertEquals(25.5, message.ofChannel(1).getValue().doubleValue(), 0.01);
     }
 
+    /**
+     * Verifies lookups by type and channel, also when a channel occurs more than once.
+     */
+    @Test
+    public void testLookup() {
+        CayenneMessage message = new CayenneMessage();
+        message.add(new CayenneItem(1, ECayenneItem.ANALOG_INPUT, 1.0));
+        message.add(new CayenneItem(2, ECayenneItem.TEMPERATURE, 20.0));
+        message.add(new CayenneItem(3, ECayenneItem.TEMPERATURE, 21.0));
+
+        Assertions.assertEquals(1.0, message.find(ECayenneItem.ANALOG_INPUT, 1).getValue());
+        Assertions.assertNull(message.find(ECayenneItem.TEMPERATURE, 1));
+        Assertions.assertEquals(20.0, message.ofType(ECayenneItem.TEMPERATURE).getValue());
+        Assertions.assertNull(message.ofType(ECayenneItem.HUMIDITY));
+        Assertions.assertEquals(21.0, message.ofChannel(3).getValue());
+        Assertions.assertNull(message.ofChannel(4));
+        // channel 257 shares an index slot with channel 1
+        Assertions.assertNull(message.ofChannel(257));
+
+        // same channel, other type
+        message.add(new CayenneItem(1, ECayenneItem.HUMIDITY, 50.0));
+        message.add(new CayenneItem(257, ECayenneItem.HUMIDITY, 60.0));
+        Assertions.assertEquals(1.0, message.ofChannel(1).getValue());
+        Assertions.assertEquals(50.0, message.find(ECayenneItem.HUMIDITY, 1).getValue());
+        Assertions.assertEquals(60.0, message.find(ECayenneItem.HUMIDITY, 257).getValue());
+    }
+
+    /**
+     * Verifies lookups in a message with more items than fit in the index.
+     */
+    @Test
+    public void testLookupManyItems() {
+        CayenneMessage message = new CayenneMessage();
+        for (int i = 0; i < 300; i++) {
+            message.add(new CayenneItem(i, ECayenneItem.DIGITAL_INPUT, i % 2));
+        }
+        message.add(new CayenneItem(300, ECayenneItem.PRESENCE, 1));
+
+        Assertions.assertEquals(299, message.ofChannel(299).getChannel());
+        Assertions.assertEquals(300, message.ofType(ECayenneItem.PRESENCE).getChannel());
+        Assertions.assertNotNull(message.find(ECayenneItem.DIGITAL_INPUT, 280));
+    }
+
+    /**
+     * Verifies that the visitor receives the items in order.
+     */
+    @Test
+    public void testVisitor() throws CayenneException {
+        byte[] data = {0x03, 0x67, 0x01, 0x10, 0x05, 0x67, 0x00, (byte) 0xFF};
+        List<CayenneItem> items = new ArrayList<>();
+        CayenneMessage.parse(data, ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, items::add);
+
+        Assertions.assertEquals(2, items.size());
+        Assertions.assertEquals(3, items.get(0).getChannel());
+        Assertions.assertEquals(25.5, items.get(1).getValue().doubleValue(), 0.01);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> CayenneMessage.parse(data, ECayennePayloadFormat.ACTUATOR_COMMANDS, items::add));
+    }
+
+    /**
+     * Verifies that the primitive values match the values of the parsed items.
+     */
+    @Test
+    public void testParseValues() throws CayenneException {
+        byte[] data = {0x01, 0x67, (byte) 0xFF, (byte) 0xD7, 0x06, 0x71, 0x04, (byte) 0xD2, (byte) 0xFB, 0x2E, 0x00,
+                0x00, 0x07, (byte) 0x88, 0x06, 0x076, 0x5f, (byte) 0xf2, (byte) 0x96, 0x0a, 0x00, 0x03, (byte) 0xe8,
+                0x08, 0x00, 0x01};
+        CayenneMessage message = new CayenneMessage();
+        message.parse(data);
+        List<CayenneItem> items = message.getItems();
+
+        List<double[]> values = new ArrayList<>();
+        List<Integer> channels = new ArrayList<>();
+        CayenneMessage.parseValues(data, ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, (channel, type, v) -> {
+            Assertions.assertEquals(type.getLength(), v.length);
+            channels.add(channel);
+            values.add(v.clone());
+        });
+
+        Assertions.assertEquals(items.size(), values.size());
+        for (int i = 0; i < items.size(); i++) {
+            CayenneItem item = items.get(i);
+            Assertions.assertEquals(item.getChannel(), channels.get(i).intValue());
+            double[] expected = Arrays.stream(item.getValues()).mapToDouble(Number::doubleValue).toArray();
+            Assertions.assertArrayEquals(expected, values.get(i), 1E-9);
+        }
+        Assertions.assertThrows(CayenneException.class, () -> CayenneMessage.parseValues(new byte[]{0x01, 0x67},
+                ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, (channel, type, v) -> {
+                }));
+    }
+
+    /**
+     * Verifies decoding of the full scale GPS payload.
+     */
+    @Test
+    public void testFullScaleGps() throws CayenneException {
+        byte[] data = {31, 17, 104, -121, -3, 40, -38, 79, 0, 4, -46};
+        CayenneMessage message = new CayenneMessage(ECayennePayloadFormat.FULL_SCALE_GPS_PAYLOAD);
+        message.parse(data);
+
+        CayenneItem item = message.ofType(ECayenneItem.GPS_LOCATION);
+        Assertions.assertEquals(0, item.getChannel());
+        Assertions.assertEquals(52.1234567, item.getValues()[0].doubleValue(), 1E-9);
+        Assertions.assertEquals(-4.7654321, item.getValues()[1].doubleValue(), 1E-9);
+        Assertions.assertEquals(12.34, item.getValues()[2].doubleValue(), 1E-9);
+
+        double[] values = new double[3];
+        CayenneMessage.parseValues(data, ECayennePayloadFormat.FULL_SCALE_GPS_PAYLOAD,
+                (channel, type, v) -> System.arraycopy(v, 0, values, 0, 3));
+        Assertions.assertEquals(52.1234567, values[0], 1E-9);
+
+        Assertions.assertThrows(CayenneException.class,
+                () -> new CayenneMessage(ECayennePayloadFormat.FULL_SCALE_GPS_PAYLOAD).parse(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testFromPort() {
+        Assertions.assertEquals(ECayennePayloadFormat.PACKED_SENSOR_PAYLOAD, ECayennePayloadFormat.fromPort(2));
+        Assertions.assertEquals(ECayennePayloadFormat.FULL_SCALE_GPS_PAYLOAD, ECayennePayloadFormat.fromPort(3));
+        Assertions.assertNull(ECayennePayloadFormat.fromPort(4));
+        Assertions.assertNull(ECayennePayloadFormat.fromPort(256));
+    }
+
+    /**
+     * Verifies parsing from a part of a larger buffer.
+     */
+    @Test
+    public void testParseBuffer() throws CayenneException {
+        byte[] data = {(byte) 0xAA, (byte) 0xBB, 0x03, 0x67, 0x01, 0x10};
+        CayenneMessage message = new CayenneMessage();
+        message.parse(ByteBuffer.wrap(data, 2, 4));
+
+        Assertions.assertArrayEquals(new String[]{"27.2"}, message.ofChannel(3).format());
+    }
+
 }
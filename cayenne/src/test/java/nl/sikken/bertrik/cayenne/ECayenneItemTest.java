@@ -0,0 +1,63 @@
+package nl.sikken.bertrik.cayenne;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Unit tests for ECayenneItem.
+ */
+public final class ECayenneItemTest {
+
+    private static final byte[] PATTERN = {(byte) 0x92, 0x34, 0x56, 0x78, (byte) 0x9A, (byte) 0xBC, (byte) 0xDE, 0x12,
+            0x34, 0x56};
+
+    /**
+     * Verifies that every type decodes raw data and encodes it back into the same bytes.
+     */
+    @Test
+    public void testRoundTripAllTypes() throws CayenneException {
+        for (ECayenneItem type : ECayenneItem.values()) {
+            Assertions.assertSame(type, ECayenneItem.parse(type.getType()));
+
+            ByteBuffer bb = ByteBuffer.wrap(PATTERN);
+            Number[] values = type.parse(bb);
+            byte[] raw = Arrays.copyOf(PATTERN, bb.position());
+            Assertions.assertEquals(type.getLength(), values.length, type.name());
+
+            ByteBuffer encoded = ByteBuffer.allocate(PATTERN.length);
+            type.encode(encoded, values);
+            Assertions.assertArrayEquals(raw, Arrays.copyOf(encoded.array(), encoded.position()), type.name());
+
+            double[] primitives = new double[type.getLength()];
+            type.parseInto(ByteBuffer.wrap(PATTERN), primitives, 0);
+            for (int i = 0; i < values.length; i++) {
+                Assertions.assertEquals(values[i].doubleValue(), primitives[i], 1E-9, type.name());
+            }
+        }
+    }
+
+    /**
+     * Verifies that 4-byte unsigned values above the int range are decoded correctly.
+     */
+    @Test
+    public void testUnsigned32() throws CayenneException {
+        CayenneMessage message = new CayenneMessage();
+        message.parse(new byte[]{1, (byte) 133, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE});
+
+        CayenneItem item = message.ofChannel(1);
+        Assertions.assertEquals(ECayenneItem.UNIX_TIME, item.getType());
+        Assertions.assertEquals(0xFFFFFFFEL, item.getValue().longValue());
+        Assertions.assertEquals("4294967294", item.format()[0]);
+    }
+
+    @Test
+    public void testUnknownType() {
+        Assertions.assertThrows(CayenneException.class, () -> ECayenneItem.parse(99));
+        Assertions.assertThrows(CayenneException.class, () -> ECayenneItem.parse(256));
+        Assertions.assertThrows(CayenneException.class, () -> ECayenneItem.parse(-1));
+    }
+
+}
@@ -0,0 +1,118 @@
+package nl.bertriksikken.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import nl.bertriksikken.loraforwarder.EPayloadEncoding;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Payload encodings of the simulated devices, each one is a separate TTN application.
+ */
+enum ELoadEncoding {
+
+    // PM10, PM2.5, temperature, humidity and pressure, like the TTN v3 test message
+    CAYENNE("cayenne", EPayloadEncoding.CAYENNE, 1),
+    // SPS30 payloads are decoded by port, whatever the application encoding
+    SPS30("sps30", EPayloadEncoding.CAYENNE, 30),
+    TTN_ULM("ttnulm", EPayloadEncoding.TTN_ULM, 1),
+    // temperature and humidity in the decoded payload
+    JSON("json", EPayloadEncoding.JSON, 1);
+
+    private final String id;
+    private final EPayloadEncoding encoding;
+    private final int port;
+
+    ELoadEncoding(String id, EPayloadEncoding encoding, int port) {
+        this.id = id;
+        this.encoding = encoding;
+        this.port = port;
+    }
+
+    static ELoadEncoding fromId(String id) {
+        for (ELoadEncoding encoding : values()) {
+            if (encoding.id.equals(id)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    EPayloadEncoding getEncoding() {
+        return encoding;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the decoder properties of the application
+     */
+    JsonNode getDecoderProperties() {
+        if (this != JSON) {
+            return TextNode.valueOf("");
+        }
+        ArrayNode properties = JsonNodeFactory.instance.arrayNode();
+        properties.addObject().put("path", "/temp").put("item", "TEMPERATURE");
+        properties.addObject().put("path", "/rh").put("item", "HUMIDITY");
+        return properties;
+    }
+
+    /**
+     * Encodes a raw payload, the values vary a little with the counter.
+     */
+    byte[] encode(int counter) {
+        int variation = counter % 10;
+        ByteBuffer bb;
+        switch (this) {
+            case CAYENNE:
+                bb = ByteBuffer.allocate(19);
+                bb.put((byte) 1).put((byte) 2).putShort((short) (1126 + variation));
+                bb.put((byte) 2).put((byte) 2).putShort((short) (411 + variation));
+                bb.put((byte) 3).put((byte) 0x67).putShort((short) (246 + variation));
+                bb.put((byte) 4).put((byte) 0x68).put((byte) (66 + variation));
+                bb.put((byte) 5).put((byte) 0x73).putShort((short) (10144 + variation));
+                break;
+            case SPS30:
+                bb = ByteBuffer.allocate(20);
+                for (int i = 0; i < 10; i++) {
+                    bb.putShort((short) (100 + 10 * i + variation));
+                }
+                break;
+            case TTN_ULM:
+                bb = ByteBuffer.allocate(8);
+                bb.putShort((short) (1200 + variation)).putShort((short) (800 + variation));
+                bb.putShort((short) (5500 + variation)).putShort((short) (2100 + variation));
+                break;
+            case JSON:
+            default:
+                bb = ByteBuffer.allocate(1);
+                bb.put((byte) variation);
+                break;
+        }
+        return bb.array();
+    }
+
+    /**
+     * @return the decoded payload, as TTN would decode it with a payload formatter, null if none
+     */
+    ObjectNode decode(int counter) {
+        if (this != JSON) {
+            return null;
+        }
+        int variation = counter % 10;
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("temp", 21.0 + variation / 10.0);
+        node.put("rh", 55.0 + variation);
+        return node;
+    }
+
+}
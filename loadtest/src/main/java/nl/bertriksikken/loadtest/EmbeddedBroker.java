@@ -0,0 +1,50 @@
+package nl.bertriksikken.loadtest;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * In-process MQTT broker on a free local port, standing in for the TTN MQTT server.<br>
+ * It accepts any user name and password and keeps no state on disk.
+ */
+final class EmbeddedBroker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedBroker.class);
+
+    private final Server server = new Server();
+    private final int port;
+
+    EmbeddedBroker() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+    }
+
+    void start() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", Integer.toString(port));
+        properties.setProperty("websocket_port", "disabled");
+        properties.setProperty("allow_anonymous", "true");
+        properties.setProperty("persistence_enabled", "false");
+        properties.setProperty("telemetry_enabled", "false");
+        server.startServer(new MemoryConfig(properties));
+        LOG.info("Started MQTT broker at {}", getUrl());
+    }
+
+    void stop() {
+        server.stopServer();
+    }
+
+    String getUrl() {
+        return String.format(Locale.ROOT, "tcp://127.0.0.1:%d", port);
+    }
+
+}
@@ -0,0 +1,115 @@
+package nl.bertriksikken.loadtest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the end-to-end latency from publishing an uplink on MQTT to the upload arriving at a mock endpoint.<br>
+ * <br>
+ * Each device has at most one uplink in flight at any reasonable load, so an upload is matched to the most recent
+ * uplink of its device. Latencies are counted in buckets of one millisecond, so recording does not allocate and
+ * percentiles are exact to the millisecond.
+ */
+final class LatencyRecorder {
+
+    private static final int MAX_MILLIS = 60_000;
+
+    // publish time of the most recent uplink of each device, by device id
+    private final Map<String, Long> publishNanos = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder unmatched = new LongAdder();
+    // the last bucket counts all latencies of at least MAX_MILLIS
+    private volatile AtomicLongArray buckets = new AtomicLongArray(MAX_MILLIS + 1);
+
+    void published(String deviceId, long nanos) {
+        publishNanos.put(deviceId, nanos);
+        published.increment();
+    }
+
+    void uploaded(String deviceId) {
+        Long start = (deviceId != null) ? publishNanos.get(deviceId) : null;
+        if (start == null) {
+            unmatched.increment();
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000L;
+        buckets.incrementAndGet((int) Math.min(millis, MAX_MILLIS));
+        uploads.increment();
+    }
+
+    /**
+     * Returns the counts recorded since the previous snapshot, and starts counting from zero. An upload recorded
+     * while the snapshot is taken may be missed, which is negligible for a report.
+     */
+    Snapshot snapshot() {
+        AtomicLongArray previous = buckets;
+        buckets = new AtomicLongArray(MAX_MILLIS + 1);
+        return new Snapshot(published.sumThenReset(), uploads.sumThenReset(), unmatched.sumThenReset(), previous);
+    }
+
+    /**
+     * Counts recorded in one interval.
+     */
+    static final class Snapshot {
+        private final long published;
+        private final long uploads;
+        private final long unmatched;
+        private final long[] counts = new long[MAX_MILLIS + 1];
+
+        private Snapshot(long published, long uploads, long unmatched, AtomicLongArray buckets) {
+            this.published = published;
+            this.uploads = uploads;
+            this.unmatched = unmatched;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+        }
+
+        // combines two snapshots, e.g. to summarize the whole measurement
+        Snapshot plus(Snapshot other) {
+            AtomicLongArray sum = new AtomicLongArray(counts.length);
+            for (int i = 0; i < counts.length; i++) {
+                sum.set(i, counts[i] + other.counts[i]);
+            }
+            return new Snapshot(published + other.published, uploads + other.uploads, unmatched + other.unmatched,
+                    sum);
+        }
+
+        long getPublished() {
+            return published;
+        }
+
+        long getUploads() {
+            return uploads;
+        }
+
+        long getUnmatched() {
+            return unmatched;
+        }
+
+        /**
+         * @param fraction the fraction, e.g. 0.99 for the 99th percentile
+         * @return the latency in milliseconds, -1 if nothing was recorded
+         */
+        long percentile(double fraction) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if ((seen >= rank) && (seen > 0)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
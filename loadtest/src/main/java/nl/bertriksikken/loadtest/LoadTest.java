@@ -0,0 +1,202 @@
+package nl.bertriksikken.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import nl.bertriksikken.loraforwarder.SensorDataBridge;
+import nl.bertriksikken.loraforwarder.SensorDataBridgeConfig;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test of the sensor-data-bridge.<br>
+ * <br>
+ * Runs the bridge against an embedded MQTT broker and mock sensor.community,
+ * openSenseMap and TTN identity server endpoints, all in this process. Synthetic
+ * TTN v3 uplinks are published for a number of devices at a fixed rate, and the
+ * throughput, the latency from publishing an uplink to its upload arriving at a
+ * mock endpoint, the heap usage and the garbage collections are reported.
+ */
+public final class LoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTest.class);
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final LoadTestConfig config;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    LoadTest(LoadTestConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // the bridge logs every uplink, which would dominate the measurement
+        BasicConfigurator.configure();
+        org.apache.log4j.Logger.getRootLogger().setLevel(Level.WARN);
+        org.apache.log4j.Logger.getLogger(LoadTest.class.getPackageName()).setLevel(Level.INFO);
+
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        new LoadTest(config).run();
+    }
+
+    private void run() throws IOException, MqttException, InterruptedException {
+        LOG.info("Running load test {}", config);
+        List<UplinkGenerator.Device> devices = createDevices();
+        Map<String, List<String>> devicesByApp = new LinkedHashMap<>();
+        devices.forEach(device -> devicesByApp.computeIfAbsent(device.getAppId(), app -> new ArrayList<>())
+                .add(device.getDeviceId()));
+
+        EmbeddedBroker broker = new EmbeddedBroker();
+        MockHttpServer sensCom = MockHttpServer.sensCom(recorder);
+        MockHttpServer openSense = MockHttpServer.openSense(recorder);
+        MockHttpServer identityServer = MockHttpServer.identityServer(devicesByApp);
+        Path spoolDir = Files.createTempDirectory("loadtest-spool");
+        SensorDataBridge bridge = null;
+        UplinkGenerator generator = null;
+        try {
+            broker.start();
+            sensCom.start();
+            openSense.start();
+            identityServer.start();
+
+            SensorDataBridgeConfig bridgeConfig = createBridgeConfig(broker.getUrl(), identityServer.getUrl(),
+                    sensCom.getUrl(), openSense.getUrl(), spoolDir);
+            bridge = new SensorDataBridge(bridgeConfig);
+            bridge.start();
+
+            generator = new UplinkGenerator(broker.getUrl(), devices, config.getRate(), recorder);
+            generator.start();
+
+            measure();
+            LOG.info("Uplinks that could not be published: {}", generator.getFailed());
+        } finally {
+            if (generator != null) {
+                generator.stop();
+            }
+            if (bridge != null) {
+                bridge.stop();
+            }
+            identityServer.stop();
+            openSense.stop();
+            sensCom.stop();
+            broker.stop();
+            deleteRecursively(spoolDir);
+        }
+    }
+
+    private List<UplinkGenerator.Device> createDevices() {
+        List<ELoadEncoding> encodings = config.getEncodings();
+        List<UplinkGenerator.Device> devices = new ArrayList<>();
+        for (int i = 0; i < config.getDevices(); i++) {
+            ELoadEncoding encoding = encodings.get(i % encodings.size());
+            String appId = "loadtest-" + encoding.getId();
+            String deviceId = String.format(Locale.ROOT, "%s-%06d", encoding.getId(), i);
+            devices.add(new UplinkGenerator.Device(appId, deviceId, i, encoding));
+        }
+        return devices;
+    }
+
+    // creates the bridge configuration, with one application for each encoding
+    private SensorDataBridgeConfig createBridgeConfig(String mqttUrl, String identityServerUrl, String sensComUrl,
+            String openSenseUrl, Path spoolDir) throws IOException {
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode ttn = root.putObject("ttn");
+        ttn.put("mqtt_url", mqttUrl);
+        ttn.put("identity_server_url", identityServerUrl);
+        ArrayNode apps = ttn.putArray("apps");
+        for (ELoadEncoding encoding : config.getEncodings()) {
+            ObjectNode app = apps.addObject();
+            app.put("name", "loadtest-" + encoding.getId());
+            app.put("key", "secret");
+            ObjectNode decoder = app.putObject("decoder");
+            decoder.put("encoding", encoding.getEncoding().name());
+            decoder.set("properties", encoding.getDecoderProperties());
+        }
+        root.putObject("senscom").put("url", sensComUrl);
+        root.putObject("opensense").put("url", openSenseUrl);
+        root.putObject("spool").put("path", spoolDir.toString());
+        root.putObject("geolocation").put("url", identityServerUrl);
+        root.putObject("metrics").put("port", 0);
+        return mapper.treeToValue(root, SensorDataBridgeConfig.class);
+    }
+
+    private void measure() throws InterruptedException {
+        LOG.info("Warming up for {}", config.getWarmup());
+        Thread.sleep(config.getWarmup().toMillis());
+        recorder.snapshot();
+
+        LatencyRecorder.Snapshot total = null;
+        long intervalMillis = config.getReportInterval().toMillis();
+        long remainingMillis = config.getDuration().toMillis();
+        long startNanos = System.nanoTime();
+        long previousNanos = startNanos;
+        GcStats startGc = GcStats.now();
+        GcStats previousGc = startGc;
+        while (remainingMillis > 0) {
+            Thread.sleep(Math.min(intervalMillis, remainingMillis));
+            long now = System.nanoTime();
+            GcStats gc = GcStats.now();
+            LatencyRecorder.Snapshot snapshot = recorder.snapshot();
+            report("Interval", snapshot, (now - previousNanos) / 1E9, gc.minus(previousGc));
+            total = (total == null) ? snapshot : total.plus(snapshot);
+            remainingMillis -= intervalMillis;
+            previousNanos = now;
+            previousGc = gc;
+        }
+        report("Total", total, (previousNanos - startNanos) / 1E9, previousGc.minus(startGc));
+    }
+
+    private static void report(String label, LatencyRecorder.Snapshot snapshot, double seconds, GcStats gc) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        LOG.info(String.format(Locale.ROOT,
+                "%s: %.1f uplinks/s, %.1f uploads/s (%d unmatched), latency p50 %d ms, p99 %d ms, max %d ms, "
+                        + "heap %.1f/%.1f MB, %d GCs (%d ms)",
+                label, snapshot.getPublished() / seconds, snapshot.getUploads() / seconds, snapshot.getUnmatched(),
+                snapshot.percentile(0.5), snapshot.percentile(0.99), snapshot.percentile(1.0), heap.getUsed() / MB,
+                heap.getCommitted() / MB, gc.count(), gc.millis()));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // number of garbage collections and their total duration, of all collectors
+    private record GcStats(long count, long millis) {
+        static GcStats now() {
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, bean.getCollectionCount());
+                millis += Math.max(0, bean.getCollectionTime());
+            }
+            return new GcStats(count, millis);
+        }
+
+        GcStats minus(GcStats other) {
+            return new GcStats(count - other.count, millis - other.millis);
+        }
+    }
+
+}
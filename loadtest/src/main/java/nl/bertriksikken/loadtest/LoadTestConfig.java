@@ -0,0 +1,115 @@
+package nl.bertriksikken.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Load test configuration, from command line arguments like "--devices 1000 --rate 200".
+ */
+final class LoadTestConfig {
+
+    // number of simulated devices, spread evenly over the encodings
+    private int devices = 1000;
+
+    // total number of uplinks per second, over all devices
+    private double rate = 100.0;
+
+    // time before the measurement starts, so device attributes are synchronized and the JVM is warmed up (seconds)
+    private int warmup = 15;
+
+    // duration of the measurement (seconds)
+    private int duration = 60;
+
+    // interval between intermediate reports (seconds)
+    private int reportInterval = 10;
+
+    // payload encodings, one TTN application each
+    private List<ELoadEncoding> encodings = List.of(ELoadEncoding.values());
+
+    /**
+     * Parses the command line arguments, options not given keep their default.
+     *
+     * @throws IllegalArgumentException in case of an unknown option or an invalid value
+     */
+    static LoadTestConfig parse(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--devices":
+                    config.devices = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    config.rate = Double.parseDouble(value);
+                    break;
+                case "--warmup":
+                    config.warmup = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    config.duration = Integer.parseInt(value);
+                    break;
+                case "--report-interval":
+                    config.reportInterval = Integer.parseInt(value);
+                    break;
+                case "--encodings":
+                    config.encodings = parseEncodings(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if ((config.devices < config.encodings.size()) || (config.rate <= 0) || (config.duration <= 0)
+                || (config.reportInterval <= 0)) {
+            throw new IllegalArgumentException("Invalid load test configuration: " + config);
+        }
+        return config;
+    }
+
+    private static List<ELoadEncoding> parseEncodings(String value) {
+        List<ELoadEncoding> list = new ArrayList<>();
+        for (String id : value.split(",", -1)) {
+            ELoadEncoding encoding = ELoadEncoding.fromId(id.trim());
+            if (encoding == null) {
+                throw new IllegalArgumentException("Unknown encoding " + id);
+            }
+            list.add(encoding);
+        }
+        return List.copyOf(list);
+    }
+
+    int getDevices() {
+        return devices;
+    }
+
+    double getRate() {
+        return rate;
+    }
+
+    Duration getWarmup() {
+        return Duration.ofSeconds(warmup);
+    }
+
+    Duration getDuration() {
+        return Duration.ofSeconds(duration);
+    }
+
+    Duration getReportInterval() {
+        return Duration.ofSeconds(reportInterval);
+    }
+
+    List<ELoadEncoding> getEncodings() {
+        return encodings;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "{devices=%d,rate=%.1f/s,warmup=%ds,duration=%ds,encodings=%s}", devices,
+                rate, warmup, duration, encodings);
+    }
+
+}
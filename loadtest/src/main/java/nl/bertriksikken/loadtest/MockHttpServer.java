@@ -0,0 +1,168 @@
+package nl.bertriksikken.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Mock HTTP server on a free local port, standing in for one of the REST APIs used by the bridge.
+ */
+final class MockHttpServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MockHttpServer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int THREADS = 8;
+
+    private final String name;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    private MockHttpServer(String name) throws IOException {
+        this.name = name;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Creates a mock sensor.community API, that accepts all uploads.
+     */
+    static MockHttpServer sensCom(LatencyRecorder recorder) throws IOException {
+        MockHttpServer mock = new MockHttpServer("sensor.community");
+        mock.server.createContext("/v1/push-sensor-data/", exchange -> {
+            drain(exchange);
+            recorder.uploaded(exchange.getRequestHeaders().getFirst("X-Sensor"));
+            respond(exchange, 201, "text/plain", "OK");
+        });
+        return mock;
+    }
+
+    /**
+     * Creates a mock openSenseMap API, that accepts all uploads and has boxes without sensors.
+     */
+    static MockHttpServer openSense(LatencyRecorder recorder) throws IOException {
+        MockHttpServer mock = new MockHttpServer("opensensemap");
+        mock.server.createContext("/boxes/", exchange -> {
+            // path is /boxes/{boxid} or /boxes/{boxid}/data
+            String[] parts = exchange.getRequestURI().getPath().split("/", -1);
+            String boxId = (parts.length > 2) ? parts[2] : "";
+            drain(exchange);
+            if ("POST".equals(exchange.getRequestMethod())) {
+                recorder.uploaded(boxId);
+                respond(exchange, 201, "text/plain", "Measurements saved in box");
+            } else {
+                ObjectNode box = MAPPER.createObjectNode().put("name", boxId);
+                box.putArray("sensors");
+                respond(exchange, 200, "application/json", MAPPER.writeValueAsString(box));
+            }
+        });
+        return mock;
+    }
+
+    /**
+     * Creates a mock TTN identity server, with the device registry of each application.<br>
+     * All devices have their own device id as sensor.community and opensense id.
+     *
+     * @param devices the device ids, by application id
+     */
+    static MockHttpServer identityServer(Map<String, List<String>> devices) throws IOException {
+        MockHttpServer mock = new MockHttpServer("identity server");
+        String updatedAt = Instant.now().toString();
+        mock.server.createContext("/api/v3/applications/", exchange -> {
+            drain(exchange);
+            // path is /api/v3/applications/{application_id}/devices[/{device_id}]
+            String[] parts = exchange.getRequestURI().getPath().split("/", -1);
+            List<String> appDevices = (parts.length > 4) ? devices.get(parts[4]) : null;
+            if (appDevices == null) {
+                respond(exchange, 404, "application/json", "{}");
+            } else if (parts.length > 6) {
+                String deviceId = parts[6];
+                String json = appDevices.contains(deviceId)
+                        ? MAPPER.writeValueAsString(device(deviceId, updatedAt)) : "{}";
+                respond(exchange, appDevices.contains(deviceId) ? 200 : 404, "application/json", json);
+            } else {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                int limit = Integer.parseInt(query.getOrDefault("limit", "100"));
+                int page = Integer.parseInt(query.getOrDefault("page", "1"));
+                int from = Math.min((page - 1) * limit, appDevices.size());
+                int to = Math.min(from + limit, appDevices.size());
+                ObjectNode result = MAPPER.createObjectNode();
+                ArrayNode list = result.putArray("end_devices");
+                appDevices.subList(from, to).forEach(deviceId -> list.add(device(deviceId, updatedAt)));
+                respond(exchange, 200, "application/json", MAPPER.writeValueAsString(result));
+            }
+        });
+        return mock;
+    }
+
+    private static ObjectNode device(String deviceId, String updatedAt) {
+        ObjectNode device = MAPPER.createObjectNode();
+        device.putObject("ids").put("device_id", deviceId);
+        device.putObject("attributes").put("senscom-id", deviceId).put("opensense-id", deviceId);
+        device.put("updated_at", updatedAt);
+        return device;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> map = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&", -1)) {
+                int index = parameter.indexOf('=');
+                if (index > 0) {
+                    map.put(parameter.substring(0, index), parameter.substring(index + 1));
+                }
+            }
+        }
+        return map;
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream is = exchange.getRequestBody()) {
+            is.readAllBytes();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    void start() {
+        server.start();
+        LOG.info("Started mock {} at {}", name, getUrl());
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the base URL of the server, with a trailing slash
+     */
+    String getUrl() {
+        return String.format(Locale.ROOT, "http://127.0.0.1:%d/", server.getAddress().getPort());
+    }
+
+}
@@ -0,0 +1,162 @@
+package nl.bertriksikken.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes synthetic TTN v3 uplinks on MQTT, for all devices in turn, at a fixed total rate.
+ */
+final class UplinkGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UplinkGenerator.class);
+    private static final long TICK_MILLIS = 10;
+    private static final int MAX_INFLIGHT = 65535;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final MqttAsyncClient client;
+    private final List<Device> devices;
+    private final double rate;
+    private final LatencyRecorder recorder;
+    private final LongAdder failed = new LongAdder();
+
+    // accessed only from the executor thread
+    private long startNanos;
+    private long sent;
+    private int next;
+
+    /**
+     * @param brokerUrl the URL of the MQTT broker
+     * @param devices   the devices
+     * @param rate      the total number of uplinks per second
+     * @param recorder  records the publish time of each uplink
+     */
+    UplinkGenerator(String brokerUrl, List<Device> devices, double rate, LatencyRecorder recorder)
+            throws MqttException {
+        this.client = new MqttAsyncClient(brokerUrl, "loadtest-generator", new MemoryPersistence());
+        this.devices = List.copyOf(devices);
+        this.rate = rate;
+        this.recorder = recorder;
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored")
+    void start() throws MqttException {
+        LOG.info("Publishing uplinks for {} devices at {} per second", devices.size(), rate);
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setMaxInflight(MAX_INFLIGHT);
+        client.connect(options).waitForCompletion();
+        startNanos = System.nanoTime();
+        executor.scheduleAtFixedRate(new CatchingRunnable(LOG, this::tick), 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        executor.shutdownNow();
+        try {
+            client.disconnect().waitForCompletion();
+            client.close();
+        } catch (MqttException e) {
+            LOG.warn("Could not disconnect: {}", e.getMessage());
+        }
+    }
+
+    // publishes the uplinks that are due, catching up if the previous tick was late
+    private void tick() {
+        double elapsed = (System.nanoTime() - startNanos) / 1E9;
+        long due = (long) (elapsed * rate);
+        while (sent < due) {
+            Device device = devices.get(next);
+            next = (next + 1) % devices.size();
+            publish(device);
+            sent++;
+        }
+    }
+
+    private void publish(Device device) {
+        int counter = device.counter++;
+        String topic = String.format(Locale.ROOT, "v3/%s@ttn/devices/%s/up", device.appId, device.deviceId);
+        try {
+            byte[] json = mapper.writeValueAsBytes(createUplink(device, counter));
+            recorder.published(device.deviceId, System.nanoTime());
+            client.publish(topic, json, 0, false);
+        } catch (JsonProcessingException | MqttException e) {
+            failed.increment();
+        }
+    }
+
+    // creates an uplink like TTN does, with the fields used by the bridge
+    private ObjectNode createUplink(Device device, int counter) {
+        String now = Instant.now().toString();
+        ObjectNode uplink = mapper.createObjectNode();
+        ObjectNode ids = uplink.putObject("end_device_ids");
+        ids.put("device_id", device.deviceId);
+        ids.putObject("application_ids").put("application_id", device.appId);
+        ids.put("dev_eui", device.devEui);
+        uplink.put("received_at", now);
+
+        ObjectNode message = uplink.putObject("uplink_message");
+        message.put("f_port", device.encoding.getPort());
+        message.put("f_cnt", counter);
+        message.put("frm_payload", device.encoding.encode(counter));
+        ObjectNode decoded = device.encoding.decode(counter);
+        if (decoded != null) {
+            message.set("decoded_payload", decoded);
+        }
+        ObjectNode metadata = message.putArray("rx_metadata").addObject();
+        metadata.putObject("gateway_ids").put("gateway_id", "loadtest");
+        metadata.put("rssi", -80).put("snr", 7.5);
+        message.putObject("settings").putObject("data_rate").putObject("lora").put("bandwidth", 125000)
+                .put("spreading_factor", 7);
+        message.put("received_at", now);
+        return uplink;
+    }
+
+    /**
+     * @return the number of uplinks that could not be published
+     */
+    long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * A simulated device.
+     */
+    static final class Device {
+        private final String appId;
+        private final String deviceId;
+        private final String devEui;
+        private final ELoadEncoding encoding;
+        private int counter;
+
+        Device(String appId, String deviceId, int index, ELoadEncoding encoding) {
+            this.appId = appId;
+            this.deviceId = deviceId;
+            this.devEui = String.format(Locale.ROOT, "00000000%08X", index);
+            this.encoding = encoding;
+        }
+
+        String getAppId() {
+            return appId;
+        }
+
+        String getDeviceId() {
+            return deviceId;
+        }
+    }
+
+}
@@ -1,11 +1,11 @@
 package nl.bertriksikken.gls;
 
 import java.io.IOException;
-import java.time.Duration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.bertriksikken.rest.HttpClientFactory;
 import okhttp3.OkHttpClient;
 import retrofit2.Response;
 import retrofit2.Retrofit;
@@ -33,10 +33,8 @@ public final class GeoLocationService {
     /**
      * Factory method.
      */
-    public static GeoLocationService create(GeoLocationConfig config) {
-        Duration timeout = config.getTimeout();
-        OkHttpClient client = new OkHttpClient().newBuilder().connectTimeout(timeout).readTimeout(timeout)
-                .writeTimeout(timeout).build();
+    public static GeoLocationService create(GeoLocationConfig config, HttpClientFactory httpClientFactory) {
+        OkHttpClient client = httpClientFactory.create(config);
         Retrofit retrofit = new Retrofit.Builder().baseUrl(config.getUrl())
                 .addConverterFactory(ScalarsConverterFactory.create())
                 .addConverterFactory(JacksonConverterFactory.create()).client(client).build();
@@ -48,7 +48,7 @@ public final class CommandHandler {
      * Test message on port 100: 00 9C 1C 12 F6 EB C0 D3 01 9C 1C 12 F6 F5 42 C9 01
      */
     void processResponse(TtnUplinkMessage uplink) {
-        ByteBuffer bb = ByteBuffer.wrap(uplink.getRawPayload()).order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer bb = uplink.getPayload().order(ByteOrder.BIG_ENDIAN);
 
         int cmd = bb.get() & 0xFF;
         switch (cmd) {
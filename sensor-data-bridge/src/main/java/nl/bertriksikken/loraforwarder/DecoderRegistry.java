@@ -0,0 +1,128 @@
+package nl.bertriksikken.loraforwarder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.bertriksikken.pm.IPayloadDecoder;
+import nl.bertriksikken.pm.cayenne.TtnCayenneDecoder;
+import nl.bertriksikken.pm.json.JsonDecoder;
+import nl.bertriksikken.pm.sps30.Sps30Decoder;
+import nl.bertriksikken.pm.sps30.Sps30Message;
+import nl.bertriksikken.pm.ttnulm.TtnUlmDecoder;
+import nl.bertriksikken.ttn.TtnAppConfig;
+
+/**
+ * Registry of payload decoders.<br>
+ * <br>
+ * Decoders are registered per payload encoding (the default for all ports of an
+ * application) and per LoRaWAN port (overriding the encoding default), either
+ * for all applications or for a specific application. At startup, the registry
+ * is resolved once for each application into a flat table indexed by port.
+ */
+public final class DecoderRegistry {
+
+    private static final int NUM_PORTS = 256;
+
+    private final Map<EPayloadEncoding, IDecoderFactory> encodingDecoders = new EnumMap<>(EPayloadEncoding.class);
+    private final Map<Integer, IPayloadDecoder> portDecoders = new HashMap<>();
+    private final Map<AppPort, IPayloadDecoder> appPortDecoders = new HashMap<>();
+
+    /**
+     * Creates a decoder for an application, from its decoder properties.
+     */
+    @FunctionalInterface
+    public interface IDecoderFactory {
+        IPayloadDecoder create(JsonNode properties) throws IOException;
+    }
+
+    /**
+     * @return a registry with all built-in decoders
+     */
+    public static DecoderRegistry create() {
+        DecoderRegistry registry = new DecoderRegistry();
+        registry.registerPort(Sps30Message.LORAWAN_PORT, new Sps30Decoder());
+        registry.registerEncoding(EPayloadEncoding.TTN_ULM, properties -> new TtnUlmDecoder());
+        registry.registerEncoding(EPayloadEncoding.CAYENNE, TtnCayenneDecoder::create);
+        registry.registerEncoding(EPayloadEncoding.JSON, JsonDecoder::create);
+        return registry;
+    }
+
+    public void registerEncoding(EPayloadEncoding encoding, IDecoderFactory factory) {
+        encodingDecoders.put(encoding, factory);
+    }
+
+    public void registerPort(int port, IPayloadDecoder decoder) {
+        portDecoders.put(checkPort(port), decoder);
+    }
+
+    public void registerPort(String application, int port, IPayloadDecoder decoder) {
+        appPortDecoders.put(new AppPort(application, checkPort(port)), decoder);
+    }
+
+    /**
+     * Resolves the decoders for one application.
+     *
+     * @param appConfig the application configuration
+     * @return the decoders for each port of the application
+     * @throws IllegalArgumentException in case the decoder configuration is invalid
+     */
+    public PortDecoders resolve(TtnAppConfig appConfig) {
+        IPayloadDecoder[] decoders = new IPayloadDecoder[NUM_PORTS];
+
+        // default for all ports
+        TtnAppConfig.DecoderConfig config = appConfig.getDecoder();
+        IDecoderFactory factory = encodingDecoders.get(config.getEncoding());
+        if (factory != null) {
+            try {
+                Arrays.fill(decoders, factory.create(config.getProperties()));
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalArgumentException("Invalid decoder for application " + appConfig.getName(), e);
+            }
+        }
+
+        // port specific overrides, application specific ones take precedence
+        portDecoders.forEach((port, decoder) -> decoders[port] = decoder);
+        appPortDecoders.forEach((appPort, decoder) -> {
+            if (appPort.application.equals(appConfig.getName())) {
+                decoders[appPort.port] = decoder;
+            }
+        });
+        return new PortDecoders(decoders);
+    }
+
+    private static int checkPort(int port) {
+        if ((port < 0) || (port >= NUM_PORTS)) {
+            throw new IllegalArgumentException("Invalid port " + port);
+        }
+        return port;
+    }
+
+    private record AppPort(String application, int port) {
+    }
+
+    /**
+     * Decoders of one application, indexed by port.
+     */
+    public static final class PortDecoders {
+
+        private final IPayloadDecoder[] decoders;
+
+        PortDecoders(IPayloadDecoder[] decoders) {
+            this.decoders = decoders;
+        }
+
+        /**
+         * @param port the LoRaWAN port
+         * @return the decoder for the port, null if there is none
+         */
+        public IPayloadDecoder get(int port) {
+            return ((port >= 0) && (port < decoders.length)) ? decoders[port] : null;
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+package nl.bertriksikken.loraforwarder;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.bertriksikken.ttn.TtnConfig;
+import nl.bertriksikken.ttn.enddevice.EndDevice;
+import nl.bertriksikken.ttn.enddevice.EndDeviceRegistry;
+import nl.bertriksikken.ttn.enddevice.IEndDeviceRegistryRestApi;
+
+/**
+ * Keeps the device attributes of one application up to date.<br>
+ * <br>
+ * A full synchronization lists all devices with their attributes, so removed
+ * devices disappear. In between, an incremental synchronization lists only the
+ * update time of each device, and fetches the attributes of the devices whose
+ * update time changed, or that are new. The registry cannot order devices by
+ * update time, so comparing the times of each device is what also catches a
+ * device that was updated while the pages were being listed. Only one
+ * synchronization must run at a time.<br>
+ * <br>
+ * A device that sends an uplink but is not known yet can be looked up on
+ * demand. Concurrent lookups of the same device share a single request. A
+ * device that does not exist or has no relevant attributes is not looked up
+ * again until its negative cache entry expires. A failed lookup is not cached.
+ */
+final class DeviceAttributeSync {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeviceAttributeSync.class);
+
+    private final String appId;
+    private final EndDeviceRegistry registry;
+    private final int pageSize;
+    private final Duration fullSyncInterval;
+    private final Duration negativeTtl;
+    private final Set<String> attributeNames;
+    private final Consumer<Map<String, AttributeMap>> listener;
+    private final Clock clock;
+
+    // guarded by this for updates, replaced as a whole
+    private volatile Map<String, AttributeMap> attributes = Map.of();
+    private volatile Instant lastFullSync;
+    // update time of each device, as seen by the most recent synchronization, only used by the synchronization
+    private Map<String, Instant> updateTimes = new HashMap<>();
+
+    // pending on-demand lookups, by device id
+    private final Map<String, CompletableFuture<Void>> lookups = new ConcurrentHashMap<>();
+    // devices without relevant attributes, with the time their entry expires
+    private final Map<String, Instant> negativeCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param appId          the application id
+     * @param registry       the device registry of the application
+     * @param config         the TTN configuration, with the synchronization settings
+     * @param attributeNames the names of the attributes that make a device relevant
+     * @param listener       is notified with the attributes of all devices, each time they change
+     * @param clock          the clock
+     */
+    DeviceAttributeSync(String appId, EndDeviceRegistry registry, TtnConfig config, Set<String> attributeNames,
+            Consumer<Map<String, AttributeMap>> listener, Clock clock) {
+        this.appId = Objects.requireNonNull(appId);
+        this.registry = Objects.requireNonNull(registry);
+        this.pageSize = config.getAttributePageSize();
+        this.fullSyncInterval = config.getAttributeFullSyncInterval();
+        this.negativeTtl = config.getAttributeNegativeTtl();
+        this.attributeNames = Set.copyOf(attributeNames);
+        this.listener = Objects.requireNonNull(listener);
+        this.clock = clock;
+    }
+
+    String getAppId() {
+        return appId;
+    }
+
+    /**
+     * Synchronizes the device attributes, fully if the full synchronization interval has passed, incrementally
+     * otherwise. The listener is notified if any attributes changed. On failure, the attributes are left unchanged.
+     *
+     * @throws IOException in case of a problem fetching the devices
+     */
+    void sync() throws IOException {
+        Instant now = clock.instant();
+        if ((lastFullSync == null) || !now.isBefore(lastFullSync.plus(fullSyncInterval))) {
+            fullSync();
+            lastFullSync = now;
+        } else {
+            incrementalSync();
+        }
+        negativeCache.values().removeIf(expiry -> !now.isBefore(expiry));
+    }
+
+    private void fullSync() throws IOException {
+        LOG.info("Fetching all TTNv3 device attributes for '{}'", appId);
+        Map<String, AttributeMap> map = new HashMap<>();
+        Map<String, Instant> times = new HashMap<>();
+        registry.listEndDevices(pageSize, device -> {
+            map.put(device.getDeviceId(), new AttributeMap(device.getAttributes()));
+            times.put(device.getDeviceId(), device.getUpdatedAt());
+        }, IEndDeviceRegistryRestApi.FIELD_IDS, IEndDeviceRegistryRestApi.FIELD_ATTRIBUTES,
+                IEndDeviceRegistryRestApi.FIELD_UPDATED_AT);
+        updateTimes = times;
+        publish(Map.copyOf(map));
+        LOG.info("Fetched attributes of {} devices for '{}'", map.size(), appId);
+    }
+
+    private void incrementalSync() throws IOException {
+        Map<String, Instant> times = new HashMap<>();
+        registry.listEndDevices(pageSize, device -> times.put(device.getDeviceId(), device.getUpdatedAt()),
+                IEndDeviceRegistryRestApi.FIELD_IDS, IEndDeviceRegistryRestApi.FIELD_UPDATED_AT);
+        Map<String, AttributeMap> changed = new HashMap<>();
+        for (Map.Entry<String, Instant> entry : times.entrySet()) {
+            String devId = entry.getKey();
+            if (updateTimes.containsKey(devId) && Objects.equals(entry.getValue(), updateTimes.get(devId))) {
+                continue;
+            }
+            EndDevice device = registry.findEndDevice(devId, IEndDeviceRegistryRestApi.FIELD_IDS,
+                    IEndDeviceRegistryRestApi.FIELD_ATTRIBUTES);
+            // a device removed since the listing is left to the next full synchronization
+            if (device != null) {
+                changed.put(devId, new AttributeMap(device.getAttributes()));
+            }
+        }
+        updateTimes = times;
+        if (merge(changed)) {
+            LOG.info("Fetched updated attributes of {} devices for '{}'", changed.size(), appId);
+        }
+    }
+
+    /**
+     * @return whether the device is unknown and should be looked up before uploading its data
+     */
+    boolean needsLookup(String devId) {
+        // before the first full synchronization, every device would be looked up
+        if ((lastFullSync == null) || attributes.containsKey(devId)) {
+            return false;
+        }
+        Instant expiry = negativeCache.get(devId);
+        return (expiry == null) || !clock.instant().isBefore(expiry);
+    }
+
+    /**
+     * Looks up the attributes of one device, sharing the lookup with any concurrent lookup of the same device. The
+     * listener is notified if the device has relevant attributes.
+     *
+     * @param devId    the device id
+     * @param executor the executor to perform the lookup on
+     * @return future that completes when the lookup is done
+     */
+    CompletableFuture<Void> lookup(String devId, Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> pending = lookups.putIfAbsent(devId, future);
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    performLookup(devId);
+                } finally {
+                    lookups.remove(devId, future);
+                    future.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            lookups.remove(devId, future);
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private void performLookup(String devId) {
+        EndDevice device;
+        try {
+            device = registry.findEndDevice(devId, IEndDeviceRegistryRestApi.FIELD_IDS,
+                    IEndDeviceRegistryRestApi.FIELD_ATTRIBUTES);
+        } catch (IOException | RuntimeException e) {
+            // not cached, the device may well have attributes, so the next uplink tries again
+            LOG.warn("Could not look up attributes of {}/{}: {}", appId, devId, e.getMessage());
+            return;
+        }
+        Map<String, String> deviceAttributes = (device != null) ? device.getAttributes() : Map.of();
+        if (attributeNames.stream().anyMatch(deviceAttributes::containsKey)) {
+            LOG.info("Found attributes of new device {}/{}: {}", appId, devId, deviceAttributes);
+            merge(Map.of(devId, new AttributeMap(deviceAttributes)));
+            return;
+        }
+        LOG.info("No relevant attributes for device {}/{}, not looking it up again for {}", appId, devId,
+                negativeTtl);
+        negativeCache.put(devId, clock.instant().plus(negativeTtl));
+    }
+
+    // merges changed attributes, notifies the listener if anything actually changed
+    private synchronized boolean merge(Map<String, AttributeMap> changed) {
+        Map<String, AttributeMap> map = new HashMap<>(attributes);
+        changed.forEach((devId, deviceAttributes) -> {
+            if (!deviceAttributes.equals(map.get(devId))) {
+                map.put(devId, deviceAttributes);
+            }
+        });
+        if (map.equals(attributes)) {
+            return false;
+        }
+        publish(Map.copyOf(map));
+        return true;
+    }
+
+    // publishes while holding the lock, so the listener always sees the attributes in the order they were set
+    private synchronized void publish(Map<String, AttributeMap> map) {
+        attributes = map;
+        map.keySet().forEach(negativeCache::remove);
+        listener.accept(map);
+    }
+
+}
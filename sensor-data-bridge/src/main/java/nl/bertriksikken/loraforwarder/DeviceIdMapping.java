@@ -0,0 +1,64 @@
+package nl.bertriksikken.loraforwarder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Mapping from device to an external id (e.g. a sensor.community id), taken from a device attribute.<br>
+ * <br>
+ * The mapping of each application is an immutable snapshot, that is built completely before it is published
+ * with a single atomic swap. Lookups therefore never wait and never see a partially updated mapping, and an
+ * update of one application leaves the mappings of the other applications untouched.
+ */
+public final class DeviceIdMapping {
+
+    private final String attributeName;
+
+    // immutable map from application id to the immutable mapping from device id to external id
+    private final AtomicReference<Map<String, Map<String, String>>> snapshot = new AtomicReference<>(Map.of());
+
+    /**
+     * @param attributeName the name of the device attribute containing the external id
+     */
+    public DeviceIdMapping(String attributeName) {
+        this.attributeName = attributeName;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * Replaces the mapping of one application.
+     *
+     * @param appId            the application id
+     * @param deviceAttributes the attributes of all devices in the application, by device id
+     * @return the new mapping of the application, from device id to external id
+     */
+    public Map<String, String> update(String appId, Map<String, AttributeMap> deviceAttributes) {
+        Map<String, String> ids = new HashMap<>();
+        deviceAttributes.forEach((devId, attributes) -> {
+            String id = attributes.getOrDefault(attributeName, "").trim();
+            if (!id.isEmpty()) {
+                ids.put(devId, id);
+            }
+        });
+        Map<String, String> appIds = Map.copyOf(ids);
+        snapshot.updateAndGet(current -> {
+            Map<String, Map<String, String>> next = new HashMap<>(current);
+            next.put(appId, appIds);
+            return Map.copyOf(next);
+        });
+        return appIds;
+    }
+
+    /**
+     * @param appDeviceId the device
+     * @return the external id of the device, an empty string if it has none
+     */
+    public String get(AppDeviceId appDeviceId) {
+        return snapshot.get().getOrDefault(appDeviceId.appName(), Map.of()).getOrDefault(appDeviceId.deviceId(), "");
+    }
+
+}
@@ -1,6 +1,7 @@
 package nl.bertriksikken.loraforwarder;
 
 import java.util.Map;
+import java.util.Set;
 
 import nl.bertriksikken.pm.SensorData;
 
@@ -10,6 +11,11 @@ public interface IUploader {
 
     void stop();
 
+    /**
+     * @return the names of the device attributes used by this uploader
+     */
+    Set<String> getAttributeNames();
+
     void scheduleProcessAttributes(String applicationId, Map<String, AttributeMap> deviceAttributes);
 
     void scheduleUpload(AppDeviceId appDeviceId, SensorData data);
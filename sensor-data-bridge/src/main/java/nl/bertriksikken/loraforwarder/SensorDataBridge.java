@@ -1,29 +1,28 @@
 package nl.bertriksikken.loraforwarder;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import nl.bertriksikken.gls.GeoLocationService;
 import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
+import nl.bertriksikken.metrics.Counter;
+import nl.bertriksikken.metrics.Histogram;
+import nl.bertriksikken.metrics.MetricsRegistry;
+import nl.bertriksikken.metrics.MetricsServer;
 import nl.bertriksikken.opensense.OpenSenseUploader;
 import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.IPayloadDecoder;
 import nl.bertriksikken.pm.PayloadParseException;
 import nl.bertriksikken.pm.SensorData;
-import nl.bertriksikken.pm.cayenne.TtnCayenneMessage;
-import nl.bertriksikken.pm.json.JsonDecoder;
-import nl.bertriksikken.pm.sps30.Sps30Message;
-import nl.bertriksikken.pm.ttnulm.TtnUlmMessage;
+import nl.bertriksikken.rest.HttpClientFactory;
 import nl.bertriksikken.senscom.SensComUploader;
-import nl.bertriksikken.ttn.MqttListener;
+import nl.bertriksikken.spool.UploadSpool;
+import nl.bertriksikken.ttn.DecodeStage;
+import nl.bertriksikken.ttn.MqttConnectionManager;
 import nl.bertriksikken.ttn.TtnAppConfig;
-import nl.bertriksikken.ttn.TtnAppConfig.DecoderConfig;
 import nl.bertriksikken.ttn.TtnConfig;
 import nl.bertriksikken.ttn.TtnUplinkMessage;
-import nl.bertriksikken.ttn.enddevice.EndDevice;
 import nl.bertriksikken.ttn.enddevice.EndDeviceRegistry;
-import nl.bertriksikken.ttn.enddevice.IEndDeviceRegistryRestApi;
 import org.apache.log4j.PropertyConfigurator;
-import org.eclipse.paho.client.mqttv3.MqttException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,11 +30,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -45,16 +49,25 @@ public final class SensorDataBridge {
 
     private static final Logger LOG = LoggerFactory.getLogger(SensorDataBridge.class);
     private static final String CONFIG_FILE = "sensor-data-bridge.yaml";
+    private static final int MAX_SYNC_THREADS = 4;
+    private static final int MAX_LOOKUP_THREADS = 2;
 
-    private final List<MqttListener> mqttListeners = new ArrayList<>();
+    private final DecodeStage decodeStage;
+    private final UploadSpool spool;
+    private final HttpClientFactory httpClientFactory;
+    private final MqttConnectionManager mqttConnectionManager;
     private final List<IUploader> uploaders = new ArrayList<>();
     private final GeoLocationService geoLocationService;
-    private final Map<String, EndDeviceRegistry> deviceRegistries = new HashMap<>();
+    private final Map<String, DeviceAttributeSync> attributeSyncs = new HashMap<>();
     private final Map<String, CommandHandler> commandHandlers = new HashMap<>();
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private final JsonDecoder jsonDecoder = new JsonDecoder();
+    private final ExecutorService syncExecutor;
+    private final ExecutorService lookupExecutor = Executors.newFixedThreadPool(MAX_LOOKUP_THREADS);
+    private final Duration attributeSyncInterval;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsServer metricsServer;
 
-    public static void main(String[] args) throws IOException, MqttException {
+    public static void main(String[] args) throws IOException {
         PropertyConfigurator.configure("log4j.properties");
 
         SensorDataBridgeConfig config = readConfig(new File(CONFIG_FILE));
@@ -63,32 +76,68 @@ public final class SensorDataBridge {
         app.start();
     }
 
-    private SensorDataBridge(SensorDataBridgeConfig config) {
+    /**
+     * Creates the application, start it with {@link #start()}.
+     *
+     * @param config the configuration
+     */
+    public SensorDataBridge(SensorDataBridgeConfig config) {
         String version = getVersion();
         LOG.info("Initializing SensorDataBridge application, version '{}'", version);
 
+        metricsServer = (config.getMetricsConfig().getPort() > 0)
+                ? new MetricsServer(config.getMetricsConfig(), metrics) : null;
+
+        spool = UploadSpool.create(config.getSpoolConfig());
+        metrics.gauge("sdb_spool_pending", "Uploads waiting in the spool.", spool::getPendingCount);
+        httpClientFactory = new HttpClientFactory(config.getHttpClientConfig());
         if (!config.getSensComConfig().getUrl().isEmpty()) {
-            uploaders.add(SensComUploader.create(config.getSensComConfig(), version));
+            uploaders.add(SensComUploader.create(config.getSensComConfig(), spool, metrics, httpClientFactory,
+                    version));
         }
         if (!config.getOpenSenseConfig().getUrl().isEmpty()) {
-            uploaders.add(OpenSenseUploader.create(config.getOpenSenseConfig()));
+            uploaders.add(OpenSenseUploader.create(config.getOpenSenseConfig(), spool, metrics, httpClientFactory));
         }
 
-        geoLocationService = GeoLocationService.create(config.getGeoLocationConfig());
+        geoLocationService = GeoLocationService.create(config.getGeoLocationConfig(), httpClientFactory);
 
         TtnConfig ttnConfig = config.getTtnConfig();
+        decodeStage = DecodeStage.create(ttnConfig);
+        metrics.gauge("sdb_decode_queue_depth", "Messages waiting in the decode queue.", decodeStage::getQueueDepth);
+        metrics.counter("sdb_decode_submitted_total", "Messages submitted to the decode stage.",
+                decodeStage::getSubmitCount);
+        metrics.counter("sdb_decode_backpressure_total", "Times the MQTT client waited for room in the decode queue.",
+                decodeStage::getBackpressureCount);
+        mqttConnectionManager = new MqttConnectionManager(ttnConfig, decodeStage, metrics);
+        attributeSyncInterval = ttnConfig.getAttributeSyncInterval();
+        int syncThreads = Math.max(1, Math.min(ttnConfig.getApps().size(), MAX_SYNC_THREADS));
+        syncExecutor = Executors.newFixedThreadPool(syncThreads);
+        Set<String> attributeNames = new HashSet<>();
+        uploaders.forEach(uploader -> attributeNames.addAll(uploader.getAttributeNames()));
+        DecoderRegistry decoderRegistry = DecoderRegistry.create();
         for (TtnAppConfig appConfig : config.getTtnConfig().getApps()) {
             EPayloadEncoding encoding = appConfig.getDecoder().getEncoding();
+            // resolve decoders once, so dispatch is a simple lookup by port
+            DecoderRegistry.PortDecoders decoders = decoderRegistry.resolve(appConfig);
+
             // add listener for each app
             LOG.info("Adding MQTT listener for TTN application '{}' with encoding '{}'", appConfig.getName(), encoding);
-            MqttListener listener = new MqttListener(ttnConfig, appConfig,
-                    uplink -> messageReceived(appConfig, uplink));
-            mqttListeners.add(listener);
+            Counter received = metrics.counter("sdb_uplinks_received_total", "Uplinks received.", "app",
+                    appConfig.getName());
+            Counter decodeFailures = metrics.counter("sdb_decode_failures_total", "Uplinks that could not be decoded.",
+                    "encoding", encoding.name());
+            mqttConnectionManager.add(appConfig, uplink -> {
+                received.increment();
+                messageReceived(decoders, decodeFailures, uplink);
+            });
 
             // for each app, create a device registry client, so we can look up attributes
             EndDeviceRegistry deviceRegistry = EndDeviceRegistry.create(ttnConfig.getIdentityServerUrl(),
-                    ttnConfig.getIdentityServerTimeout(), appConfig);
-            deviceRegistries.put(appConfig.getName(), deviceRegistry);
+                    ttnConfig.getIdentityServerTimeout(), appConfig, httpClientFactory);
+            String appId = appConfig.getName();
+            attributeSyncs.put(appId, new DeviceAttributeSync(appId, deviceRegistry, ttnConfig, attributeNames,
+                    attributes -> uploaders.forEach(uploader -> uploader.scheduleProcessAttributes(appId, attributes)),
+                    Clock.systemUTC()));
 
             // register command handler
             CommandHandler commandHandler = new CommandHandler(geoLocationService, deviceRegistry);
@@ -96,7 +145,8 @@ public final class SensorDataBridge {
         }
     }
 
-    private void messageReceived(TtnAppConfig appConfig, TtnUplinkMessage uplink) {
+    private void messageReceived(DecoderRegistry.PortDecoders decoders, Counter decodeFailures,
+            TtnUplinkMessage uplink) {
         LOG.info("Received: '{}'", uplink);
 
         try {
@@ -111,19 +161,38 @@ public final class SensorDataBridge {
             AppDeviceId appDeviceId = new AppDeviceId(uplink.getAppId(), uplink.getDevId());
 
             // decode and upload telemetry message
-            SensorData sensorData = decodeTtnMessage(appConfig.getDecoder(), uplink);
+            SensorData sensorData = decodeTtnMessage(decoders, uplink);
             LOG.info("Decoded: '{}'", sensorData);
-            uploaders.forEach(uploader -> uploader.scheduleUpload(appDeviceId, sensorData));
+            DeviceAttributeSync attributeSync = attributeSyncs.get(appDeviceId.appName());
+            if ((attributeSync != null) && attributeSync.needsLookup(appDeviceId.deviceId())) {
+                // device not synchronized yet, upload after looking up its attributes
+                attributeSync.lookup(appDeviceId.deviceId(), lookupExecutor)
+                        .thenRun(() -> scheduleUpload(appDeviceId, sensorData));
+            } else {
+                scheduleUpload(appDeviceId, sensorData);
+            }
         } catch (PayloadParseException e) {
-            LOG.warn("Could not parse payload from: '{}", uplink.getRawPayload(), e);
+            decodeFailures.increment();
+            LOG.warn("Could not parse payload from: '{}'", uplink, e);
         }
     }
 
+    private void scheduleUpload(AppDeviceId appDeviceId, SensorData sensorData) {
+        uploaders.forEach(uploader -> uploader.scheduleUpload(appDeviceId, sensorData));
+    }
+
     // package-private to allow testing
-    SensorData decodeTtnMessage(DecoderConfig config, TtnUplinkMessage uplink) throws PayloadParseException {
+    static SensorData decodeTtnMessage(DecoderRegistry.PortDecoders decoders, TtnUplinkMessage uplink)
+            throws PayloadParseException {
+        IPayloadDecoder decoder = decoders.get(uplink.getPort());
+        if (decoder == null) {
+            throw new PayloadParseException("No decoder for port " + uplink.getPort());
+        }
+
         SensorData sensorData = new SensorData();
 
         // common fields
+        sensorData.setTime(uplink.getReceivedAt());
         if (Double.isFinite(uplink.getRSSI())) {
             sensorData.putValue(ESensorItem.LORA_RSSI, uplink.getRSSI());
         }
@@ -134,129 +203,84 @@ public final class SensorDataBridge {
             sensorData.putValue(ESensorItem.LORA_SF, uplink.getSF());
         }
 
-        // SPS30 specific decoding
-        if (uplink.getPort() == Sps30Message.LORAWAN_PORT) {
-            Sps30Message message = Sps30Message.parse(uplink.getRawPayload());
-            sensorData.putValue(ESensorItem.PM1_0, message.getPm1_0());
-            sensorData.putValue(ESensorItem.PM2_5, message.getPm2_5());
-            sensorData.putValue(ESensorItem.PM4_0, message.getPm4_0());
-            sensorData.putValue(ESensorItem.PM10, message.getPm10());
-            sensorData.putValue(ESensorItem.PM0_5_N, message.getN0_5());
-            sensorData.putValue(ESensorItem.PM1_0_N, message.getN1_0());
-            sensorData.putValue(ESensorItem.PM2_5_N, message.getN2_5());
-            sensorData.putValue(ESensorItem.PM4_0_N, message.getN4_0());
-            sensorData.putValue(ESensorItem.PM10_N, message.getN10());
-            sensorData.putValue(ESensorItem.PM_TPS, message.getTps());
-            return sensorData;
-        }
-
         // specific fields
-        switch (config.getEncoding()) {
-            case TTN_ULM:
-                TtnUlmMessage ulmMessage = TtnUlmMessage.parse(uplink.getRawPayload());
-                sensorData.putValue(ESensorItem.PM10, ulmMessage.getPm10());
-                sensorData.putValue(ESensorItem.PM2_5, ulmMessage.getPm2_5());
-                sensorData.putValue(ESensorItem.HUMIDITY, ulmMessage.getRhPerc());
-                sensorData.putValue(ESensorItem.TEMPERATURE, ulmMessage.getTempC());
-                break;
-            case CAYENNE:
-                TtnCayenneMessage cayenne = TtnCayenneMessage.parse(uplink.getRawPayload());
-                if (cayenne.hasPm10()) {
-                    sensorData.putValue(ESensorItem.PM10, cayenne.getPm10());
-                }
-                if (cayenne.hasPm4()) {
-                    sensorData.putValue(ESensorItem.PM4_0, cayenne.getPm4());
-                }
-                if (cayenne.hasPm2_5()) {
-                    sensorData.putValue(ESensorItem.PM2_5, cayenne.getPm2_5());
-                }
-                if (cayenne.hasPm1_0()) {
-                    sensorData.putValue(ESensorItem.PM1_0, cayenne.getPm1_0());
-                }
-                if (cayenne.hasRhPerc()) {
-                    sensorData.putValue(ESensorItem.HUMIDITY, cayenne.getRhPerc());
-                }
-                if (cayenne.hasTempC()) {
-                    sensorData.putValue(ESensorItem.TEMPERATURE, cayenne.getTempC());
-                }
-                if (cayenne.hasPressureMillibar()) {
-                    sensorData.putValue(ESensorItem.PRESSURE, 100.0 * cayenne.getPressureMillibar());
-                }
-                if (cayenne.hasPosition()) {
-                    double[] position = cayenne.getPosition();
-                    sensorData.putValue(ESensorItem.GPS_LAT, position[0]);
-                    sensorData.putValue(ESensorItem.GPS_LON, position[1]);
-                    sensorData.putValue(ESensorItem.GPS_ALT, position[2]);
-                }
-                break;
-            case JSON:
-                try {
-                    jsonDecoder.parse(config.getProperties(), uplink.getDecodedFields(), sensorData);
-                } catch (JsonProcessingException e) {
-                    throw new PayloadParseException(e);
-                }
-                break;
-            default:
-                throw new IllegalStateException("Unhandled encoding: " + config.getEncoding());
-        }
+        decoder.decode(uplink, sensorData);
         return sensorData;
     }
 
     /**
      * Starts the application.
-     *
-     * @throws MqttException in case of a problem starting MQTT client
      */
     @SuppressWarnings("FutureReturnValueIgnored")
-    private void start() throws MqttException {
+    public void start() {
         LOG.info("Starting sensor-data-bridge application");
 
-        // schedule task to fetch opensense ids
-        executor.scheduleAtFixedRate(new CatchingRunnable(LOG, this::updateAttributes), 0, 60, TimeUnit.MINUTES);
+        if (metricsServer != null) {
+            try {
+                metricsServer.start();
+            } catch (IOException e) {
+                LOG.warn("Could not start metrics server: {}", e.getMessage());
+            }
+        }
+
+        // schedule task to fetch device attributes, like the sensor.community and opensense ids
+        executor.scheduleWithFixedDelay(new CatchingRunnable(LOG, this::updateAttributes), 0,
+                attributeSyncInterval.toSeconds(), TimeUnit.SECONDS);
 
-        // start uploaders
+        // start uploaders, then replay of uploads spooled earlier
         uploaders.forEach(IUploader::start);
+        spool.start();
 
-        // start listeners
-        for (MqttListener listener : mqttListeners) {
-            listener.start();
-        }
+        // start decode stage and listeners
+        decodeStage.start();
+        mqttConnectionManager.start();
 
         LOG.info("Started sensor-data-bridge application");
     }
 
-    // retrieves application attributes and notifies each interested components
+    // synchronizes the device attributes of all applications concurrently, notifies the uploaders of changes
     private void updateAttributes() {
-        // fetch all attributes
-        for (Entry<String, EndDeviceRegistry> entry : deviceRegistries.entrySet()) {
-            String applicationId = entry.getKey();
-            EndDeviceRegistry registry = entry.getValue();
-            LOG.info("Fetching TTNv3 application attributes for '{}'", applicationId);
-            Map<String, AttributeMap> map = new HashMap<>();
-            try {
-                for (EndDevice device : registry.listEndDevices(IEndDeviceRegistryRestApi.FIELD_IDS,
-                        IEndDeviceRegistryRestApi.FIELD_ATTRIBUTES)) {
-                    map.put(device.getDeviceId(), new AttributeMap(device.getAttributes()));
-                }
-            } catch (IOException e) {
-                LOG.warn("Error getting attributes for {}", applicationId, e);
-            }
-            // notify all uploaders
-            uploaders.forEach(uploader -> uploader.scheduleProcessAttributes(applicationId, map));
-        }
+        List<CompletableFuture<Void>> futures = attributeSyncs.values().stream()
+                .map(sync -> CompletableFuture.runAsync(() -> updateAttributes(sync), syncExecutor)).toList();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
         LOG.info("Fetching TTNv3 application attributes done");
     }
 
+    private void updateAttributes(DeviceAttributeSync sync) {
+        String applicationId = sync.getAppId();
+        long startNanos = System.nanoTime();
+        try {
+            sync.sync();
+        } catch (IOException | RuntimeException e) {
+            // keep the previous attributes, instead of notifying incomplete ones
+            LOG.warn("Error getting attributes for {}", applicationId, e);
+            metrics.counter("sdb_attribute_sync_failures_total", "Failed device attribute synchronizations.", "app",
+                    applicationId).increment();
+        }
+        metrics.histogram("sdb_attribute_sync_duration_seconds", "Duration of device attribute synchronizations.",
+                Histogram.LATENCY_BUCKETS, "app", applicationId).observeSince(startNanos);
+    }
+
     /**
      * Stops the application.
      */
-    private void stop() {
+    public void stop() {
         LOG.info("Stopping sensor-data-bridge application");
 
         executor.shutdownNow();
-        mqttListeners.forEach(MqttListener::stop);
+        syncExecutor.shutdownNow();
+        // stop receiving first, then decode what was already received, which may still need device lookups
+        mqttConnectionManager.stop();
+        decodeStage.stop();
+        lookupExecutor.shutdownNow();
         commandHandlers.values().forEach(CommandHandler::stop);
+        // stop the uploaders first, uploads that fail while they stop are still appended to the spool
         uploaders.forEach(IUploader::stop);
+        spool.stop();
+        httpClientFactory.stop();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
 
         LOG.info("Stopped sensor-data-bridge application");
     }
@@ -3,9 +3,12 @@ package nl.bertriksikken.loraforwarder;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import nl.bertriksikken.gls.GeoLocationConfig;
+import nl.bertriksikken.metrics.MetricsConfig;
 import nl.bertriksikken.nbiot.NbIotConfig;
 import nl.bertriksikken.opensense.OpenSenseConfig;
+import nl.bertriksikken.rest.HttpClientConfig;
 import nl.bertriksikken.senscom.SensComConfig;
+import nl.bertriksikken.spool.SpoolConfig;
 import nl.bertriksikken.ttn.TtnConfig;
 
 /**
@@ -27,10 +30,19 @@ public final class SensorDataBridgeConfig {
     @JsonProperty("opensense")
     private OpenSenseConfig openSenseConfig = new OpenSenseConfig();
 
+    @JsonProperty("spool")
+    private SpoolConfig spoolConfig = new SpoolConfig();
+
     // miscellaneous
+    @JsonProperty("http")
+    private HttpClientConfig httpClientConfig = new HttpClientConfig();
+
     @JsonProperty("geolocation")
     private GeoLocationConfig geoLocationConfig = new GeoLocationConfig();
 
+    @JsonProperty("metrics")
+    private MetricsConfig metricsConfig = new MetricsConfig();
+
     public TtnConfig getTtnConfig() {
         return new TtnConfig(ttnConfig);
     }
@@ -52,8 +64,20 @@ public final class SensorDataBridgeConfig {
         return openSenseConfig;
     }
 
+    public SpoolConfig getSpoolConfig() {
+        return spoolConfig;
+    }
+
+    public HttpClientConfig getHttpClientConfig() {
+        return httpClientConfig;
+    }
+
     public GeoLocationConfig getGeoLocationConfig() {
         return geoLocationConfig;
     }
 
+    public MetricsConfig getMetricsConfig() {
+        return metricsConfig;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package nl.bertriksikken.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing counter, striped so concurrent increments do not contend.
+ */
+public final class Counter {
+
+    private final LongAdder adder = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long amount) {
+        adder.add(amount);
+    }
+
+    public long get() {
+        return adder.sum();
+    }
+
+}
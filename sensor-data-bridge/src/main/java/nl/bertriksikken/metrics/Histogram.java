@@ -0,0 +1,77 @@
+package nl.bertriksikken.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed bucket boundaries, each bucket a striped counter.
+ */
+public final class Histogram {
+
+    /**
+     * Bucket boundaries for latencies in seconds, from 5 ms to 30 s.
+     */
+    public static final double[] LATENCY_BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+    private final double[] bounds;
+    // non-cumulative count for each bucket, the last one for values above all bounds
+    private final LongAdder[] counts;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] bounds) {
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+        this.counts = new LongAdder[this.bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int index = Arrays.binarySearch(bounds, value);
+        // an exact match belongs to its bucket, otherwise take the insertion point
+        counts[(index >= 0) ? index : -(index + 1)].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Observes the time passed since a start time, in seconds.
+     *
+     * @param startNanos the start time, from {@link System#nanoTime()}
+     */
+    public void observeSince(long startNanos) {
+        observe((double) (System.nanoTime() - startNanos) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    double[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * @return the cumulative count for each bucket, the last one being the total count
+     */
+    long[] getCumulativeCounts() {
+        long[] cumulative = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i].sum();
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+}
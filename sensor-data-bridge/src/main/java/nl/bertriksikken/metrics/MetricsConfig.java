@@ -0,0 +1,18 @@
+package nl.bertriksikken.metrics;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the metrics endpoint.
+ */
+public final class MetricsConfig {
+
+    // port of the HTTP server with the /metrics endpoint, 0 to disable it
+    @JsonProperty("port")
+    private int port = 9464;
+
+    public int getPort() {
+        return port;
+    }
+
+}
@@ -0,0 +1,172 @@
+package nl.bertriksikken.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of application metrics, written in the Prometheus text format.<br>
+ * <br>
+ * Metrics are grouped in families by name, each metric in a family has its own
+ * set of labels, passed as alternating label names and values. Looking up a
+ * metric is a concurrent map lookup, so callers on a hot path should keep the
+ * returned metric instead of looking it up for each update. Updating counters
+ * and histograms does not take any lock.
+ */
+public final class MetricsRegistry {
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the counter with the given name and labels, creating it if it does not exist yet.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, EMetricType.COUNTER).children.computeIfAbsent(formatLabels(labels),
+                key -> new Counter());
+    }
+
+    /**
+     * Registers a counter maintained elsewhere, its value is taken from the supplier each time the metrics are written.
+     */
+    public void counter(String name, String help, LongSupplier supplier, String... labels) {
+        DoubleSupplier value = supplier::getAsLong;
+        family(name, help, EMetricType.COUNTER).children.put(formatLabels(labels), value);
+    }
+
+    /**
+     * Returns the histogram with the given name and labels, creating it with the given buckets if it does not
+     * exist yet.
+     */
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) family(name, help, EMetricType.HISTOGRAM).children.computeIfAbsent(formatLabels(labels),
+                key -> new Histogram(buckets));
+    }
+
+    /**
+     * Registers a gauge, its value is taken from the supplier each time the metrics are written.
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, EMetricType.GAUGE).children.put(formatLabels(labels), supplier);
+    }
+
+    private Family family(String name, String help, EMetricType type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * @return all metrics, in the Prometheus text exposition format
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(families).forEach((name, family) -> {
+            sb.append("# HELP ").append(name).append(' ').append(escape(family.help, false)).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(family.type.getText()).append('\n');
+            new TreeMap<>(family.children).forEach((labels, metric) -> {
+                if (metric instanceof Counter counter) {
+                    appendSample(sb, name, labels, Long.toString(counter.get()));
+                } else if (metric instanceof Histogram histogram) {
+                    appendHistogram(sb, name, labels, histogram);
+                } else if (metric instanceof DoubleSupplier supplier) {
+                    appendSample(sb, name, labels, formatValue(supplier.getAsDouble()));
+                }
+            });
+        });
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, String name, String labels, Histogram histogram) {
+        double[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCumulativeCounts();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < bounds.length; i++) {
+            String le = prefix + "le=\"" + formatValue(bounds[i]) + "\"";
+            appendSample(sb, name + "_bucket", le, Long.toString(counts[i]));
+        }
+        appendSample(sb, name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(counts[bounds.length]));
+        appendSample(sb, name + "_sum", labels, formatValue(histogram.getSum()));
+        appendSample(sb, name + "_count", labels, Long.toString(counts[bounds.length]));
+    }
+
+    private static void appendSample(StringBuilder sb, String name, String labels, String value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    // package-private to allow testing
+    static String formatLabels(String... labels) {
+        if ((labels.length % 2) != 0) {
+            throw new IllegalArgumentException("Labels must be pairs of name and value: " + List.of(labels));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1], true)).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String text, boolean quote) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            switch (c) {
+            case '\\' -> sb.append("\\\\");
+            case '\n' -> sb.append("\\n");
+            case '"' -> sb.append(quote ? "\\\"" : "\"");
+            default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return (value > 0) ? "+Inf" : "-Inf";
+        }
+        if ((value == Math.rint(value)) && (Math.abs(value) < 1E15)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private enum EMetricType {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String text;
+
+        EMetricType(String text) {
+            this.text = text;
+        }
+
+        String getText() {
+            return text;
+        }
+    }
+
+    private static final class Family {
+        private final String help;
+        private final EMetricType type;
+        // metrics by their formatted labels
+        private final Map<String, Object> children = new ConcurrentHashMap<>();
+
+        Family(String help, EMetricType type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package nl.bertriksikken.metrics;
+
+import java.util.Objects;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * REST resource serving the metrics for a Prometheus scrape.
+ */
+@Path("/metrics")
+public final class MetricsResource {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+
+    MetricsResource(MetricsRegistry registry) {
+        this.registry = Objects.requireNonNull(registry);
+    }
+
+    @GET
+    @Produces(CONTENT_TYPE)
+    public String getMetrics() {
+        return registry.format();
+    }
+
+}
@@ -0,0 +1,50 @@
+package nl.bertriksikken.metrics;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.eclipse.jetty.server.Server;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.ws.rs.core.UriBuilder;
+
+/**
+ * Embedded HTTP server exposing the metrics at /metrics.
+ */
+public final class MetricsServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsServer.class);
+
+    private final int port;
+    private final Server server;
+
+    public MetricsServer(MetricsConfig config, MetricsRegistry registry) {
+        this.port = config.getPort();
+        URI uri = UriBuilder.fromUri("http://localhost").port(port).build();
+        ResourceConfig resourceConfig = new ResourceConfig().register(new MetricsResource(registry));
+        this.server = JettyHttpContainerFactory.createServer(uri, resourceConfig, false);
+    }
+
+    public void start() throws IOException {
+        LOG.info("Starting metrics server on port {}", port);
+        try {
+            server.start();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void stop() {
+        LOG.info("Stopping metrics server");
+        try {
+            server.stop();
+        } catch (Exception e) {
+            LOG.error("Caught exception during shutdown: {}", e.getMessage());
+            LOG.trace("Caught exception during shutdown", e);
+        }
+    }
+
+}
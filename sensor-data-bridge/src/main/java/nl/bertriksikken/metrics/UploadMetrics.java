@@ -0,0 +1,42 @@
+package nl.bertriksikken.metrics;
+
+/**
+ * Latency and HTTP status class metrics of the uploads to one destination.
+ */
+public final class UploadMetrics {
+
+    private static final String[] STATUS_CLASSES = { "error", "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    private final Histogram latency;
+    private final Counter[] statusCounters = new Counter[STATUS_CLASSES.length];
+
+    /**
+     * @param registry the metrics registry
+     * @param labels   the labels identifying the destination, as alternating label names and values
+     */
+    public UploadMetrics(MetricsRegistry registry, String... labels) {
+        latency = registry.histogram("sdb_upload_duration_seconds", "Duration of uploads.",
+                Histogram.LATENCY_BUCKETS, labels);
+        String[] statusLabels = new String[labels.length + 2];
+        System.arraycopy(labels, 0, statusLabels, 0, labels.length);
+        statusLabels[labels.length] = "status";
+        for (int i = 0; i < STATUS_CLASSES.length; i++) {
+            statusLabels[labels.length + 1] = STATUS_CLASSES[i];
+            statusCounters[i] = registry.counter("sdb_upload_responses_total",
+                    "Upload responses, by HTTP status class.", statusLabels);
+        }
+    }
+
+    /**
+     * Records a completed upload.
+     *
+     * @param startNanos the start time of the upload, from {@link System#nanoTime()}
+     * @param httpCode   the HTTP status code, or 0 if no response was received
+     */
+    public void record(long startNanos, int httpCode) {
+        latency.observeSince(startNanos);
+        int statusClass = httpCode / 100;
+        statusCounters[((statusClass >= 1) && (statusClass <= 5)) ? statusClass : 0].increment();
+    }
+
+}
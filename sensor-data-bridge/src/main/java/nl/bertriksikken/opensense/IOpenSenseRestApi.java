@@ -1,6 +1,9 @@
 package nl.bertriksikken.opensense;
 
+import java.util.List;
+
 import nl.bertriksikken.opensense.dto.SenseBox;
+import nl.bertriksikken.opensense.dto.SensorMeasurement;
 import nl.bertriksikken.senscom.SensComMessage;
 import retrofit2.Call;
 import retrofit2.http.Body;
@@ -18,4 +21,10 @@ public interface IOpenSenseRestApi {
     Call<String> postNewMeasurements(@Path("boxid") String boxId, @Query("luftdaten") boolean isLuftdaten,
             @Body SensComMessage message);
 
+    /**
+     * Uploads multiple measurements at once, each for a specific sensor and with its own timestamp.
+     */
+    @POST("/boxes/{boxid}/data")
+    Call<String> postMeasurements(@Path("boxid") String boxId, @Body List<SensorMeasurement> measurements);
+
 }
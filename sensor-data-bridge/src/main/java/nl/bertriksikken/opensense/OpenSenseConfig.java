@@ -1,12 +1,32 @@
 package nl.bertriksikken.opensense;
 
+import java.time.Duration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import nl.bertriksikken.rest.RestApiConfig;
 
 public final class OpenSenseConfig extends RestApiConfig {
-    
+
+    // number of measurements per box to collect before uploading them at once, 0 to upload each uplink separately
+    @JsonProperty("batch_size")
+    private int batchSize = 0;
+
+    // maximum time to collect measurements before uploading them (seconds)
+    @JsonProperty("batch_window")
+    private int batchWindowSec = 300;
+
     // jackson no-arg constructor
     public OpenSenseConfig() {
         super("https://api.opensensemap.org", 30);
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Duration getBatchWindow() {
+        return Duration.ofSeconds(batchWindowSec);
+    }
+
 }
@@ -1,15 +1,27 @@
 package nl.bertriksikken.opensense;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.bertriksikken.loraforwarder.AppDeviceId;
 import nl.bertriksikken.loraforwarder.AttributeMap;
+import nl.bertriksikken.loraforwarder.DeviceIdMapping;
 import nl.bertriksikken.loraforwarder.IUploader;
 import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
+import nl.bertriksikken.metrics.MetricsRegistry;
+import nl.bertriksikken.metrics.UploadMetrics;
+import nl.bertriksikken.opensense.dto.SenseBox;
+import nl.bertriksikken.opensense.dto.SensorMeasurement;
 import nl.bertriksikken.pm.ESensorItem;
 import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.rest.HttpClientFactory;
 import nl.bertriksikken.senscom.SensComMessage;
+import nl.bertriksikken.spool.EDeliveryResult;
+import nl.bertriksikken.spool.UploadSpool;
 import okhttp3.OkHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.jackson.JacksonConverterFactory;
@@ -17,113 +29,188 @@ import retrofit2.converter.scalars.ScalarsConverterFactory;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Uploads measurements to openSenseMap.<br>
+ * <br>
+ * By default, each uplink is uploaded separately in sensor.community format.
+ * In batch mode, measurements are collected per box and uploaded at once when
+ * the batch size is reached or the batch window has passed, each measurement
+ * with the time of its uplink.
+ */
 public final class OpenSenseUploader implements IUploader {
 
     private static final Logger LOG = LoggerFactory.getLogger(OpenSenseUploader.class);
     private static final String SOFTWARE_VERSION = "https://github.com/bertrik/sensor-data-bridge";
 
+    static final String SPOOL_DESTINATION = "opensense";
+    static final String SPOOL_DESTINATION_BATCH = "opensense-batch";
+
     private final IOpenSenseRestApi restClient;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Map<AppDeviceId, String> boxIds = new ConcurrentHashMap<>();
+    private final UploadSpool spool;
+    private final int batchSize;
+    private final Duration batchWindow;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final DeviceIdMapping boxIds = new DeviceIdMapping("opensense-id");
+    private final UploadMetrics uploadMetrics;
+    private final UploadMetrics batchMetrics;
+
+    // accessed only from the executor thread
+    private final Map<String, SenseBoxSensors> boxSensors = new HashMap<>();
+    private final Map<String, List<SensorMeasurement>> batches = new HashMap<>();
 
-    OpenSenseUploader(IOpenSenseRestApi restClient) {
+    OpenSenseUploader(IOpenSenseRestApi restClient, UploadSpool spool, MetricsRegistry metrics,
+            OpenSenseConfig config) {
         this.restClient = Objects.requireNonNull(restClient);
+        this.spool = Objects.requireNonNull(spool);
+        this.batchSize = config.getBatchSize();
+        this.batchWindow = config.getBatchWindow();
+        this.uploadMetrics = new UploadMetrics(metrics, "destination", SPOOL_DESTINATION);
+        this.batchMetrics = new UploadMetrics(metrics, "destination", SPOOL_DESTINATION_BATCH);
     }
 
-    public static OpenSenseUploader create(OpenSenseConfig config) {
+    public static OpenSenseUploader create(OpenSenseConfig config, UploadSpool spool, MetricsRegistry metrics,
+            HttpClientFactory httpClientFactory) {
         LOG.info("Creating new REST client for '{}' with timeout {}", config.getUrl(), config.getTimeout());
 
-        Duration timeout = config.getTimeout();
-        OkHttpClient client = new OkHttpClient().newBuilder().connectTimeout(timeout).readTimeout(timeout)
-                .writeTimeout(timeout).build();
+        OkHttpClient client = httpClientFactory.create(config);
         Retrofit retrofit = new Retrofit.Builder().baseUrl(config.getUrl())
                 .addConverterFactory(ScalarsConverterFactory.create())
                 .addConverterFactory(JacksonConverterFactory.create()).client(client).build();
         IOpenSenseRestApi restClient = retrofit.create(IOpenSenseRestApi.class);
-        return new OpenSenseUploader(restClient);
+        return new OpenSenseUploader(restClient, spool, metrics, config);
+    }
+
+    private boolean isBatching() {
+        return batchSize > 0;
     }
 
     @Override
+    @SuppressWarnings("FutureReturnValueIgnored")
     public void start() {
         LOG.info("Starting OpenSense uploader");
+        spool.register(SPOOL_DESTINATION, this::replay);
+        spool.register(SPOOL_DESTINATION_BATCH, this::replayBatch);
+        if (isBatching()) {
+            LOG.info("Uploading in batches of {} measurements, at least every {}", batchSize, batchWindow);
+            long windowMillis = batchWindow.toMillis();
+            executor.scheduleWithFixedDelay(new CatchingRunnable(LOG, this::flushAll), windowMillis, windowMillis,
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void stop() {
         LOG.info("Stopping OpenSense uploader");
+        if (isBatching()) {
+            executor.execute(new CatchingRunnable(LOG, this::flushAll));
+        }
         executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOG.warn("OpenSense uploads still in progress");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
     public void scheduleUpload(AppDeviceId appDeviceId, SensorData data) {
-        String boxId = boxIds.getOrDefault(appDeviceId, "");
+        String boxId = boxIds.get(appDeviceId);
         if (boxId.isEmpty()) {
             return;
         }
 
+        String sensComId = "TTN-" + appDeviceId.deviceId();
+        if (isBatching()) {
+            executor.execute(new CatchingRunnable(LOG, () -> addToBatch(boxId, sensComId, data)));
+        } else {
+            SensComMessage message = createMessage(data);
+            executor.execute(new CatchingRunnable(LOG, () -> uploadMeasurement(boxId, sensComId, message)));
+        }
+    }
+
+    private SensComMessage createMessage(SensorData data) {
         SensComMessage message = new SensComMessage(SOFTWARE_VERSION);
 
         // particulate matter
         String pmPrefix = getPmPrefix(data);
-        if (data.hasValue(ESensorItem.PM10)) {
-            message.addItem(pmPrefix + "P1", data.getValue(ESensorItem.PM10));
+        if (data.has(ESensorItem.PM10)) {
+            message.addItem(pmPrefix + "P1", data.getDouble(ESensorItem.PM10));
         }
-        if (data.hasValue(ESensorItem.PM2_5)) {
-            message.addItem(pmPrefix + "P2", data.getValue(ESensorItem.PM2_5));
+        if (data.has(ESensorItem.PM2_5)) {
+            message.addItem(pmPrefix + "P2", data.getDouble(ESensorItem.PM2_5));
         }
-        if (data.hasValue(ESensorItem.PM1_0)) {
-            message.addItem(pmPrefix + "P0", data.getValue(ESensorItem.PM1_0));
+        if (data.has(ESensorItem.PM1_0)) {
+            message.addItem(pmPrefix + "P0", data.getDouble(ESensorItem.PM1_0));
         }
-        if (data.hasValue(ESensorItem.PM4_0)) {
-            message.addItem(pmPrefix + "P4", data.getValue(ESensorItem.PM4_0));
+        if (data.has(ESensorItem.PM4_0)) {
+            message.addItem(pmPrefix + "P4", data.getDouble(ESensorItem.PM4_0));
         }
 
         // humidity/temperature/pressure
         String meteoPrefix = getMeteoPrefix(data);
-        if (data.hasValue(ESensorItem.HUMIDITY)) {
-            message.addItem(meteoPrefix + "humidity", data.getValue(ESensorItem.HUMIDITY));
+        if (data.has(ESensorItem.HUMIDITY)) {
+            message.addItem(meteoPrefix + "humidity", data.getDouble(ESensorItem.HUMIDITY));
         }
-        if (data.hasValue(ESensorItem.TEMPERATURE)) {
-            message.addItem(meteoPrefix + "temperature", data.getValue(ESensorItem.TEMPERATURE));
+        if (data.has(ESensorItem.TEMPERATURE)) {
+            message.addItem(meteoPrefix + "temperature", data.getDouble(ESensorItem.TEMPERATURE));
         }
-        if (data.hasValue(ESensorItem.PRESSURE)) {
-            message.addItem(meteoPrefix + "pressure", data.getValue(ESensorItem.PRESSURE));
+        if (data.has(ESensorItem.PRESSURE)) {
+            message.addItem(meteoPrefix + "pressure", data.getDouble(ESensorItem.PRESSURE));
         }
-
-        // schedule upload
-        String sensComId = "TTN-" + appDeviceId.deviceId();
-        executor.execute(new CatchingRunnable(LOG, () -> uploadMeasurement(boxId, sensComId, message)));
+        return message;
     }
 
     private String getMeteoPrefix(SensorData data) {
-        if (data.hasValue(ESensorItem.HUMIDITY) && data.hasValue(ESensorItem.TEMPERATURE)
-                && data.hasValue(ESensorItem.PRESSURE)) {
+        if (data.has(ESensorItem.HUMIDITY) && data.has(ESensorItem.TEMPERATURE)
+                && data.has(ESensorItem.PRESSURE)) {
             return "BME280_";
         }
         return "";
     }
 
     private String getPmPrefix(SensorData data) {
-        if (data.hasValue(ESensorItem.PM10) && data.hasValue(ESensorItem.PM2_5) && data.hasValue(ESensorItem.PM1_0)
-                && data.hasValue(ESensorItem.PM4_0)) {
+        if (data.has(ESensorItem.PM10) && data.has(ESensorItem.PM2_5) && data.has(ESensorItem.PM1_0)
+                && data.has(ESensorItem.PM4_0)) {
             return "SPS30_";
         }
-        if (data.hasValue(ESensorItem.PM10) && data.hasValue(ESensorItem.PM2_5) && data.hasValue(ESensorItem.PM1_0)) {
+        if (data.has(ESensorItem.PM10) && data.has(ESensorItem.PM2_5) && data.has(ESensorItem.PM1_0)) {
             return "PMS_";
         }
         return "SDS_";
     }
 
     private void uploadMeasurement(String boxId, String sensComId, SensComMessage message) {
+        if (deliver(boxId, sensComId, message) == EDeliveryResult.RETRY) {
+            try {
+                spool.append(SPOOL_DESTINATION, boxId + "/" + sensComId, mapper.writeValueAsBytes(message));
+            } catch (JsonProcessingException e) {
+                LOG.warn("Could not spool upload for {}: {}", sensComId, e.getMessage());
+            }
+        }
+    }
+
+    private EDeliveryResult deliver(String boxId, String sensComId, SensComMessage message) {
         LOG.info("Upload for {} to opensense box {}: {}", sensComId, boxId, message);
+        long startNanos = System.nanoTime();
         try {
             Response<String> response = restClient.postNewMeasurements(boxId, true, message).execute();
+            uploadMetrics.record(startNanos, response.code());
             if (response.isSuccessful()) {
                 String result = response.body();
                 LOG.info("Upload for {} to opensense box {} success: {}", sensComId, boxId, result);
@@ -131,27 +218,139 @@ public final class OpenSenseUploader implements IUploader {
                 LOG.warn("Upload for {} to opensense box {} failure: {} - {}", sensComId, boxId, response.code(),
                         response.errorBody().string());
             }
+            return EDeliveryResult.fromHttpCode(response.code());
         } catch (IOException e) {
+            uploadMetrics.record(startNanos, 0);
             LOG.warn("Caught IOException: {}", e.getMessage());
+            return EDeliveryResult.RETRY;
+        }
+    }
+
+    private void addToBatch(String boxId, String sensComId, SensorData data) {
+        SenseBoxSensors sensors = boxSensors.get(boxId);
+        if ((sensors == null) || sensors.isEmpty()) {
+            // sensors of the box are not known, upload in sensor.community format instead
+            uploadMeasurement(boxId, sensComId, createMessage(data));
+            return;
+        }
+        Instant time = Objects.requireNonNullElseGet(data.getTime(), Instant::now);
+        String createdAt = time.truncatedTo(ChronoUnit.MILLIS).toString();
+        List<SensorMeasurement> batch = batches.computeIfAbsent(boxId, id -> new ArrayList<>());
+        sensors.addMeasurements(data, createdAt, batch);
+        if (batch.size() >= batchSize) {
+            flush(boxId);
+        }
+    }
+
+    private void flushAll() {
+        List.copyOf(batches.keySet()).forEach(this::flush);
+    }
+
+    private void flush(String boxId) {
+        List<SensorMeasurement> batch = batches.remove(boxId);
+        if ((batch == null) || batch.isEmpty()) {
+            return;
+        }
+        if (deliverBatch(boxId, batch) == EDeliveryResult.RETRY) {
+            try {
+                spool.append(SPOOL_DESTINATION_BATCH, boxId, mapper.writeValueAsBytes(batch));
+            } catch (JsonProcessingException e) {
+                LOG.warn("Could not spool batch for opensense box {}: {}", boxId, e.getMessage());
+            }
+        }
+    }
+
+    private EDeliveryResult deliverBatch(String boxId, List<SensorMeasurement> batch) {
+        LOG.info("Upload of {} measurements to opensense box {}", batch.size(), boxId);
+        long startNanos = System.nanoTime();
+        try {
+            Response<String> response = restClient.postMeasurements(boxId, batch).execute();
+            batchMetrics.record(startNanos, response.code());
+            if (response.isSuccessful()) {
+                LOG.info("Upload to opensense box {} success: {}", boxId, response.body());
+            } else {
+                LOG.warn("Upload to opensense box {} failure: {} - {}", boxId, response.code(),
+                        response.errorBody().string());
+            }
+            return EDeliveryResult.fromHttpCode(response.code());
+        } catch (IOException e) {
+            batchMetrics.record(startNanos, 0);
+            LOG.warn("Caught IOException: {}", e.getMessage());
+            return EDeliveryResult.RETRY;
+        }
+    }
+
+    // re-sends a spooled upload, runs on the spool thread
+    private EDeliveryResult replay(String key, byte[] payload) {
+        String[] parts = key.split("/", 2);
+        if (parts.length != 2) {
+            LOG.warn("Dropping spooled upload with invalid key '{}'", key);
+            return EDeliveryResult.REJECTED;
+        }
+        try {
+            SensComMessage message = mapper.readValue(payload, SensComMessage.class);
+            return deliver(parts[0], parts[1], message);
+        } catch (IOException e) {
+            LOG.warn("Dropping invalid spooled upload '{}': {}", key, e.getMessage());
+            return EDeliveryResult.REJECTED;
+        }
+    }
+
+    // re-sends a spooled batch, runs on the spool thread
+    private EDeliveryResult replayBatch(String boxId, byte[] payload) {
+        try {
+            SensorMeasurement[] batch = mapper.readValue(payload, SensorMeasurement[].class);
+            return deliverBatch(boxId, List.of(batch));
+        } catch (IOException e) {
+            LOG.warn("Dropping invalid spooled batch for '{}': {}", boxId, e.getMessage());
+            return EDeliveryResult.REJECTED;
         }
     }
 
+    @Override
+    public Set<String> getAttributeNames() {
+        return Set.of(boxIds.getAttributeName());
+    }
+
     @Override
     public void scheduleProcessAttributes(String appId, Map<String, AttributeMap> attributes) {
-        executor.execute(new CatchingRunnable(LOG, () -> processAttributes(appId, attributes)));
+        Map<String, String> mapping = boxIds.update(appId, attributes);
+        mapping.forEach((devId, id) -> LOG.info("Opensense mapping: {} -> {}", new AppDeviceId(appId, devId), id));
+        if (isBatching()) {
+            Set.copyOf(mapping.values()).forEach(this::updateBoxSensors);
+        }
     }
 
-    private void processAttributes(String appId, Map<String, AttributeMap> attributes) {
-        boxIds.clear();
-        attributes.forEach((devId, attr) -> processDeviceAttributes(appId, devId, attr));
-        boxIds.forEach((device, id) -> LOG.info("Opensense mapping: {} -> {}", device, id));
+    // fetches the sensors of a box asynchronously, so uploads don't wait for it, keeps the previous sensors if that
+    // fails
+    private void updateBoxSensors(String boxId) {
+        restClient.getBox(boxId).enqueue(new Callback<SenseBox>() {
+            @Override
+            public void onResponse(Call<SenseBox> call, Response<SenseBox> response) {
+                if (response.isSuccessful() && (response.body() != null)) {
+                    SenseBoxSensors sensors = SenseBoxSensors.fromBox(response.body());
+                    if (sensors.isEmpty()) {
+                        LOG.warn("No matching sensors in opensense box {}, not batching", boxId);
+                    }
+                    setBoxSensors(boxId, sensors);
+                } else {
+                    LOG.warn("Could not get opensense box {}: {}", boxId, response.code());
+                }
+            }
+
+            @Override
+            public void onFailure(Call<SenseBox> call, Throwable t) {
+                LOG.warn("Could not get opensense box {}: {}", boxId, t.getMessage());
+            }
+        });
     }
 
-    private void processDeviceAttributes(String appId, String devId, AttributeMap attributes) {
-        String opensenseId = attributes.getOrDefault("opensense-id", "").trim();
-        if (!opensenseId.isEmpty()) {
-            AppDeviceId appDeviceId = new AppDeviceId(appId, devId);
-            boxIds.put(appDeviceId, opensenseId);
+    // hands the sensors of a box over to the executor thread
+    private void setBoxSensors(String boxId, SenseBoxSensors sensors) {
+        try {
+            executor.execute(new CatchingRunnable(LOG, () -> boxSensors.put(boxId, sensors)));
+        } catch (RejectedExecutionException e) {
+            LOG.info("Not updating sensors of opensense box {}, uploader stopped", boxId);
         }
     }
 
@@ -0,0 +1,77 @@
+package nl.bertriksikken.opensense;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import nl.bertriksikken.opensense.dto.SenseBox;
+import nl.bertriksikken.opensense.dto.Sensor;
+import nl.bertriksikken.opensense.dto.SensorMeasurement;
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.SensorData;
+
+/**
+ * Mapping from measurement items to the sensors of one openSenseMap box.<br>
+ * <br>
+ * Sensors are matched by title, using the titles that openSenseMap assigns to
+ * the sensors of a sensor.community/luftdaten box.
+ */
+final class SenseBoxSensors {
+
+    private static final Map<ESensorItem, List<String>> TITLES = Map.of(
+            ESensorItem.PM10, List.of("PM10"),
+            ESensorItem.PM2_5, List.of("PM2.5", "PM25"),
+            ESensorItem.PM1_0, List.of("PM1.0", "PM1"),
+            ESensorItem.PM4_0, List.of("PM4.0", "PM4"),
+            ESensorItem.TEMPERATURE, List.of("Temperatur", "Temperature"),
+            ESensorItem.HUMIDITY, List.of("rel. Luftfeuchte", "Luftfeuchtigkeit", "Humidity"),
+            ESensorItem.PRESSURE, List.of("Luftdruck", "Pressure"));
+
+    private final Map<ESensorItem, Sensor> sensors = new EnumMap<>(ESensorItem.class);
+
+    private SenseBoxSensors() {
+    }
+
+    static SenseBoxSensors fromBox(SenseBox box) {
+        SenseBoxSensors boxSensors = new SenseBoxSensors();
+        for (Sensor sensor : box.getSensors()) {
+            String title = (sensor.getTitle() != null) ? sensor.getTitle().trim() : "";
+            TITLES.forEach((item, titles) -> {
+                if (titles.stream().anyMatch(title::equalsIgnoreCase)) {
+                    boxSensors.sensors.putIfAbsent(item, sensor);
+                }
+            });
+        }
+        return boxSensors;
+    }
+
+    boolean isEmpty() {
+        return sensors.isEmpty();
+    }
+
+    /**
+     * Adds a measurement for each item of the sensor data that has a sensor in this box.
+     *
+     * @param data         the sensor data
+     * @param createdAt    the timestamp of the measurements
+     * @param measurements list to add the measurements to
+     */
+    void addMeasurements(SensorData data, String createdAt, List<SensorMeasurement> measurements) {
+        sensors.forEach((item, sensor) -> {
+            if (data.has(item)) {
+                String value = String.format(Locale.ROOT, "%.2f", convert(item, sensor, data.getDouble(item)));
+                measurements.add(new SensorMeasurement(sensor.getId(), value, createdAt));
+            }
+        });
+    }
+
+    // pressure is in Pa, but boxes usually have their pressure sensor in hPa
+    private static double convert(ESensorItem item, Sensor sensor, double value) {
+        if ((item == ESensorItem.PRESSURE) && "hPa".equalsIgnoreCase(sensor.getUnit())) {
+            return value / 100.0;
+        }
+        return value;
+    }
+
+}
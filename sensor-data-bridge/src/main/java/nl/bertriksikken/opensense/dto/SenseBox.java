@@ -15,6 +15,14 @@ public final class SenseBox {
     @JsonProperty("sensors")
     private List<Sensor> sensors;
 
+    public String getName() {
+        return name;
+    }
+
+    public List<Sensor> getSensors() {
+        return (sensors != null) ? List.copyOf(sensors) : List.of();
+    }
+
     @Override
     public String toString() {
         return String.format(Locale.ROOT, "{name=%s,sensors=%s}", name, sensors);
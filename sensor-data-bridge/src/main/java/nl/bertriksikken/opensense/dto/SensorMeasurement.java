@@ -0,0 +1,52 @@
+package nl.bertriksikken.opensense.dto;
+
+import java.util.Locale;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One measurement of a specific sensor, as used in a bulk upload.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class SensorMeasurement {
+
+    @JsonProperty("sensor")
+    private String sensorId;
+
+    @JsonProperty("value")
+    private String value;
+
+    @JsonProperty("createdAt")
+    private String createdAt;
+
+    // jackson no-arg constructor
+    @SuppressWarnings("unused")
+    private SensorMeasurement() {
+        this("", "", "");
+    }
+
+    public SensorMeasurement(String sensorId, String value, String createdAt) {
+        this.sensorId = sensorId;
+        this.value = value;
+        this.createdAt = createdAt;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "{sensor=%s,value=%s,createdAt=%s}", sensorId, value, createdAt);
+    }
+
+}
@@ -60,11 +60,11 @@ public enum ESensorItem {
         return String.format(Locale.ROOT, "%s (%s)", description, unit);
     }
 
-    public boolean inRange(Double value) {
+    public boolean inRange(double value) {
         return Double.isFinite(value) && (value >= minValue) && (value <= maxValue);
     }
 
-    public String format(Number value) {
-        return String.format(Locale.ROOT, "%s=%s%s", name(), value, unit);
+    public String format(double value) {
+        return name() + "=" + value + unit;
     }
 }
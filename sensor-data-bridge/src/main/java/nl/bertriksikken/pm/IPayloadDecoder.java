@@ -0,0 +1,19 @@
+package nl.bertriksikken.pm;
+
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+
+/**
+ * Decodes the payload of an uplink message into sensor data.
+ */
+public interface IPayloadDecoder {
+
+    /**
+     * Decodes an uplink message.
+     *
+     * @param uplink the uplink message
+     * @param data   the sensor data to add the decoded items to
+     * @throws PayloadParseException in case the payload could not be decoded
+     */
+    void decode(TtnUplinkMessage uplink, SensorData data) throws PayloadParseException;
+
+}
@@ -1,47 +1,111 @@
 package nl.bertriksikken.pm;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.time.Instant;
+import java.util.StringJoiner;
 
 /**
- * Collection of measurement items.
+ * Collection of measurement items.<br>
+ * <br>
+ * Values are stored as primitive doubles indexed by item ordinal, with a bit
+ * mask to indicate which items are present, so adding and reading values does
+ * not allocate.
  */
 public final class SensorData {
 
-    // start with a simple map containing one Number value per item
-    private final Map<ESensorItem, Number> items = new LinkedHashMap<>();
+    private static final ESensorItem[] ITEMS = ESensorItem.values();
 
-    public void putValue(ESensorItem item, Number value) {
-        if (value == null) {
+    static {
+        if (ITEMS.length > Long.SIZE) {
+            throw new IllegalStateException("Too many sensor items for presence mask: " + ITEMS.length);
+        }
+    }
+
+    private final double[] values = new double[ITEMS.length];
+    // bit mask of present items, indexed by ordinal
+    private long present;
+    // ordinals of present items, in insertion order
+    private final byte[] order = new byte[ITEMS.length];
+    private int size;
+    private Instant time;
+
+    public void putValue(ESensorItem item, double value) {
+        if (!Double.isFinite(value)) {
             return;
         }
-        if ((value instanceof Double) && !Double.isFinite(value.doubleValue())) {
+        int ordinal = item.ordinal();
+        long bit = 1L << ordinal;
+        if ((present & bit) == 0) {
+            present |= bit;
+            order[size++] = (byte) ordinal;
+        }
+        values[ordinal] = value;
+    }
+
+    public void putValue(ESensorItem item, Number value) {
+        if (value == null) {
             return;
         }
-        items.put(item, value);
+        putValue(item, value.doubleValue());
+    }
+
+    public boolean has(ESensorItem item) {
+        return (present & (1L << item.ordinal())) != 0;
+    }
+
+    /**
+     * @return the bit mask of present items, bit N is set if the item with ordinal N is present
+     */
+    public long getPresentMask() {
+        return present;
+    }
+
+    /**
+     * @param item the item
+     * @return the value of the item, NaN if not present
+     */
+    public double getDouble(ESensorItem item) {
+        return has(item) ? values[item.ordinal()] : Double.NaN;
     }
 
     public boolean hasValue(ESensorItem item) {
-        return items.containsKey(item);
+        return has(item);
     }
 
+    /**
+     * @param item the item
+     * @return the value of the item, null if not present
+     */
     public Double getValue(ESensorItem item) {
-        return items.get(item).doubleValue();
+        return has(item) ? values[item.ordinal()] : null;
     }
 
     public Number get(ESensorItem item) {
-        return items.get(item);
+        return getValue(item);
+    }
+
+    public void setTime(Instant time) {
+        this.time = time;
+    }
+
+    /**
+     * @return the time of the measurement, null if unknown
+     */
+    public Instant getTime() {
+        return time;
     }
 
     public boolean hasValid(ESensorItem item) {
-        return items.containsKey(item) && item.inRange(items.get(item).doubleValue());
+        return has(item) && item.inRange(values[item.ordinal()]);
     }
 
     @Override
     public String toString() {
-        return items.entrySet().stream().map(entry -> entry.getKey().format(entry.getValue()))
-                .collect(Collectors.joining(",", "{", "}"));
+        StringJoiner joiner = new StringJoiner(",", "{", "}");
+        for (int i = 0; i < size; i++) {
+            int ordinal = order[i];
+            joiner.add(ITEMS[ordinal].format(values[ordinal]));
+        }
+        return joiner.toString();
     }
 
 }
@@ -0,0 +1,127 @@
+package nl.bertriksikken.pm.cayenne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.IPayloadDecoder;
+import nl.bertriksikken.pm.PayloadParseException;
+import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+import nl.sikken.bertrik.cayenne.CayenneException;
+import nl.sikken.bertrik.cayenne.CayenneMessage;
+import nl.sikken.bertrik.cayenne.ECayenneItem;
+import nl.sikken.bertrik.cayenne.ECayennePayloadFormat;
+
+/**
+ * Decodes particulate matter, meteo and position data in Cayenne format.<br>
+ * <br>
+ * Values are decoded straight into the sensor data as primitives. Like
+ * {@link TtnCayenneMessage}, only the first item of each kind is used.<br>
+ * <br>
+ * By default, every port carries the dynamic sensor payload. With port formats
+ * enabled, the payload format follows from the LoRaWAN port as in Cayenne LPP
+ * 2.0: packed sensor payload on port 2, full scale GPS payload on port 3, the
+ * dynamic sensor payload on all other ports.
+ */
+public final class TtnCayenneDecoder implements IPayloadDecoder {
+
+    // decoder property that enables the payload formats by port
+    static final String PROPERTY_PORT_FORMATS = "port_formats";
+
+    private final boolean portFormats;
+
+    public TtnCayenneDecoder() {
+        this(false);
+    }
+
+    /**
+     * @param portFormats whether the payload format follows from the port, instead of always being dynamic
+     */
+    public TtnCayenneDecoder(boolean portFormats) {
+        this.portFormats = portFormats;
+    }
+
+    /**
+     * Creates a decoder from the generic decoder properties of an application.
+     *
+     * @param properties the decoder properties, optionally an object with a boolean 'port_formats'
+     * @return the decoder
+     */
+    public static TtnCayenneDecoder create(JsonNode properties) {
+        return new TtnCayenneDecoder((properties != null) && properties.path(PROPERTY_PORT_FORMATS).asBoolean(false));
+    }
+
+    @Override
+    public void decode(TtnUplinkMessage uplink, SensorData data) throws PayloadParseException {
+        try {
+            CayenneMessage.parseValues(uplink.getPayload(), getFormat(uplink.getPort()),
+                    (channel, type, values) -> decodeItem(channel, type, values, data));
+        } catch (CayenneException e) {
+            throw new PayloadParseException(e);
+        }
+    }
+
+    // package-private to allow testing
+    ECayennePayloadFormat getFormat(int port) {
+        if (!portFormats) {
+            return ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD;
+        }
+        ECayennePayloadFormat format = ECayennePayloadFormat.fromPort(port);
+        if ((format == ECayennePayloadFormat.PACKED_SENSOR_PAYLOAD)
+                || (format == ECayennePayloadFormat.FULL_SCALE_GPS_PAYLOAD)) {
+            return format;
+        }
+        return ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD;
+    }
+
+    private static void decodeItem(int channel, ECayenneItem type, double[] values, SensorData data) {
+        switch (type) {
+            case ANALOG_INPUT:
+                decodeAnalog(channel, values[0], data);
+                break;
+            case TEMPERATURE:
+                putFirst(data, ESensorItem.TEMPERATURE, values[0]);
+                break;
+            case HUMIDITY:
+                putFirst(data, ESensorItem.HUMIDITY, values[0]);
+                break;
+            case BAROMETER:
+                putFirst(data, ESensorItem.PRESSURE, 100.0 * values[0]);
+                break;
+            case GPS_LOCATION:
+                if (!data.has(ESensorItem.GPS_LAT)) {
+                    data.putValue(ESensorItem.GPS_LAT, values[0]);
+                    data.putValue(ESensorItem.GPS_LON, values[1]);
+                    data.putValue(ESensorItem.GPS_ALT, values[2]);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void decodeAnalog(int channel, double value, SensorData data) {
+        switch (channel) {
+            case TtnCayenneMessage.CHANNEL_PM10:
+                putFirst(data, ESensorItem.PM10, value);
+                break;
+            case TtnCayenneMessage.CHANNEL_PM4:
+                putFirst(data, ESensorItem.PM4_0, value);
+                break;
+            case TtnCayenneMessage.CHANNEL_PM2_5:
+                putFirst(data, ESensorItem.PM2_5, value);
+                break;
+            case TtnCayenneMessage.CHANNEL_PM1:
+                putFirst(data, ESensorItem.PM1_0, value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void putFirst(SensorData data, ESensorItem item, double value) {
+        if (!data.has(item)) {
+            data.putValue(item, value);
+        }
+    }
+
+}
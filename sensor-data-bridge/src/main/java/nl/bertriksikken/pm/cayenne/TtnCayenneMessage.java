@@ -1,13 +1,12 @@
 package nl.bertriksikken.pm.cayenne;
 
-import java.util.Arrays;
 import java.util.Optional;
 
 import nl.bertriksikken.pm.PayloadParseException;
 import nl.sikken.bertrik.cayenne.CayenneException;
-import nl.sikken.bertrik.cayenne.CayenneItem;
 import nl.sikken.bertrik.cayenne.CayenneMessage;
 import nl.sikken.bertrik.cayenne.ECayenneItem;
+import nl.sikken.bertrik.cayenne.ECayennePayloadFormat;
 
 /**
  * Cayenne message containing SDS data (as analog values on channels 0..4) and
@@ -15,10 +14,10 @@ import nl.sikken.bertrik.cayenne.ECayenneItem;
  */
 public final class TtnCayenneMessage {
 
-    private static final int CHANNEL_PM2_5 = 2;
-    private static final int CHANNEL_PM4 = 4;
-    private static final int CHANNEL_PM10 = 1;
-    private static final int CHANNEL_PM1 = 0;
+    static final int CHANNEL_PM2_5 = 2;
+    static final int CHANNEL_PM4 = 4;
+    static final int CHANNEL_PM10 = 1;
+    static final int CHANNEL_PM1 = 0;
 
     private Optional<Double> pm10 = Optional.empty();
     private Optional<Double> pm2_5 = Optional.empty();
@@ -31,50 +30,62 @@ public final class TtnCayenneMessage {
 
     public static TtnCayenneMessage parse(byte[] raw) throws PayloadParseException {
         TtnCayenneMessage message = new TtnCayenneMessage();
-        CayenneMessage cayenneMessage = new CayenneMessage();
         try {
-            cayenneMessage.parse(raw);
-
-            CayenneItem p10 = cayenneMessage.find(ECayenneItem.ANALOG_INPUT, CHANNEL_PM10);
-            if (p10 != null) {
-                message.pm10 = Optional.of(p10.getValue().doubleValue());
-            }
-            CayenneItem p25 = cayenneMessage.find(ECayenneItem.ANALOG_INPUT, CHANNEL_PM2_5);
-            if (p25 != null) {
-                message.pm2_5 = Optional.of(p25.getValue().doubleValue());
-            }
-            CayenneItem p4 = cayenneMessage.find(ECayenneItem.ANALOG_INPUT, CHANNEL_PM4);
-            if (p4 != null) {
-                message.pm4 = Optional.of(p4.getValue().doubleValue());
-            }
-            CayenneItem p1 = cayenneMessage.find(ECayenneItem.ANALOG_INPUT, CHANNEL_PM1);
-            if (p1 != null) {
-                message.pm1 = Optional.of(p1.getValue().doubleValue());
-            }
-            CayenneItem temp = cayenneMessage.ofType(ECayenneItem.TEMPERATURE);
-            if (temp != null) {
-                message.tempC = Optional.of(temp.getValue().doubleValue());
-            }
-            CayenneItem rh = cayenneMessage.ofType(ECayenneItem.HUMIDITY);
-            if (rh != null) {
-                message.rhPerc = Optional.of(rh.getValue().doubleValue());
-            }
-            CayenneItem baro = cayenneMessage.ofType(ECayenneItem.BAROMETER);
-            if (baro != null) {
-                message.pressureMillibar = Optional.of(baro.getValue().doubleValue());
-            }
-            CayenneItem pos = cayenneMessage.ofType(ECayenneItem.GPS_LOCATION);
-            if (pos != null) {
-                message.position = Optional
-                        .of(Arrays.stream(pos.getValues()).mapToDouble(Number::doubleValue).toArray());
-
-            }
+            CayenneMessage.parseValues(raw, ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, message::visit);
         } catch (CayenneException e) {
             throw new PayloadParseException(e);
         }
         return message;
     }
 
+    // takes the first PM item on each PM channel and the first item of each other type
+    private void visit(int channel, ECayenneItem type, double[] values) {
+        switch (type) {
+            case ANALOG_INPUT:
+                visitAnalog(channel, values[0]);
+                break;
+            case TEMPERATURE:
+                tempC = first(tempC, values[0]);
+                break;
+            case HUMIDITY:
+                rhPerc = first(rhPerc, values[0]);
+                break;
+            case BAROMETER:
+                pressureMillibar = first(pressureMillibar, values[0]);
+                break;
+            case GPS_LOCATION:
+                if (position.isEmpty()) {
+                    position = Optional.of(values.clone());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void visitAnalog(int channel, double value) {
+        switch (channel) {
+            case CHANNEL_PM10:
+                pm10 = first(pm10, value);
+                break;
+            case CHANNEL_PM2_5:
+                pm2_5 = first(pm2_5, value);
+                break;
+            case CHANNEL_PM4:
+                pm4 = first(pm4, value);
+                break;
+            case CHANNEL_PM1:
+                pm1 = first(pm1, value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Optional<Double> first(Optional<Double> current, double value) {
+        return current.isPresent() ? current : Optional.of(value);
+    }
+
     public boolean hasPm10() {
         return pm10.isPresent();
     }
@@ -1,32 +1,76 @@
 package nl.bertriksikken.pm.json;
 
+import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.IPayloadDecoder;
 import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
 
 /**
  * Decodes a JSON payload, according to a configuration of JSON path and data
- * items (assuming double).
+ * items (assuming double).<br>
+ * <br>
+ * The configuration is compiled once into JSON pointers, sensor items and unit
+ * factors, so decoding a payload only walks the already parsed JSON tree.
  */
-public final class JsonDecoder {
+public final class JsonDecoder implements IPayloadDecoder {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
-    public void parse(JsonNode config, String json, SensorData data) throws JsonProcessingException {
-        // convert JsonNode into JsonDecoderConfig object
-        JsonDecoderConfig jsonDecoderConfig = OBJECT_MAPPER.treeToValue(config, JsonDecoderConfig.class);
+    private final JsonPointer[] pointers;
+    private final ESensorItem[] items;
+    private final double[] units;
 
-        // parse JSON into generic structure
-        JsonNode tree = OBJECT_MAPPER.readTree(json);
+    /**
+     * Constructor.
+     *
+     * @param config the decoder configuration
+     * @throws IllegalArgumentException in case a path is not a valid JSON pointer
+     */
+    public JsonDecoder(JsonDecoderConfig config) {
+        int size = config.size();
+        pointers = new JsonPointer[size];
+        items = new ESensorItem[size];
+        units = new double[size];
+        for (int i = 0; i < size; i++) {
+            JsonDecoderItem item = config.get(i);
+            pointers[i] = JsonPointer.compile(item.path);
+            items[i] = item.item;
+            units[i] = item.unit;
+        }
+    }
+
+    /**
+     * Creates a decoder from the generic decoder properties of an application.
+     *
+     * @param properties the decoder properties, a list of path/item/unit entries
+     * @return the compiled decoder
+     * @throws JsonProcessingException in case the properties could not be converted
+     */
+    public static JsonDecoder create(JsonNode properties) throws JsonProcessingException {
+        return new JsonDecoder(OBJECT_MAPPER.treeToValue(properties, JsonDecoderConfig.class));
+    }
+
+    @Override
+    public void decode(TtnUplinkMessage uplink, SensorData data) {
+        parse(uplink.getDecodedPayload(), data);
+    }
 
-        // extract measurement items
-        for (JsonDecoderItem item : jsonDecoderConfig) {
-            JsonNode node = tree.at(item.path);
-            double value = node.asDouble(Double.NaN) * item.unit;
+    /**
+     * Extracts the configured measurement items from a JSON tree.
+     *
+     * @param payload the decoded payload
+     * @param data    the sensor data to add the items to
+     */
+    public void parse(JsonNode payload, SensorData data) {
+        for (int i = 0; i < pointers.length; i++) {
+            double value = payload.at(pointers[i]).asDouble(Double.NaN) * units[i];
             if (Double.isFinite(value)) {
-                data.putValue(item.item, value);
+                data.putValue(items[i], value);
             }
         }
     }
@@ -0,0 +1,29 @@
+package nl.bertriksikken.pm.sps30;
+
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.IPayloadDecoder;
+import nl.bertriksikken.pm.PayloadParseException;
+import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+
+/**
+ * Decodes SPS30 mass, count and particle size data.
+ */
+public final class Sps30Decoder implements IPayloadDecoder {
+
+    @Override
+    public void decode(TtnUplinkMessage uplink, SensorData data) throws PayloadParseException {
+        Sps30Message message = Sps30Message.parse(uplink.getPayload());
+        data.putValue(ESensorItem.PM1_0, message.getPm1_0());
+        data.putValue(ESensorItem.PM2_5, message.getPm2_5());
+        data.putValue(ESensorItem.PM4_0, message.getPm4_0());
+        data.putValue(ESensorItem.PM10, message.getPm10());
+        data.putValue(ESensorItem.PM0_5_N, message.getN0_5());
+        data.putValue(ESensorItem.PM1_0_N, message.getN1_0());
+        data.putValue(ESensorItem.PM2_5_N, message.getN2_5());
+        data.putValue(ESensorItem.PM4_0_N, message.getN4_0());
+        data.putValue(ESensorItem.PM10_N, message.getN10());
+        data.putValue(ESensorItem.PM_TPS, message.getTps());
+    }
+
+}
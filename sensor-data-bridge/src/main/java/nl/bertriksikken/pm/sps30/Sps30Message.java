@@ -29,9 +29,16 @@ public final class Sps30Message {
     private double tps;
 
     public static Sps30Message parse(byte[] raw) throws PayloadParseException {
+        return parse(ByteBuffer.wrap(raw));
+    }
+
+    /**
+     * Parses a message from the remaining bytes of the buffer, without copying them.
+     */
+    public static Sps30Message parse(ByteBuffer bb) throws PayloadParseException {
         Sps30Message message = new Sps30Message();
         try {
-            ByteBuffer bb = ByteBuffer.wrap(raw).order(ByteOrder.BIG_ENDIAN);
+            bb.order(ByteOrder.BIG_ENDIAN);
             message.pm1_0 = (bb.getShort() & 0xFFFF) / 10.0;
             message.pm2_5 = (bb.getShort() & 0xFFFF) / 10.0;
             message.pm4_0 = (bb.getShort() & 0xFFFF) / 10.0;
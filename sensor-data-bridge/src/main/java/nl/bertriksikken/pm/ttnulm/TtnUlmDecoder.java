@@ -0,0 +1,23 @@
+package nl.bertriksikken.pm.ttnulm;
+
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.IPayloadDecoder;
+import nl.bertriksikken.pm.PayloadParseException;
+import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+
+/**
+ * Decodes the TTN Ulm particulate matter format.
+ */
+public final class TtnUlmDecoder implements IPayloadDecoder {
+
+    @Override
+    public void decode(TtnUplinkMessage uplink, SensorData data) throws PayloadParseException {
+        TtnUlmMessage message = TtnUlmMessage.parse(uplink.getPayload());
+        data.putValue(ESensorItem.PM10, message.getPm10());
+        data.putValue(ESensorItem.PM2_5, message.getPm2_5());
+        data.putValue(ESensorItem.HUMIDITY, message.getRhPerc());
+        data.putValue(ESensorItem.TEMPERATURE, message.getTempC());
+    }
+
+}
@@ -14,9 +14,16 @@ public final class TtnUlmMessage {
     private double tempC;
 
     public static TtnUlmMessage parse(byte[] raw)  throws PayloadParseException {
+        return parse(ByteBuffer.wrap(raw));
+    }
+
+    /**
+     * Parses a message from the remaining bytes of the buffer, without copying them.
+     */
+    public static TtnUlmMessage parse(ByteBuffer bb) throws PayloadParseException {
         TtnUlmMessage message = new TtnUlmMessage();
         try {
-            ByteBuffer bb = ByteBuffer.wrap(raw).order(ByteOrder.BIG_ENDIAN);
+            bb.order(ByteOrder.BIG_ENDIAN);
             message.pm10 = bb.getShort() / 100.0;
             message.pm2_5 = bb.getShort() / 100.0;
             message.rhPerc = bb.getShort() / 100.0;
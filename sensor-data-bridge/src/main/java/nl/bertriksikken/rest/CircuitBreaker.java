@@ -0,0 +1,147 @@
+package nl.bertriksikken.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Circuit breaker and adaptive timeout for requests to one host.<br>
+ * <br>
+ * The circuit opens after a number of consecutive failures, requests are then refused without
+ * contacting the host. After the open duration, a single trial request is let through (half-open):
+ * if it succeeds the circuit closes, otherwise it opens again.<br>
+ * The timeout follows the latency of recent responses, a multiple of the 99th percentile, bounded
+ * by a minimum and the configured timeout. Timed out requests give no latency sample, so a time-out
+ * doubles the timeout and opening the circuit resets it to the configured timeout, otherwise the
+ * timeout could never grow back when a host becomes slower.
+ */
+final class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    // number of recent latencies the timeout is based on
+    private static final int WINDOW = 128;
+    // the timeout is only adapted once there are enough samples, and then every few samples
+    private static final int MIN_SAMPLES = 32;
+    private static final int UPDATE_INTERVAL = 16;
+    private static final int TIMEOUT_FACTOR = 3;
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String host;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final long minTimeoutMillis;
+    private final long maxTimeoutMillis;
+    private final Clock clock;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private final long[] latencies = new long[WINDOW];
+    private long samples;
+    private long timeoutMillis;
+
+    CircuitBreaker(String host, int failureThreshold, Duration openDuration, Duration minTimeout, Duration maxTimeout,
+            Clock clock) {
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDuration.toMillis();
+        this.minTimeoutMillis = minTimeout.toMillis();
+        this.maxTimeoutMillis = maxTimeout.toMillis();
+        this.clock = clock;
+        this.timeoutMillis = maxTimeoutMillis;
+    }
+
+    /**
+     * Checks whether a request may be sent, the caller must report its outcome if so.
+     *
+     * @return true if the request may be sent, false if it should fail fast
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if ((clock.millis() - openedAt) < openDurationMillis) {
+                    return false;
+                }
+                LOG.info("Circuit for {} half-open, sending a trial request", host);
+                state = State.HALF_OPEN;
+                return true;
+            case HALF_OPEN:
+            default:
+                // trial request in progress
+                return false;
+        }
+    }
+
+    /**
+     * Records a response from the host.
+     *
+     * @param latencyMillis the time until the response arrived
+     */
+    synchronized void onSuccess(long latencyMillis) {
+        recordLatency(latencyMillis);
+        failures = 0;
+        if (state != State.CLOSED) {
+            LOG.info("Circuit for {} closed", host);
+            state = State.CLOSED;
+        }
+    }
+
+    /**
+     * Records a request that timed out, doubling the timeout up to the configured timeout.
+     */
+    synchronized void onTimeout() {
+        timeoutMillis = Math.min(maxTimeoutMillis, 2 * timeoutMillis);
+        onFailure();
+    }
+
+    /**
+     * Records a failed request, e.g. a server error.
+     */
+    synchronized void onFailure() {
+        failures++;
+        boolean trip = (state == State.HALF_OPEN)
+                || ((state == State.CLOSED) && (failureThreshold > 0) && (failures >= failureThreshold));
+        if (trip) {
+            LOG.warn("Circuit for {} opened after {} failures, failing fast for {} ms", host, failures,
+                    openDurationMillis);
+            state = State.OPEN;
+            openedAt = clock.millis();
+            // the trial request gets the full timeout
+            timeoutMillis = maxTimeoutMillis;
+        }
+    }
+
+    /**
+     * @return the timeout for the next request, in milliseconds
+     */
+    synchronized long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void recordLatency(long millis) {
+        latencies[(int) (samples % WINDOW)] = millis;
+        samples++;
+        if ((samples >= MIN_SAMPLES) && ((samples % UPDATE_INTERVAL) == 0)) {
+            int count = (int) Math.min(samples, WINDOW);
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long p99 = sorted[(int) Math.ceil(0.99 * count) - 1];
+            timeoutMillis = Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, TIMEOUT_FACTOR * p99));
+        }
+    }
+
+}
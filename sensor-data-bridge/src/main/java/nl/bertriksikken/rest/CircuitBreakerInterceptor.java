@@ -0,0 +1,88 @@
+package nl.bertriksikken.rest;
+
+import nl.bertriksikken.spool.EDeliveryResult;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttp interceptor with a circuit breaker and an adaptive timeout for each host.<br>
+ * <br>
+ * While the circuit of a host is open, requests fail immediately with a {@link CircuitOpenException},
+ * so callers treat them like any other I/O failure (e.g. spool the upload) without tying up a thread
+ * or connection for the full timeout.
+ */
+public final class CircuitBreakerInterceptor implements Interceptor {
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final RestApiConfig config;
+    private final Clock clock;
+
+    // package-private to allow testing
+    CircuitBreakerInterceptor(RestApiConfig config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates an interceptor with the circuit breaker and timeout settings of a REST API configuration.
+     */
+    public static CircuitBreakerInterceptor create(RestApiConfig config) {
+        return new CircuitBreakerInterceptor(config, Clock.systemUTC());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String host = request.url().host();
+        CircuitBreaker breaker = breakers.computeIfAbsent(host, this::createBreaker);
+        if (!breaker.tryAcquire()) {
+            throw new CircuitOpenException(host);
+        }
+        int timeoutMillis = (int) breaker.getTimeoutMillis();
+        long startNanos = System.nanoTime();
+        Response response;
+        try {
+            response = chain.withConnectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .withReadTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .withWriteTimeout(timeoutMillis, TimeUnit.MILLISECONDS).proceed(request);
+        } catch (InterruptedIOException e) {
+            // a time-out
+            breaker.onTimeout();
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+        if (EDeliveryResult.fromHttpCode(response.code()) == EDeliveryResult.RETRY) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+        return response;
+    }
+
+    private CircuitBreaker createBreaker(String host) {
+        return new CircuitBreaker(host, config.getFailureThreshold(), config.getOpenDuration(),
+                config.getMinTimeout(), config.getTimeout(), clock);
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit of its host is open.
+     */
+    public static final class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(String host) {
+            super("Circuit open for " + host);
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package nl.bertriksikken.rest;
+
+import java.time.Duration;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the HTTP connections shared by all REST clients.
+ */
+@JsonAutoDetect(getterVisibility = Visibility.NONE)
+public final class HttpClientConfig {
+
+    // maximum number of idle connections kept in the pool
+    @JsonProperty("max_idle_connections")
+    private int maxIdleConnections = 10;
+
+    // time an idle connection is kept open for reuse (seconds)
+    @JsonProperty("keep_alive")
+    private int keepAliveSec = 300;
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public Duration getKeepAlive() {
+        return Duration.ofSeconds(keepAliveSec);
+    }
+
+}
@@ -0,0 +1,70 @@
+package nl.bertriksikken.rest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * Creates the HTTP clients of all REST APIs, from one shared base client.<br>
+ * <br>
+ * Clients derived with {@link OkHttpClient#newBuilder()} share the connection pool, the dispatcher
+ * and the TLS socket factory (and with it the TLS session cache) of the base client. So a connection
+ * or TLS session to a host is reused by all clients of that host, HTTP/2 connections are multiplexed,
+ * and the number of threads does not grow with the number of applications.<br>
+ * <br>
+ * Clients for the same REST API URL also share one circuit breaker interceptor, so e.g. the device
+ * registry clients of all applications see the same circuit and learned timeout of the identity server.
+ */
+public final class HttpClientFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientFactory.class);
+
+    private final OkHttpClient baseClient;
+    // circuit breaker interceptors, by REST API URL
+    private final Map<String, CircuitBreakerInterceptor> interceptors = new ConcurrentHashMap<>();
+
+    public HttpClientFactory(HttpClientConfig config) {
+        LOG.info("Creating HTTP connection pool with {} idle connections, keep-alive {}",
+                config.getMaxIdleConnections(), config.getKeepAlive());
+        ConnectionPool pool = new ConnectionPool(config.getMaxIdleConnections(), config.getKeepAlive().toMillis(),
+                TimeUnit.MILLISECONDS);
+        baseClient = new OkHttpClient.Builder().connectionPool(pool).build();
+    }
+
+    /**
+     * Creates a client for a REST API, with its timeout and circuit breaker.
+     */
+    public OkHttpClient create(RestApiConfig config) {
+        return newBuilder(config).build();
+    }
+
+    /**
+     * Creates a builder for a client for a REST API, with its timeout and circuit breaker, for further customization.
+     */
+    public OkHttpClient.Builder newBuilder(RestApiConfig config) {
+        Duration timeout = config.getTimeout();
+        return baseClient.newBuilder().addInterceptor(getInterceptor(config))
+                .connectTimeout(timeout).readTimeout(timeout).writeTimeout(timeout);
+    }
+
+    // package-private to allow testing
+    CircuitBreakerInterceptor getInterceptor(RestApiConfig config) {
+        return interceptors.computeIfAbsent(config.getUrl(), url -> CircuitBreakerInterceptor.create(config));
+    }
+
+    /**
+     * Closes the idle connections and stops the threads of the shared dispatcher.
+     */
+    public void stop() {
+        baseClient.dispatcher().executorService().shutdown();
+        baseClient.connectionPool().evictAll();
+    }
+
+}
@@ -15,6 +15,18 @@ public class RestApiConfig {
     @JsonProperty("timeout")
     private final int timeoutSec;
 
+    // consecutive failures that open the circuit breaker of a host, 0 disables the circuit breaker
+    @JsonProperty("failure_threshold")
+    private int failureThreshold = 5;
+
+    // time the circuit breaker stays open before a trial request is let through (seconds)
+    @JsonProperty("open_duration")
+    private int openDurationSec = 30;
+
+    // lower bound of the timeout adapted to the observed latency (seconds), 'timeout' is the upper bound
+    @JsonProperty("min_timeout")
+    private int minTimeoutSec = 2;
+
     // jackson no-arg constructor
     @SuppressWarnings("unused")
     private RestApiConfig() {
@@ -35,4 +47,16 @@ public class RestApiConfig {
         return Duration.ofSeconds(timeoutSec);
     }
 
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return Duration.ofSeconds(openDurationSec);
+    }
+
+    public Duration getMinTimeout() {
+        return Duration.ofSeconds(Math.min(minTimeoutSec, timeoutSec));
+    }
+
 }
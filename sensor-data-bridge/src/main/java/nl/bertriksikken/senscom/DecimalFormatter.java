@@ -0,0 +1,87 @@
+package nl.bertriksikken.senscom;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Formats values with a fixed number of decimals, rounding half up.<br>
+ * <br>
+ * The output is identical to {@code BigDecimal.valueOf(value).setScale(digits, RoundingMode.HALF_UP).toString()},
+ * without creating intermediate objects. The value is scaled and rounded in floating point, which is exact except
+ * very close to a rounding tie. Values that close to a tie, too large to scale, or with more than 6 decimals, are
+ * formatted with BigDecimal.
+ */
+final class DecimalFormatter {
+
+    // BigDecimal switches to scientific notation beyond 6 decimals, which is left to BigDecimal itself
+    private static final long[] POWERS = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
+    private static final int MAX_DIGITS = POWERS.length - 1;
+    private static final double MAX_SCALED = 1E9;
+    // distance from a rounding tie that is safe, far larger than the error of scaling values below MAX_SCALED
+    private static final double TIE_MARGIN = 1E-5;
+    private static final int MAX_LENGTH = 32;
+
+    private DecimalFormatter() {
+        // no instances
+    }
+
+    /**
+     * @param value  the value
+     * @param digits the number of decimals
+     * @return the formatted value
+     * @throws NumberFormatException in case the value is infinite or NaN
+     */
+    static String format(double value, int digits) {
+        StringBuilder sb = new StringBuilder(MAX_LENGTH);
+        append(sb, value, digits);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a value to a string builder.
+     *
+     * @param sb     the string builder
+     * @param value  the value
+     * @param digits the number of decimals
+     * @throws NumberFormatException in case the value is infinite or NaN
+     */
+    static void append(StringBuilder sb, double value, int digits) {
+        if ((digits < 0) || (digits > MAX_DIGITS)) {
+            appendBigDecimal(sb, value, digits);
+            return;
+        }
+        long power = POWERS[digits];
+        double scaled = Math.abs(value) * power;
+        // also catches NaN
+        if (!(scaled < MAX_SCALED)) {
+            appendBigDecimal(sb, value, digits);
+            return;
+        }
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            appendBigDecimal(sb, value, digits);
+            return;
+        }
+        long rounded = (long) floor + ((fraction > 0.5) ? 1 : 0);
+
+        // BigDecimal has no negative zero
+        if ((value < 0) && (rounded != 0)) {
+            sb.append('-');
+        }
+        sb.append(rounded / power);
+        if (digits > 0) {
+            sb.append('.');
+            long decimals = rounded % power;
+            for (long p = power / 10; (p > decimals) && (p > 1); p /= 10) {
+                sb.append('0');
+            }
+            sb.append(decimals);
+        }
+    }
+
+    private static void appendBigDecimal(StringBuilder sb, double value, int digits) {
+        sb.append(BigDecimal.valueOf(value).setScale(digits, RoundingMode.HALF_UP).toString());
+    }
+
+}
@@ -2,9 +2,6 @@ package nl.bertriksikken.senscom;
 
 import nl.bertriksikken.pm.ESensorItem;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-
 public enum ESensComItem {
 
     // particulate matter
@@ -57,7 +54,7 @@ public enum ESensComItem {
         return id;
     }
 
-    public String format(Double value) {
-        return BigDecimal.valueOf(value).setScale(digits, RoundingMode.HALF_UP).toString();
+    public String format(double value) {
+        return DecimalFormatter.format(value, digits);
     }
 }
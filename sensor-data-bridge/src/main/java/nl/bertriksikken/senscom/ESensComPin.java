@@ -2,27 +2,52 @@ package nl.bertriksikken.senscom;
 
 import java.util.Locale;
 
+/**
+ * Sensor.community pins, each with the rule that decides which sensor data is uploaded to it.
+ */
 public enum ESensComPin {
-    PARTICULATE_MATTER(1), // dust sensors, e.g. SDS011, PMS1003, PMS7003
-    TEMPERATURE_PRESSURE(3), // temperature & pressure, but no humidity, e.g. BMP180
-    TEMPERATURE_HUMIDITY(7), // temperature & humidity, but no pressure, e.g. DHT22
-    POSITION(9), // WGS84
-    TEMPERATURE_HUMIDITY_PRESSURE(11), // temperature & humidity & pressure, e.g. BME280
-    TEMPERATURE(13), // only temperature
-    NOISE(15), // noise
-    NO2(17), // not implemented
-    RADIATION(19); // not implemented
+    // dust sensors, e.g. SDS011, PMS1003, PMS7003
+    PARTICULATE_MATTER(1,
+            SensComRule.anyOf(ESensComItem.PM10, ESensComItem.PM4, ESensComItem.PM2_5, ESensComItem.PM1_0)
+                    .optional(ESensComItem.PM10_N, ESensComItem.PM4_0_N, ESensComItem.PM2_5_N,
+                            ESensComItem.PM1_0_N, ESensComItem.PM0_5_N, ESensComItem.PM_TPS)),
+    // temperature & pressure, but no humidity, e.g. BMP180
+    TEMPERATURE_PRESSURE(3,
+            SensComRule.requires(ESensComItem.TEMPERATURE, ESensComItem.PRESSURE).forbids(ESensComItem.HUMIDITY)),
+    // temperature & humidity, but no pressure, e.g. DHT22
+    TEMPERATURE_HUMIDITY(7,
+            SensComRule.requires(ESensComItem.TEMPERATURE, ESensComItem.HUMIDITY).forbids(ESensComItem.PRESSURE)),
+    // WGS84, latitude and longitude only count as present if valid
+    POSITION(9, SensComRule.requires(ESensComItem.GPS_LAT, ESensComItem.GPS_LON).optional(ESensComItem.GPS_ALT)),
+    // temperature & humidity & pressure, e.g. BME280
+    TEMPERATURE_HUMIDITY_PRESSURE(11,
+            SensComRule.requires(ESensComItem.TEMPERATURE, ESensComItem.HUMIDITY, ESensComItem.PRESSURE)),
+    // only temperature
+    TEMPERATURE(13,
+            SensComRule.requires(ESensComItem.TEMPERATURE).forbids(ESensComItem.HUMIDITY, ESensComItem.PRESSURE)),
+    // noise
+    NOISE(15,
+            SensComRule.requires(ESensComItem.NOISE_LA_EQ)
+                    .optional(ESensComItem.NOISE_LA_MIN, ESensComItem.NOISE_LA_MAX)),
+    NO2(17, SensComRule.NONE), // not implemented
+    RADIATION(19, SensComRule.NONE); // not implemented
 
     private final int pin;
+    private final SensComRule rule;
 
-    ESensComPin(int pin) {
+    ESensComPin(int pin, SensComRule rule) {
         this.pin = pin;
+        this.rule = rule;
     }
 
     String getPin() {
         return String.format(Locale.ROOT, "%d", pin);
     }
 
+    SensComRule getRule() {
+        return rule;
+    }
+
     @Override
     public String toString() {
         return getPin();
@@ -1,9 +1,23 @@
 package nl.bertriksikken.senscom;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import nl.bertriksikken.rest.RestApiConfig;
 
 public final class SensComConfig extends RestApiConfig {
 
+    // maximum number of concurrent uploads
+    @JsonProperty("max_requests")
+    private int maxRequests = 16;
+
+    // maximum number of concurrent uploads to the same host
+    @JsonProperty("max_requests_per_host")
+    private int maxRequestsPerHost = 8;
+
+    // keep only the newest waiting upload for each sensor and pin, instead of queueing all of them
+    @JsonProperty("coalesce")
+    private boolean coalesce = true;
+
     // jackson no-arg constructor
     public SensComConfig() {
         this("https://api.sensor.community", 30);
@@ -13,4 +27,16 @@ public final class SensComConfig extends RestApiConfig {
         super(host, timeout);
     }
 
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
 }
@@ -1,6 +1,7 @@
 package nl.bertriksikken.senscom;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.ArrayList;
@@ -26,6 +27,16 @@ public final class SensComMessage {
         this.softwareVersion = softwareVersion;
     }
 
+    // jackson constructor, for reading back spooled messages
+    @JsonCreator
+    private SensComMessage(@JsonProperty("software_version") String softwareVersion,
+            @JsonProperty("sensordatavalues") List<SensComItem> items) {
+        this(softwareVersion);
+        if (items != null) {
+            this.items.addAll(items);
+        }
+    }
+
     public void addItem(String name, String value) {
         items.add(new SensComItem(name, value));
     }
@@ -51,7 +62,7 @@ public final class SensComMessage {
          * @param value the item value as double, it will be rounded to 1 decimal
          */
         public SensComItem(String name, Double value) {
-            this(name, String.format(Locale.ROOT, "%.1f", value));
+            this(name, DecimalFormatter.format(value, 1));
         }
     }
 
@@ -0,0 +1,99 @@
+package nl.bertriksikken.senscom;
+
+import nl.bertriksikken.pm.SensorData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routing rule of a sensor.community pin, in terms of the items present in the sensor data.<br>
+ * <br>
+ * A rule matches if all required items are present, at least one of the 'any of' items is present
+ * (if there are any) and none of the forbidden items is present. The message for the pin contains
+ * the required, 'any of' and optional items, in the order they were declared.<br>
+ * The items are compiled into bit masks of {@link SensorData#getPresentMask()}, so matching a rule
+ * takes just a few AND operations. A rule that needs no item at all never matches.
+ */
+final class SensComRule {
+
+    static final SensComRule NONE = new SensComRule(List.of(), 0, 0, 0);
+
+    private final List<ESensComItem> items;
+    private final long requiredMask;
+    private final long anyMask;
+    private final long forbiddenMask;
+
+    private SensComRule(List<ESensComItem> items, long requiredMask, long anyMask, long forbiddenMask) {
+        this.items = Collections.unmodifiableList(items);
+        this.requiredMask = requiredMask;
+        this.anyMask = anyMask;
+        this.forbiddenMask = forbiddenMask;
+    }
+
+    /**
+     * @return a rule that requires all of the given items
+     */
+    static SensComRule requires(ESensComItem... required) {
+        return NONE.andRequires(required);
+    }
+
+    /**
+     * @return a rule that requires at least one of the given items
+     */
+    static SensComRule anyOf(ESensComItem... any) {
+        return new SensComRule(addItems(List.of(), any), 0, mask(any), 0);
+    }
+
+    /**
+     * @return a copy of this rule that also requires all of the given items
+     */
+    SensComRule andRequires(ESensComItem... required) {
+        return new SensComRule(addItems(items, required), requiredMask | mask(required), anyMask, forbiddenMask);
+    }
+
+    /**
+     * @return a copy of this rule that does not match if any of the given items is present
+     */
+    SensComRule forbids(ESensComItem... forbidden) {
+        return new SensComRule(items, requiredMask, anyMask, forbiddenMask | mask(forbidden));
+    }
+
+    /**
+     * @return a copy of this rule that also includes the given items in the message, if present
+     */
+    SensComRule optional(ESensComItem... optional) {
+        return new SensComRule(addItems(items, optional), requiredMask, anyMask, forbiddenMask);
+    }
+
+    /**
+     * @param present the bit mask of the items present, see {@link SensorData#getPresentMask()}
+     * @return whether this rule matches
+     */
+    boolean matches(long present) {
+        return ((requiredMask | anyMask) != 0) && ((present & requiredMask) == requiredMask)
+                && ((anyMask == 0) || ((present & anyMask) != 0)) && ((present & forbiddenMask) == 0);
+    }
+
+    /**
+     * @return the items of the message, in order
+     */
+    List<ESensComItem> getItems() {
+        return items;
+    }
+
+    private static long mask(ESensComItem... items) {
+        long mask = 0;
+        for (ESensComItem item : items) {
+            mask |= 1L << item.getItem().ordinal();
+        }
+        return mask;
+    }
+
+    private static List<ESensComItem> addItems(List<ESensComItem> items, ESensComItem... added) {
+        List<ESensComItem> list = new ArrayList<>(items);
+        Collections.addAll(list, added);
+        return list;
+    }
+
+}
@@ -3,14 +3,21 @@ package nl.bertriksikken.senscom;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.bertriksikken.loraforwarder.AppDeviceId;
 import nl.bertriksikken.loraforwarder.AttributeMap;
+import nl.bertriksikken.loraforwarder.DeviceIdMapping;
 import nl.bertriksikken.loraforwarder.IUploader;
+import nl.bertriksikken.metrics.MetricsRegistry;
 import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.rest.HttpClientFactory;
+import nl.bertriksikken.spool.EDeliveryResult;
+import nl.bertriksikken.spool.UploadSpool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -20,44 +27,86 @@ public final class SensComUploader implements IUploader {
 
     private static final Logger LOG = LoggerFactory.getLogger(SensComUploader.class);
 
+    static final String SPOOL_DESTINATION = "senscom";
+
     private final Map<String, SensComWorker> workerMap = new ConcurrentHashMap<>();
+    private final DeviceIdMapping sensComIds = new DeviceIdMapping("senscom-id");
     private final ObjectMapper mapper = new ObjectMapper();
-    private final SensComConfig config;
+    private final UploadEngine uploadEngine;
+    private final UploadSpool spool;
     private final String softwareVersion;
 
-    SensComUploader(SensComConfig config, String softwareVersion) {
-        this.config = Objects.requireNonNull(config);
+    SensComUploader(UploadEngine uploadEngine, UploadSpool spool, String softwareVersion) {
+        this.uploadEngine = Objects.requireNonNull(uploadEngine);
+        this.spool = Objects.requireNonNull(spool);
         this.softwareVersion = softwareVersion;
     }
 
-    public static SensComUploader create(SensComConfig config, String softwareVersion) {
-        return new SensComUploader(config, softwareVersion);
+    public static SensComUploader create(SensComConfig config, UploadSpool spool, MetricsRegistry metrics,
+            HttpClientFactory httpClientFactory, String softwareVersion) {
+        return new SensComUploader(UploadEngine.create(config, metrics, httpClientFactory), spool, softwareVersion);
     }
 
     @Override
     public void start() {
         LOG.info("Starting sensor.community uploader");
+        spool.register(SPOOL_DESTINATION, this::replay);
+    }
+
+    // re-sends a spooled upload, runs on the spool thread
+    private EDeliveryResult replay(String key, byte[] payload) {
+        String[] parts = key.split("/", 4);
+        if (parts.length != 4) {
+            LOG.warn("Dropping spooled upload with invalid key '{}'", key);
+            return EDeliveryResult.REJECTED;
+        }
+        try {
+            SensComMessage message = mapper.readValue(payload, SensComMessage.class);
+            AppDeviceId appDeviceId = new AppDeviceId(parts[0], parts[1]);
+            ESensComPin pin = ESensComPin.valueOf(parts[2]);
+            LOG.info("Replaying upload for {} (id {}, pin {})", appDeviceId, parts[3], pin);
+            return uploadEngine.replay(appDeviceId, parts[3], pin, message).join();
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Dropping invalid spooled upload '{}': {}", key, e.getMessage());
+            return EDeliveryResult.REJECTED;
+        }
+    }
+
+    static String encodeSpoolKey(AppDeviceId appDeviceId, String sensorId, ESensComPin pin) {
+        return String.join("/", appDeviceId.appName(), appDeviceId.deviceId(), pin.name(), sensorId);
     }
 
     @Override
     public void stop() {
         LOG.info("Stopping sensor.community uploader");
         List.copyOf(workerMap.values()).forEach(SensComWorker::stop);
+        uploadEngine.stop();
     }
 
     private SensComWorker getOrCreateWorker(String id) {
-        return workerMap.computeIfAbsent(id, name -> SensComWorker.create(mapper, config, softwareVersion, id));
+        return workerMap.computeIfAbsent(id, name -> new SensComWorker(mapper, uploadEngine, spool, softwareVersion, id));
     }
 
     @Override
     public void scheduleUpload(AppDeviceId appDeviceId, SensorData data) {
+        // look up custom sensor.community id
+        String sensorId = sensComIds.get(appDeviceId);
+        if (sensorId.isEmpty()) {
+            // no sensor.community id found, so no upload
+            return;
+        }
         SensComWorker worker = getOrCreateWorker(appDeviceId.appName());
-        worker.scheduleUpload(appDeviceId, data);
+        worker.scheduleUpload(appDeviceId, sensorId, data);
+    }
+
+    @Override
+    public Set<String> getAttributeNames() {
+        return Set.of(sensComIds.getAttributeName());
     }
 
     @Override
     public void scheduleProcessAttributes(String appId, Map<String, AttributeMap> deviceAttributes) {
-        SensComWorker worker = getOrCreateWorker(appId);
-        worker.scheduleProcessAttributes(deviceAttributes);
+        Map<String, String> mapping = sensComIds.update(appId, deviceAttributes);
+        mapping.forEach((devId, id) -> LOG.info("SensCom mapping: {} -> {}", new AppDeviceId(appId, devId), id));
     }
 }
@@ -1,213 +1,138 @@
 package nl.bertriksikken.senscom;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.bertriksikken.loraforwarder.AppDeviceId;
-import nl.bertriksikken.loraforwarder.AttributeMap;
 import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
 import nl.bertriksikken.pm.ESensorItem;
 import nl.bertriksikken.pm.SensorData;
-import okhttp3.Interceptor;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
+import nl.bertriksikken.spool.EDeliveryResult;
+import nl.bertriksikken.spool.UploadSpool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.jackson.JacksonConverterFactory;
-import retrofit2.converter.scalars.ScalarsConverterFactory;
 
-import java.io.IOException;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
- * Sensor.community worker, handles uploads on its own executor, one per group of devices.
+ * Sensor.community worker, prepares uploads on its own executor, one per group of devices.<br>
+ * The actual uploads are sent asynchronously by the shared upload engine.
  */
 final class SensComWorker {
     private static final Logger LOG = LoggerFactory.getLogger(SensComWorker.class);
-
-    private static final String USER_AGENT = "github.com/bertrik/sensor-data-bridge";
+    private static final ESensComPin[] PINS = ESensComPin.values();
+    private static final long GPS_MASK = (1L << ESensorItem.GPS_LAT.ordinal()) | (1L << ESensorItem.GPS_LON.ordinal());
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final ObjectMapper mapper;
-    private final ISensComApi restClient;
+    private final UploadEngine uploadEngine;
+    private final UploadSpool spool;
     private final String softwareVersion;
     private final String appId;
 
-    // map from device id to sensor.community id
-    private final Map<AppDeviceId, String> sensComIds = new HashMap<>();
-
-    SensComWorker(ObjectMapper mapper, ISensComApi restClient, String softwareVersion, String appId) {
+    SensComWorker(ObjectMapper mapper, UploadEngine uploadEngine, UploadSpool spool, String softwareVersion,
+            String appId) {
         this.mapper = Objects.requireNonNull(mapper);
-        this.restClient = Objects.requireNonNull(restClient);
+        this.uploadEngine = Objects.requireNonNull(uploadEngine);
+        this.spool = Objects.requireNonNull(spool);
         this.softwareVersion = softwareVersion;
         this.appId = appId;
     }
 
-    /**
-     * Creates a new sensor.community REST client.
-     */
-    public static SensComWorker create(ObjectMapper mapper, SensComConfig config, String version, String id) {
-        LOG.info("Creating new REST client for '{}' with timeout {}", config.getUrl(), config.getTimeout());
-        Duration timeout = config.getTimeout();
-        OkHttpClient client = new OkHttpClient().newBuilder().addInterceptor(SensComWorker::addUserAgent)
-                .connectTimeout(timeout).readTimeout(timeout).writeTimeout(timeout).build();
-        Retrofit retrofit = new Retrofit.Builder().baseUrl(config.getUrl())
-                .addConverterFactory(ScalarsConverterFactory.create())
-                .addConverterFactory(JacksonConverterFactory.create()).client(client).build();
-        ISensComApi restClient = retrofit.create(ISensComApi.class);
-        return new SensComWorker(mapper, restClient, version, id);
-    }
-
-    private static okhttp3.Response addUserAgent(Interceptor.Chain chain) throws IOException {
-        Request userAgentRequest = chain.request().newBuilder().header("User-Agent", USER_AGENT).build();
-        return chain.proceed(userAgentRequest);
-    }
-
     void stop() {
         LOG.info("Stopping sensor.community worker '{}'", appId);
         executor.shutdown();
     }
 
     // schedules an upload to all pins
-    void scheduleUpload(AppDeviceId appDeviceId, SensorData data) {
-        executor.execute(new CatchingRunnable(LOG, () -> performUpload(appDeviceId, data)));
+    void scheduleUpload(AppDeviceId appDeviceId, String sensorId, SensorData data) {
+        executor.execute(new CatchingRunnable(LOG, () -> performUpload(appDeviceId, sensorId, data)));
     }
 
     // uploads to all pins, runs on our executor
-    private void performUpload(AppDeviceId appDeviceId, SensorData data) {
-        // look up custom sensor.community id
-        String sensorId = sensComIds.getOrDefault(appDeviceId, "");
-        if (sensorId.isEmpty()) {
-            // no sensor.community id found, so no upload
-            return;
-        }
-
-        // pin 1 (dust sensors)
-        if (data.hasValue(ESensorItem.PM10) || data.hasValue(ESensorItem.PM2_5) || data.hasValue(ESensorItem.PM1_0)
-                || data.hasValue(ESensorItem.PM4_0)) {
-            SensComMessage p1Message = new SensComMessage(softwareVersion);
-
-            addItem(p1Message, data, ESensComItem.PM10);
-            addItem(p1Message, data, ESensComItem.PM4);
-            addItem(p1Message, data, ESensComItem.PM2_5);
-            addItem(p1Message, data, ESensComItem.PM1_0);
-
-            addItem(p1Message, data, ESensComItem.PM10_N);
-            addItem(p1Message, data, ESensComItem.PM4_0_N);
-            addItem(p1Message, data, ESensComItem.PM2_5_N);
-            addItem(p1Message, data, ESensComItem.PM1_0_N);
-            addItem(p1Message, data, ESensComItem.PM0_5_N);
-
-            // encode particle size with 3 decimals
-            if (data.hasValue(ESensorItem.PM_TPS)) {
-                addItem(p1Message, data, ESensComItem.PM_TPS);
-            }
-
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.PARTICULATE_MATTER, p1Message);
-        }
-
-        // pin 3: temperature & pressure, but no humidity
-        if (data.hasValue(ESensorItem.TEMPERATURE) && data.hasValue(ESensorItem.PRESSURE)
-                && !data.hasValue(ESensorItem.HUMIDITY)) {
-            SensComMessage p3Message = new SensComMessage(softwareVersion);
-            addItem(p3Message, data, ESensComItem.TEMPERATURE);
-            addItem(p3Message, data, ESensComItem.PRESSURE);
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.TEMPERATURE_PRESSURE, p3Message);
-        }
-
-        // pin 7: temperature & humidity, but no pressure
-        if (data.hasValue(ESensorItem.TEMPERATURE) && data.hasValue(ESensorItem.HUMIDITY)
-                && !data.hasValue(ESensorItem.PRESSURE)) {
-            SensComMessage p7Message = new SensComMessage(softwareVersion);
-            addItem(p7Message, data, ESensComItem.TEMPERATURE);
-            addItem(p7Message, data, ESensComItem.HUMIDITY);
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.TEMPERATURE_HUMIDITY, p7Message);
-        }
+    private void performUpload(AppDeviceId appDeviceId, String sensorId, SensorData data) {
+        buildMessages(softwareVersion, data)
+                .forEach((pin, message) -> uploadMeasurement(appDeviceId, sensorId, pin, message));
+    }
 
-        // pin 9: position
-        if (hasValidGps(data)) {
-            SensComMessage p9Message = new SensComMessage(softwareVersion);
-            addItem(p9Message, data, ESensComItem.GPS_LAT);
-            addItem(p9Message, data, ESensComItem.GPS_LON);
-            if (data.hasValue(ESensorItem.GPS_ALT)) {
-                addItem(p9Message, data, ESensComItem.GPS_ALT);
+    /**
+     * Builds the messages to upload for each pin, in pin order.
+     */
+    // package-private to allow benchmarking
+    static Map<ESensComPin, SensComMessage> buildMessages(String softwareVersion, SensorData data) {
+        Map<ESensComPin, SensComMessage> messages = new EnumMap<>(ESensComPin.class);
+        long present = presentMask(data);
+        for (ESensComPin pin : PINS) {
+            SensComRule rule = pin.getRule();
+            if (rule.matches(present)) {
+                SensComMessage message = new SensComMessage(softwareVersion);
+                for (ESensComItem item : rule.getItems()) {
+                    addItem(message, data, item);
+                }
+                messages.put(pin, message);
             }
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.POSITION, p9Message);
-        }
-
-        // pin 11: temperature & humidity & pressure
-        if (data.hasValue(ESensorItem.TEMPERATURE) && data.hasValue(ESensorItem.HUMIDITY)
-                && data.hasValue(ESensorItem.PRESSURE)) {
-            SensComMessage p11Message = new SensComMessage(softwareVersion);
-            addItem(p11Message, data, ESensComItem.TEMPERATURE);
-            addItem(p11Message, data, ESensComItem.HUMIDITY);
-            addItem(p11Message, data, ESensComItem.PRESSURE);
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.TEMPERATURE_HUMIDITY_PRESSURE, p11Message);
-        }
-
-        // pin 13: only temperature
-        if (data.hasValue(ESensorItem.TEMPERATURE) && !data.hasValue(ESensorItem.HUMIDITY)
-                && !data.hasValue(ESensorItem.PRESSURE)) {
-            SensComMessage p13Message = new SensComMessage(softwareVersion);
-            addItem(p13Message, data, ESensComItem.TEMPERATURE);
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.TEMPERATURE, p13Message);
         }
+        return messages;
+    }
 
-        // pin 15: noise
-        if (data.hasValue(ESensorItem.NOISE_LA_EQ)) {
-            SensComMessage p15Message = new SensComMessage(softwareVersion);
-            addItem(p15Message, data, ESensComItem.NOISE_LA_EQ);
-            addItem(p15Message, data, ESensComItem.NOISE_LA_MIN); // optional
-            addItem(p15Message, data, ESensComItem.NOISE_LA_MAX); // optional
-            uploadMeasurement(appDeviceId, sensorId, ESensComPin.NOISE, p15Message);
+    /**
+     * Determines the items present for routing, latitude and longitude only count if they form a valid position.
+     */
+    // package-private to allow testing
+    static long presentMask(SensorData data) {
+        long present = data.getPresentMask();
+        if (!hasValidGps(data)) {
+            present &= ~GPS_MASK;
         }
+        return present;
     }
 
-    private boolean hasValidGps(SensorData data) {
+    private static boolean hasValidGps(SensorData data) {
         // are both latitude and longitude present, with valid values?
         if (!data.hasValid(ESensorItem.GPS_LAT) || !data.hasValid(ESensorItem.GPS_LON)) {
             return false;
         }
         // not equal to 0?
-        double lat = data.getValue(ESensorItem.GPS_LAT);
-        double lon = data.getValue(ESensorItem.GPS_LON);
+        double lat = data.getDouble(ESensorItem.GPS_LAT);
+        double lon = data.getDouble(ESensorItem.GPS_LON);
         if ((Math.abs(lat) < 1E-6) && (Math.abs(lon) < 1E-6)) {
             return false;
         }
         return true;
     }
 
+    @SuppressWarnings("FutureReturnValueIgnored")
     private void uploadMeasurement(AppDeviceId appDeviceId, String sensorId, ESensComPin pin, SensComMessage message) {
         if (message.isEmpty()) {
             // avoid sending empty message
             LOG.info("Skipping upload for {} (id {}, pin {}): empty message", appDeviceId, sensorId, pin);
             return;
         }
+        byte[] json;
         try {
-            LOG.info("Uploading for {} (id {}, pin {}): '{}'", appDeviceId, sensorId, pin, mapper.writeValueAsString(message));
-            Instant startTime = Instant.now();
-            Response<String> response = restClient.pushSensorData(pin.getPin(), sensorId, message).execute();
-            long millis = Duration.between(startTime, Instant.now()).toMillis();
-            if (response.isSuccessful()) {
-                LOG.info("Upload success for {} in {} ms: {}", appDeviceId, millis, response.body());
-            } else {
-                LOG.warn("Upload failed for {}: {} - {}", appDeviceId, response.message(), response.errorBody().string());
-            }
-        } catch (IOException e) {
-            LOG.warn("Upload failed for {}: exception '{}'", appDeviceId, e.getMessage());
+            json = mapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Could not serialize message for {}: '{}'", appDeviceId, e.getMessage());
+            return;
         }
+        LOG.info("Uploading for {} (id {}, pin {}): '{}'", appDeviceId, sensorId, pin,
+                new String(json, StandardCharsets.UTF_8));
+        uploadEngine.upload(appDeviceId, sensorId, pin, message).thenAccept(result -> {
+            if (result == EDeliveryResult.RETRY) {
+                spool.append(SensComUploader.SPOOL_DESTINATION,
+                        SensComUploader.encodeSpoolKey(appDeviceId, sensorId, pin), json);
+            }
+        });
     }
 
-    private void addItem(SensComMessage message, SensorData data, ESensComItem sensComItem) {
+    private static void addItem(SensComMessage message, SensorData data, ESensComItem sensComItem) {
         ESensorItem item = sensComItem.getItem();
-        if (data.hasValue(item)) {
-            double value = data.getValue(item);
+        if (data.has(item)) {
+            double value = data.getDouble(item);
             if (item.inRange(value)) {
                 String sensComValue = sensComItem.format(value);
                 message.addItem(sensComItem.getId(), sensComValue);
@@ -215,22 +140,4 @@ final class SensComWorker {
         }
     }
 
-    void scheduleProcessAttributes(Map<String, AttributeMap> deviceAttributes) {
-        executor.execute(new CatchingRunnable(LOG, () -> processAttributes(deviceAttributes)));
-    }
-
-    private void processAttributes(Map<String, AttributeMap> deviceAttributes) {
-        sensComIds.clear();
-        deviceAttributes.forEach(this::processDeviceAttributes);
-        sensComIds.forEach((key, value) -> LOG.info("SensCom mapping: {} -> {}", key, value));
-    }
-
-    private void processDeviceAttributes(String devId, AttributeMap attributes) {
-        String sensComId = attributes.getOrDefault("senscom-id", "").trim();
-        if (!sensComId.isEmpty()) {
-            AppDeviceId appDeviceId = new AppDeviceId(appId, devId);
-            sensComIds.put(appDeviceId, sensComId);
-        }
-    }
-
 }
@@ -0,0 +1,310 @@
+package nl.bertriksikken.senscom;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.bertriksikken.loraforwarder.AppDeviceId;
+import nl.bertriksikken.metrics.Counter;
+import nl.bertriksikken.metrics.MetricsRegistry;
+import nl.bertriksikken.metrics.UploadMetrics;
+import nl.bertriksikken.rest.HttpClientFactory;
+import nl.bertriksikken.spool.EDeliveryResult;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+/**
+ * Asynchronous upload engine for sensor.community, shared by all workers.<br>
+ * <br>
+ * Uploads are sent with the asynchronous OkHttp API, so a slow upload does not
+ * block other uploads. Concurrency is limited globally and per host by the
+ * OkHttp dispatcher. Uploads for the same sensor id and pin are sent strictly
+ * in order: an upload is only sent after the previous one for that sensor/pin
+ * has completed.<br>
+ * <br>
+ * When coalescing, at most one upload waits for each sensor/pin. A newer upload
+ * replaces the waiting one, which completes as superseded, so a slow remote end
+ * delays the newest data instead of queueing every measurement. Memory is then
+ * bounded by the number of sensors, not by the length of the outage. A replay
+ * from the spool carries older data than any live upload, so it never replaces
+ * a live upload and is superseded itself while a live upload for the same
+ * sensor/pin is pending.
+ */
+final class UploadEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadEngine.class);
+
+    private static final String USER_AGENT = "github.com/bertrik/sensor-data-bridge";
+
+    private final ISensComApi restClient;
+    private final Dispatcher dispatcher;
+    private final boolean coalesce;
+
+    // uploads for each busy sensor id/pin, the one in progress first, guarded by itself
+    private final Map<UploadKey, Deque<Upload>> pending = new HashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder uploadCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+    private final Map<ESensComPin, UploadMetrics> pinMetrics = new EnumMap<>(ESensComPin.class);
+    private final Counter deliveredCount;
+    private final Counter supersededCount;
+
+    UploadEngine(ISensComApi restClient, Dispatcher dispatcher, MetricsRegistry metrics, boolean coalesce) {
+        this.restClient = Objects.requireNonNull(restClient);
+        this.dispatcher = Objects.requireNonNull(dispatcher);
+        this.coalesce = coalesce;
+        for (ESensComPin pin : ESensComPin.values()) {
+            pinMetrics.put(pin, new UploadMetrics(metrics, "destination", "senscom", "pin", pin.getPin()));
+        }
+        metrics.gauge("sdb_uploads_in_flight", "Uploads in progress.", inFlight::get, "destination", "senscom");
+        deliveredCount = metrics.counter("sdb_uploads_delivered_total", "Uploads accepted by the remote end.",
+                "destination", "senscom");
+        supersededCount = metrics.counter("sdb_uploads_superseded_total",
+                "Uploads replaced by a newer upload before being sent.", "destination", "senscom");
+    }
+
+    /**
+     * Creates a new upload engine, with a REST client for sensor.community.
+     */
+    static UploadEngine create(SensComConfig config, MetricsRegistry metrics, HttpClientFactory httpClientFactory) {
+        LOG.info("Creating new REST client for '{}' with timeout {}, max requests {} ({} per host), coalesce {}",
+                config.getUrl(), config.getTimeout(), config.getMaxRequests(), config.getMaxRequestsPerHost(),
+                config.isCoalesce());
+        // own dispatcher, so its request limits only apply to sensor.community, connections are still shared
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+        OkHttpClient client = httpClientFactory.newBuilder(config).dispatcher(dispatcher)
+                .addInterceptor(UploadEngine::addUserAgent).build();
+        Retrofit retrofit = new Retrofit.Builder().baseUrl(config.getUrl())
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .addConverterFactory(JacksonConverterFactory.create()).client(client).build();
+        ISensComApi restClient = retrofit.create(ISensComApi.class);
+        return new UploadEngine(restClient, dispatcher, metrics, config.isCoalesce());
+    }
+
+    private static okhttp3.Response addUserAgent(Interceptor.Chain chain) throws IOException {
+        Request userAgentRequest = chain.request().newBuilder().header("User-Agent", USER_AGENT).build();
+        return chain.proceed(userAgentRequest);
+    }
+
+    void stop() {
+        LOG.info("Stopping sensor.community upload engine, {} uploads ({} failed, {} superseded), latency avg {} ms, "
+                + "max {} ms", getUploadCount(), getFailureCount(), getSupersededCount(),
+                String.format(Locale.ROOT, "%.1f", getAverageLatencyMillis()), getMaxLatencyMillis());
+        dispatcher.executorService().shutdown();
+        try {
+            if (!dispatcher.executorService().awaitTermination(5, TimeUnit.SECONDS)) {
+                LOG.warn("Uploads still in progress: {}", inFlight.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules an upload, after any earlier upload for the same sensor id and pin.
+     *
+     * @return future that completes with the delivery result when the upload is done, or with
+     *         {@link EDeliveryResult#SUPERSEDED} if a newer upload replaced it before it was sent
+     */
+    CompletableFuture<EDeliveryResult> upload(AppDeviceId appDeviceId, String sensorId, ESensComPin pin,
+            SensComMessage message) {
+        return submit(new UploadKey(sensorId, pin), new Upload(appDeviceId, message, false, new CompletableFuture<>()));
+    }
+
+    /**
+     * Schedules the replay of a spooled upload, like {@link #upload}, except that when coalescing it is superseded
+     * by any live upload for the same sensor id and pin, since that has newer data.
+     */
+    CompletableFuture<EDeliveryResult> replay(AppDeviceId appDeviceId, String sensorId, ESensComPin pin,
+            SensComMessage message) {
+        return submit(new UploadKey(sensorId, pin), new Upload(appDeviceId, message, true, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<EDeliveryResult> submit(UploadKey key, Upload upload) {
+        Upload superseded = null;
+        boolean idle;
+        synchronized (pending) {
+            Deque<Upload> queue = pending.get(key);
+            idle = (queue == null);
+            if (idle) {
+                queue = new ArrayDeque<>(2);
+                pending.put(key, queue);
+                queue.addLast(upload);
+            } else if (coalesce && upload.replay && queue.stream().anyMatch(other -> !other.replay)) {
+                // don't send old data after newer data
+                superseded = upload;
+            } else {
+                if (coalesce && (queue.size() > 1)) {
+                    superseded = queue.pollLast();
+                }
+                queue.addLast(upload);
+            }
+        }
+        if (superseded != null) {
+            supersededCount.increment();
+            LOG.debug("Upload for {} (id {}, pin {}) superseded by a newer one", superseded.appDeviceId, key.sensorId,
+                    key.pin);
+            superseded.done.complete(EDeliveryResult.SUPERSEDED);
+        }
+        if (idle) {
+            sendInOrder(key, upload);
+        }
+        return upload.done;
+    }
+
+    // sends an upload, then the next one waiting for the same sensor/pin, if any
+    private void sendInOrder(UploadKey key, Upload upload) {
+        send(upload.appDeviceId, key, upload.message).whenComplete((result, throwable) -> {
+            upload.done.complete((result != null) ? result : EDeliveryResult.RETRY);
+            Upload next;
+            synchronized (pending) {
+                Deque<Upload> queue = pending.get(key);
+                queue.pollFirst();
+                next = queue.peekFirst();
+                if (next == null) {
+                    pending.remove(key);
+                }
+            }
+            if (next != null) {
+                sendInOrder(key, next);
+            }
+        });
+    }
+
+    private CompletableFuture<EDeliveryResult> send(AppDeviceId appDeviceId, UploadKey key, SensComMessage message) {
+        CompletableFuture<EDeliveryResult> future = new CompletableFuture<>();
+        inFlight.incrementAndGet();
+        long startNanos = System.nanoTime();
+        Callback<String> callback = new Callback<>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                long millis = complete(key, startNanos, response.code());
+                if (response.isSuccessful()) {
+                    deliveredCount.increment();
+                    LOG.info("Upload success for {} in {} ms: {}", appDeviceId, millis, response.body());
+                } else {
+                    failureCount.increment();
+                    LOG.warn("Upload failed for {}: {} - {}", appDeviceId, response.message(), errorBody(response));
+                }
+                future.complete(EDeliveryResult.fromHttpCode(response.code()));
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                complete(key, startNanos, 0);
+                failureCount.increment();
+                LOG.warn("Upload failed for {}: exception '{}'", appDeviceId, t.getMessage());
+                future.complete(EDeliveryResult.RETRY);
+            }
+        };
+        try {
+            restClient.pushSensorData(key.pin.getPin(), key.sensorId, message).enqueue(callback);
+        } catch (RuntimeException e) {
+            // make sure later uploads for the same sensor/pin are not blocked
+            callback.onFailure(null, e);
+        }
+        return future;
+    }
+
+    private long complete(UploadKey key, long startNanos, int httpCode) {
+        pinMetrics.get(key.pin).record(startNanos, httpCode);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        inFlight.decrementAndGet();
+        uploadCount.increment();
+        totalLatencyMillis.add(millis);
+        maxLatencyMillis.accumulateAndGet(millis, Math::max);
+        return millis;
+    }
+
+    private static String errorBody(Response<String> response) {
+        try (okhttp3.ResponseBody body = response.errorBody()) {
+            return (body != null) ? body.string() : "";
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * @return the number of uploads currently in progress
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of completed uploads
+     */
+    long getUploadCount() {
+        return uploadCount.sum();
+    }
+
+    /**
+     * @return the number of failed uploads
+     */
+    long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * @return the number of uploads accepted by the remote end
+     */
+    long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return the number of uploads replaced by a newer one before being sent
+     */
+    long getSupersededCount() {
+        return supersededCount.get();
+    }
+
+    /**
+     * @return the average upload latency in milliseconds
+     */
+    double getAverageLatencyMillis() {
+        long count = uploadCount.sum();
+        return (count > 0) ? (double) totalLatencyMillis.sum() / count : 0.0;
+    }
+
+    /**
+     * @return the maximum upload latency in milliseconds
+     */
+    long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    private record UploadKey(String sensorId, ESensComPin pin) {
+    }
+
+    private record Upload(AppDeviceId appDeviceId, SensComMessage message, boolean replay,
+            CompletableFuture<EDeliveryResult> done) {
+    }
+
+}
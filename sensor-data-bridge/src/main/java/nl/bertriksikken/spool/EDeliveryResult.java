@@ -0,0 +1,29 @@
+package nl.bertriksikken.spool;
+
+/**
+ * Result of an upload attempt.
+ */
+public enum EDeliveryResult {
+    // accepted by the remote end
+    DELIVERED,
+    // refused by the remote end, retrying will not help
+    REJECTED,
+    // failed temporarily, e.g. a timeout or server error
+    RETRY,
+    // not sent, replaced by a newer upload for the same destination
+    SUPERSEDED;
+
+    /**
+     * @param code the HTTP status code
+     * @return the delivery result corresponding to the HTTP status code
+     */
+    public static EDeliveryResult fromHttpCode(int code) {
+        if ((code >= 200) && (code < 300)) {
+            return DELIVERED;
+        }
+        if ((code == 408) || (code == 429) || (code >= 500)) {
+            return RETRY;
+        }
+        return REJECTED;
+    }
+}
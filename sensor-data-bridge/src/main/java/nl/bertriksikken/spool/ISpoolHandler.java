@@ -0,0 +1,18 @@
+package nl.bertriksikken.spool;
+
+/**
+ * Re-sends spooled uploads for one destination.
+ */
+public interface ISpoolHandler {
+
+    /**
+     * Re-sends a spooled upload, blocks until done.
+     *
+     * @param key     the key the upload was spooled with, e.g. the sensor id
+     * @param payload the payload the upload was spooled with
+     * @return the delivery result, the upload stays in the spool in case of
+     *         {@link EDeliveryResult#RETRY}
+     */
+    EDeliveryResult replay(String key, byte[] payload);
+
+}
@@ -0,0 +1,78 @@
+package nl.bertriksikken.spool;
+
+import java.time.Duration;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the upload spool.
+ */
+@JsonAutoDetect(getterVisibility = Visibility.NONE)
+public final class SpoolConfig {
+
+    // directory containing the spool segments
+    @JsonProperty("path")
+    private String path = "spool";
+
+    // size of one segment file (bytes)
+    @JsonProperty("segment_size")
+    private int segmentSize = 1024 * 1024;
+
+    // maximum number of segment files, the oldest segment is dropped when exceeded
+    @JsonProperty("max_segments")
+    private int maxSegments = 64;
+
+    // maximum age of a spooled upload (hours)
+    @JsonProperty("ttl")
+    private int ttlHours = 24;
+
+    // maximum number of uploads replayed per second
+    @JsonProperty("replay_rate")
+    private int replayRate = 5;
+
+    // retry backoff after a failed replay (seconds), doubles for every failure up to the maximum
+    @JsonProperty("initial_backoff")
+    private int initialBackoffSec = 10;
+
+    @JsonProperty("max_backoff")
+    private int maxBackoffSec = 600;
+
+    // jackson no-arg constructor
+    public SpoolConfig() {
+    }
+
+    public SpoolConfig(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public Duration getTtl() {
+        return Duration.ofHours(ttlHours);
+    }
+
+    public int getReplayRate() {
+        return replayRate;
+    }
+
+    public Duration getInitialBackoff() {
+        return Duration.ofSeconds(initialBackoffSec);
+    }
+
+    public Duration getMaxBackoff() {
+        return Duration.ofSeconds(maxBackoffSec);
+    }
+
+}
@@ -0,0 +1,13 @@
+package nl.bertriksikken.spool;
+
+/**
+ * One spooled upload.
+ *
+ * @param destination the destination, e.g. "senscom"
+ * @param key         destination specific key, e.g. the sensor id
+ * @param timestamp   the time the upload was spooled (ms since epoch)
+ * @param payload     the upload payload
+ */
+@SuppressWarnings("ArrayRecordComponent")
+record SpoolRecord(String destination, String key, long timestamp, byte[] payload) {
+}
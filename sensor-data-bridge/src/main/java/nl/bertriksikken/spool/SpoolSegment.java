@@ -0,0 +1,206 @@
+package nl.bertriksikken.spool;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped, append-only segment file of the spool.<br>
+ * <br>
+ * Each record is stored as:
+ * <ul>
+ * <li>length of the rest of the record (int), written last to commit the record
+ * <li>status (byte), pending or done
+ * <li>timestamp (long)
+ * <li>destination (short length + UTF-8)
+ * <li>key (short length + UTF-8)
+ * <li>payload (int length + bytes)
+ * </ul>
+ * A length of 0 marks the end of the records. This class is not thread-safe.
+ */
+final class SpoolSegment {
+
+    static final byte STATUS_PENDING = 0;
+    static final byte STATUS_DONE = 1;
+
+    private static final int LENGTH_SIZE = 4;
+
+    private final long sequence;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private int writePosition;
+    // position of the first record that may still be pending
+    private int readPosition;
+    private int pendingCount;
+
+    private SpoolSegment(long sequence, Path path, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens (or creates) a segment file and scans its records.
+     */
+    static SpoolSegment open(Path path, long sequence, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            long mapSize = Math.max(channel.size(), size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+            SpoolSegment segment = new SpoolSegment(sequence, path, buffer);
+            segment.scan();
+            return segment;
+        }
+    }
+
+    private void scan() {
+        int position = 0;
+        readPosition = -1;
+        while (position + LENGTH_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if ((length <= 0) || (length > buffer.capacity() - position - LENGTH_SIZE)) {
+                break;
+            }
+            if (buffer.get(position + LENGTH_SIZE) == STATUS_PENDING) {
+                pendingCount++;
+                if (readPosition < 0) {
+                    readPosition = position;
+                }
+            }
+            position += LENGTH_SIZE + length;
+        }
+        writePosition = position;
+        if (readPosition < 0) {
+            readPosition = writePosition;
+        }
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @return false if the record does not fit in this segment
+     */
+    boolean append(SpoolRecord record) {
+        byte[] destination = record.destination().getBytes(StandardCharsets.UTF_8);
+        byte[] key = record.key().getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 8 + 2 + destination.length + 2 + key.length + 4 + record.payload().length;
+        int end = writePosition + LENGTH_SIZE + length;
+        if (end > buffer.capacity()) {
+            return false;
+        }
+        int position = writePosition + LENGTH_SIZE;
+        buffer.put(position, STATUS_PENDING);
+        buffer.putLong(position + 1, record.timestamp());
+        position += 9;
+        position = putBytes(position, destination, true);
+        position = putBytes(position, key, true);
+        putBytes(position, record.payload(), false);
+        // terminate, in case there are left-overs from an incomplete earlier write
+        if (end + LENGTH_SIZE <= buffer.capacity()) {
+            buffer.putInt(end, 0);
+        }
+        // commit
+        buffer.putInt(writePosition, length);
+        writePosition = end;
+        pendingCount++;
+        return true;
+    }
+
+    private int putBytes(int position, byte[] data, boolean isShort) {
+        if (isShort) {
+            buffer.putShort(position, (short) data.length);
+            position += 2;
+        } else {
+            buffer.putInt(position, data.length);
+            position += 4;
+        }
+        buffer.put(position, data);
+        return position + data.length;
+    }
+
+    /**
+     * @return the position of the record after the record at the given position, or -1 if there is none
+     */
+    int next(int position) {
+        int next = position + LENGTH_SIZE + buffer.getInt(position);
+        return (next < writePosition) ? next : -1;
+    }
+
+    int first() {
+        return (readPosition < writePosition) ? readPosition : -1;
+    }
+
+    boolean isPending(int position) {
+        return buffer.get(position + LENGTH_SIZE) == STATUS_PENDING;
+    }
+
+    long getTimestamp(int position) {
+        return buffer.getLong(position + LENGTH_SIZE + 1);
+    }
+
+    String getDestination(int position) {
+        int offset = position + LENGTH_SIZE + 9;
+        return new String(getBytes(offset + 2, buffer.getShort(offset) & 0xFFFF), StandardCharsets.UTF_8);
+    }
+
+    SpoolRecord read(int position) {
+        int offset = position + LENGTH_SIZE + 1;
+        long timestamp = buffer.getLong(offset);
+        offset += 8;
+        int destinationLength = buffer.getShort(offset) & 0xFFFF;
+        String destination = new String(getBytes(offset + 2, destinationLength), StandardCharsets.UTF_8);
+        offset += 2 + destinationLength;
+        int keyLength = buffer.getShort(offset) & 0xFFFF;
+        String key = new String(getBytes(offset + 2, keyLength), StandardCharsets.UTF_8);
+        offset += 2 + keyLength;
+        byte[] payload = getBytes(offset + 4, buffer.getInt(offset));
+        return new SpoolRecord(destination, key, timestamp, payload);
+    }
+
+    private byte[] getBytes(int position, int length) {
+        byte[] data = new byte[length];
+        buffer.get(position, data);
+        return data;
+    }
+
+    /**
+     * Marks a record as done (acknowledged or expired).
+     */
+    void markDone(int position) {
+        if (isPending(position)) {
+            buffer.put(position + LENGTH_SIZE, STATUS_DONE);
+            pendingCount--;
+        }
+        // skip leading records that are done
+        while ((readPosition < writePosition) && !isPending(readPosition)) {
+            readPosition += LENGTH_SIZE + buffer.getInt(readPosition);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    boolean isEmpty() {
+        return writePosition == 0;
+    }
+
+}
@@ -0,0 +1,282 @@
+package nl.bertriksikken.spool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
+
+/**
+ * Persistent spool of uploads that could not be delivered.<br>
+ * <br>
+ * Failed uploads are appended to memory-mapped segment files, so they survive
+ * a restart. A background task replays them at a limited rate, through the
+ * handler registered for their destination. After a failed replay, the
+ * destination is backed off exponentially. Uploads older than the TTL are
+ * dropped. Segments without pending uploads are deleted, and the oldest
+ * segment is dropped when the maximum number of segments is reached, so the
+ * spool is bounded both on disk and on the heap.
+ */
+public final class UploadSpool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSpool.class);
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int MAX_NAME_LENGTH = 1000;
+
+    private final SpoolConfig config;
+    private final Path directory;
+    private final Clock clock;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, ISpoolHandler> handlers = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private final List<SpoolSegment> segments = new ArrayList<>();
+    private final Map<String, Backoff> backoffs = new HashMap<>();
+    private boolean dirty;
+
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // package-private to allow testing
+    UploadSpool(SpoolConfig config, Clock clock) throws IOException {
+        this.config = config;
+        this.directory = Paths.get(config.getPath());
+        this.clock = clock;
+        open();
+    }
+
+    public static UploadSpool create(SpoolConfig config) {
+        try {
+            return new UploadSpool(config, Clock.systemUTC());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open spool at " + config.getPath(), e);
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        int pending = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            SpoolSegment segment = SpoolSegment.open(file, sequence, config.getSegmentSize());
+            segments.add(segment);
+            pending += segment.getPendingCount();
+        }
+        LOG.info("Opened spool at '{}', {} segments, {} pending uploads", directory, segments.size(), pending);
+    }
+
+    /**
+     * Registers the handler that replays uploads for a destination.
+     */
+    public void register(String destination, ISpoolHandler handler) {
+        handlers.put(destination, handler);
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored")
+    public void start() {
+        LOG.info("Starting upload spool, replaying at most {} uploads per second", config.getReplayRate());
+        executor.scheduleWithFixedDelay(new CatchingRunnable(LOG, this::replayTick), 1, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        LOG.info("Stopping upload spool, {} spooled, {} replayed, {} expired, {} dropped", spooledCount.get(),
+                replayedCount.get(), expiredCount.get(), droppedCount.get());
+        executor.shutdownNow();
+        synchronized (this) {
+            segments.forEach(SpoolSegment::force);
+        }
+    }
+
+    /**
+     * Adds an upload to the spool.
+     *
+     * @param destination the destination, selects the handler for replay
+     * @param key         destination specific key, e.g. the sensor id
+     * @param payload     the upload payload
+     */
+    public synchronized void append(String destination, String key, byte[] payload) {
+        if ((destination.length() > MAX_NAME_LENGTH) || (key.length() > MAX_NAME_LENGTH)) {
+            LOG.warn("Not spooling upload for {}/{}: name too long", destination, key);
+            return;
+        }
+        SpoolRecord record = new SpoolRecord(destination, key, clock.millis(), payload);
+        try {
+            SpoolSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if ((segment == null) || !segment.append(record)) {
+                segment = roll();
+                if (!segment.append(record)) {
+                    LOG.warn("Not spooling upload for {}/{}: too large ({} bytes)", destination, key, payload.length);
+                    return;
+                }
+            }
+            spooledCount.incrementAndGet();
+            dirty = true;
+        } catch (IOException e) {
+            LOG.warn("Could not spool upload for {}/{}: {}", destination, key, e.getMessage());
+        }
+    }
+
+    // starts a new segment, drops the oldest segment if there are too many
+    private SpoolSegment roll() throws IOException {
+        while (segments.size() >= config.getMaxSegments()) {
+            SpoolSegment oldest = segments.remove(0);
+            droppedCount.addAndGet(oldest.getPendingCount());
+            LOG.warn("Spool full, dropping {} pending uploads", oldest.getPendingCount());
+            oldest.delete();
+        }
+        long sequence = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).getSequence() + 1;
+        Path path = directory.resolve(String.format(Locale.ROOT, "%016d%s", sequence, SEGMENT_SUFFIX));
+        SpoolSegment segment = SpoolSegment.open(path, sequence, config.getSegmentSize());
+        segments.add(segment);
+        return segment;
+    }
+
+    private void replayTick() {
+        replay(config.getReplayRate());
+    }
+
+    /**
+     * Replays pending uploads, in the order they were spooled.
+     *
+     * @param maxCount the maximum number of uploads to replay
+     * @return the number of uploads replayed
+     */
+    // package-private to allow testing
+    int replay(int maxCount) {
+        int count = 0;
+        List<SpoolSegment> snapshot;
+        synchronized (this) {
+            snapshot = List.copyOf(segments);
+        }
+        for (SpoolSegment segment : snapshot) {
+            int position;
+            synchronized (this) {
+                position = segment.first();
+            }
+            while ((position >= 0) && (count < maxCount)) {
+                SpoolRecord record = nextRecord(segment, position);
+                if (record != null) {
+                    replay(segment, position, record);
+                    count++;
+                }
+                synchronized (this) {
+                    position = segment.next(position);
+                }
+            }
+        }
+        compact();
+        return count;
+    }
+
+    // returns the record at the position if it should be replayed now
+    private synchronized SpoolRecord nextRecord(SpoolSegment segment, int position) {
+        if (!segment.isPending(position)) {
+            return null;
+        }
+        long now = clock.millis();
+        if (now - segment.getTimestamp(position) > config.getTtl().toMillis()) {
+            segment.markDone(position);
+            expiredCount.incrementAndGet();
+            return null;
+        }
+        String destination = segment.getDestination(position);
+        Backoff backoff = backoffs.get(destination);
+        if (!handlers.containsKey(destination) || ((backoff != null) && (now < backoff.nextAttempt))) {
+            return null;
+        }
+        return segment.read(position);
+    }
+
+    private void replay(SpoolSegment segment, int position, SpoolRecord record) {
+        ISpoolHandler handler = handlers.get(record.destination());
+        EDeliveryResult result;
+        try {
+            result = handler.replay(record.key(), record.payload());
+        } catch (RuntimeException e) {
+            LOG.warn("Replay for {}/{} failed: {}", record.destination(), record.key(), e.getMessage());
+            result = EDeliveryResult.RETRY;
+        }
+        synchronized (this) {
+            if (result == EDeliveryResult.RETRY) {
+                Backoff backoff = backoffs.computeIfAbsent(record.destination(), destination -> new Backoff());
+                backoff.failed(clock.millis());
+                LOG.info("Replay for {} failed, backing off for {} ms", record.destination(),
+                        backoff.nextAttempt - clock.millis());
+            } else {
+                segment.markDone(position);
+                backoffs.remove(record.destination());
+                replayedCount.incrementAndGet();
+                dirty = true;
+            }
+        }
+    }
+
+    // deletes segments without pending uploads, except the one being appended to
+    private synchronized void compact() {
+        for (int i = segments.size() - 2; i >= 0; i--) {
+            SpoolSegment segment = segments.get(i);
+            if (segment.getPendingCount() == 0) {
+                segments.remove(i);
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    LOG.warn("Could not delete spool segment: {}", e.getMessage());
+                }
+            }
+        }
+        if (dirty) {
+            segments.forEach(SpoolSegment::force);
+            dirty = false;
+        }
+    }
+
+    /**
+     * @return the number of uploads waiting to be replayed
+     */
+    public synchronized int getPendingCount() {
+        return segments.stream().mapToInt(SpoolSegment::getPendingCount).sum();
+    }
+
+    // package-private to allow testing
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // exponential backoff state of one destination
+    private final class Backoff {
+        private int failures;
+        private long nextAttempt;
+
+        void failed(long now) {
+            failures++;
+            long initial = config.getInitialBackoff().toMillis();
+            long delay = Math.min(config.getMaxBackoff().toMillis(), initial << Math.min(failures - 1, 20));
+            nextAttempt = now + delay;
+        }
+    }
+
+}
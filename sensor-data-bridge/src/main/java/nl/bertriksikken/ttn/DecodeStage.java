@@ -0,0 +1,173 @@
+package nl.bertriksikken.ttn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.bertriksikken.loraforwarder.AppDeviceId;
+import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
+
+/**
+ * Decode stage between the MQTT callback and the rest of the application.
+ *
+ * Raw MQTT payloads are queued to one of several workers. The worker is
+ * selected by hashing the application/device id found in the topic, so
+ * messages from the same device are always decoded in order. When the queue of
+ * a worker is full, the submitting (MQTT callback) thread blocks until there is
+ * room again.
+ *
+ * On stop, the workers first decode the messages still queued, for a limited
+ * time. Whatever is left after that is dropped, and logged.
+ */
+public final class DecodeStage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DecodeStage.class);
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    private final List<BlockingQueue<DecodeTask>> queues = new ArrayList<>();
+    private final ExecutorService executor;
+    private final AtomicLong submitCount = new AtomicLong();
+    private final AtomicLong backpressureCount = new AtomicLong();
+    private volatile boolean stopping;
+
+    /**
+     * Constructor.
+     *
+     * @param numWorkers the number of decode workers
+     * @param queueSize  the maximum number of pending messages for each worker
+     */
+    public DecodeStage(int numWorkers, int queueSize) {
+        for (int i = 0; i < numWorkers; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueSize));
+        }
+        executor = Executors.newFixedThreadPool(numWorkers);
+    }
+
+    public static DecodeStage create(TtnConfig config) {
+        int numWorkers = config.getDecodeThreads();
+        if (numWorkers <= 0) {
+            numWorkers = Runtime.getRuntime().availableProcessors();
+        }
+        LOG.info("Creating decode stage with {} workers, queue size {}", numWorkers, config.getDecodeQueueSize());
+        return new DecodeStage(numWorkers, config.getDecodeQueueSize());
+    }
+
+    public void start() {
+        LOG.info("Starting decode stage");
+        queues.forEach(queue -> executor.execute(() -> runWorker(queue)));
+    }
+
+    /**
+     * Stops the decode stage, after decoding the queued messages. Must be called after the MQTT clients have stopped
+     * submitting messages.
+     */
+    public void stop() {
+        LOG.info("Stopping decode stage, decoding {} queued messages", getQueueDepth());
+        stopping = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Decode stage did not finish in time, dropping {} queued messages", getQueueDepth());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while stopping decode stage, dropping {} queued messages", getQueueDepth());
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a raw MQTT message for decoding, blocks if the queue is full.
+     *
+     * @param topic   the MQTT topic, used to keep messages from the same device
+     *                in order
+     * @param payload the raw MQTT payload
+     * @param handler the handler that decodes the payload, runs on a worker
+     * @throws InterruptedException if interrupted while waiting for queue space
+     */
+    void submit(String topic, byte[] payload, Consumer<byte[]> handler) throws InterruptedException {
+        submitCount.incrementAndGet();
+        DecodeTask task = new DecodeTask(payload, handler);
+        BlockingQueue<DecodeTask> queue = queues.get(selectWorker(topic, queues.size()));
+        if (!queue.offer(task)) {
+            long count = backpressureCount.incrementAndGet();
+            LOG.debug("Decode queue full, applying backpressure ({} times so far)", count);
+            queue.put(task);
+        }
+    }
+
+    private void runWorker(BlockingQueue<DecodeTask> queue) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                DecodeTask task = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    new CatchingRunnable(LOG, () -> task.handler.accept(task.payload)).run();
+                } else if (stopping) {
+                    // queue drained
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // package-private to allow testing
+    static int selectWorker(String topic, int numWorkers) {
+        return Math.floorMod(parseTopic(topic).hashCode(), numWorkers);
+    }
+
+    /**
+     * Extracts the application and device id from a topic like
+     * "v3/{application id}@{tenant id}/devices/{device id}/up".
+     */
+    static AppDeviceId parseTopic(String topic) {
+        String[] parts = topic.split("/", -1);
+        if (parts.length < 4) {
+            return new AppDeviceId("", topic);
+        }
+        String appId = parts[1];
+        int index = appId.indexOf('@');
+        if (index >= 0) {
+            appId = appId.substring(0, index);
+        }
+        return new AppDeviceId(appId, parts[3]);
+    }
+
+    /**
+     * @return the total number of messages submitted to this stage
+     */
+    public long getSubmitCount() {
+        return submitCount.get();
+    }
+
+    /**
+     * @return the number of times a submitter had to wait for queue space
+     */
+    public long getBackpressureCount() {
+        return backpressureCount.get();
+    }
+
+    /**
+     * @return the total number of messages waiting to be decoded
+     */
+    public int getQueueDepth() {
+        return queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    @SuppressWarnings("ArrayRecordComponent")
+    private record DecodeTask(byte[] payload, Consumer<byte[]> handler) {
+    }
+
+}
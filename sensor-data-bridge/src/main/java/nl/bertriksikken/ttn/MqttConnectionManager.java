@@ -0,0 +1,116 @@
+package nl.bertriksikken.ttn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.bertriksikken.metrics.Counter;
+import nl.bertriksikken.metrics.MetricsRegistry;
+
+/**
+ * Owns the MQTT clients of all TTN applications.<br>
+ * <br>
+ * All clients run on one shared executor, which also runs their keep-alive pings and (re-)connect attempts. Connects
+ * are staggered at start-up and retried with a jittered exponential backoff, see {@link ReconnectBackoff}. The health
+ * of each connection is reported as metrics.<br>
+ * <br>
+ * The number of threads is not bounded: Paho still runs a blocking receiver, sender and callback loop for each
+ * connection, so the executor needs 3 threads for each application. What the shared executor avoids are the extra
+ * timer threads Paho otherwise starts for pinging and automatic reconnect, so the number of threads stays the same
+ * while connections come and go, but still grows with every application added.
+ */
+public final class MqttConnectionManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MqttConnectionManager.class);
+    private static final long DISCONNECT_TIMEOUT_MS = 3000;
+
+    // Paho runs a receiver, sender and callback loop for each connected client on the executor
+    private static final int THREADS_PER_CLIENT = 3;
+
+    private final TtnConfig config;
+    private final DecodeStage decodeStage;
+    private final MetricsRegistry metrics;
+    private final ReconnectBackoff backoff;
+    // a scheduled executor never grows beyond its core size, so that must cover all client loops
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    private final List<MqttListener> listeners = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param config      the global TTN configuration
+     * @param decodeStage the decode stage that runs the JSON decoding
+     * @param metrics     the registry for the connection health metrics
+     */
+    public MqttConnectionManager(TtnConfig config, DecodeStage decodeStage, MetricsRegistry metrics) {
+        this.config = Objects.requireNonNull(config);
+        this.decodeStage = Objects.requireNonNull(decodeStage);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.backoff = new ReconnectBackoff(config);
+        // connects cancelled on stop are removed from the queue right away
+        executor.setRemoveOnCancelPolicy(true);
+        metrics.gauge("sdb_mqtt_threads", "Threads running the MQTT clients, grows with the number of applications.",
+                executor::getPoolSize);
+    }
+
+    /**
+     * Adds the MQTT client of an application, must be called before {@link #start()}.
+     *
+     * @param appConfig the application-specific configuration
+     * @param callback  callback for message notification
+     */
+    public void add(TtnAppConfig appConfig, IMessageReceived callback) {
+        String app = appConfig.getName();
+        Counter connectionsLost = metrics.counter("sdb_mqtt_connections_lost_total", "Lost MQTT connections.", "app",
+                app);
+        MqttListener listener = new MqttListener(config, appConfig, decodeStage, callback, executor, backoff,
+                connectionsLost);
+        metrics.gauge("sdb_mqtt_connected", "Whether the MQTT client is connected (1) or not (0).",
+                () -> listener.isConnected() ? 1 : 0, "app", app);
+        metrics.gauge("sdb_mqtt_connect_failures", "Consecutive failed MQTT connect attempts.", listener::getFailures,
+                "app", app);
+        listeners.add(listener);
+        executor.setCorePoolSize(1 + (THREADS_PER_CLIENT * listeners.size()));
+    }
+
+    /**
+     * Starts all clients, their first connects are spread out in time.
+     */
+    public void start() {
+        LOG.info("Starting {} MQTT clients on {} threads", listeners.size(), executor.getCorePoolSize());
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).start(backoff.initialDelayMillis(i));
+        }
+    }
+
+    /**
+     * Stops all clients, disconnecting them concurrently.
+     */
+    public void stop() {
+        List<IMqttToken> tokens = new ArrayList<>();
+        for (MqttListener listener : listeners) {
+            IMqttToken token = listener.disconnect();
+            if (token != null) {
+                tokens.add(token);
+            }
+        }
+        for (IMqttToken token : tokens) {
+            try {
+                token.waitForCompletion(DISCONNECT_TIMEOUT_MS);
+            } catch (MqttException e) {
+                // don't care, just log
+                LOG.warn("Caught exception on disconnect: {}", e.getMessage());
+            }
+        }
+        listeners.forEach(MqttListener::close);
+        executor.shutdownNow();
+    }
+
+}
@@ -2,126 +2,245 @@ package nl.bertriksikken.ttn;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
-import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.ScheduledExecutorPingSender;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import nl.bertriksikken.ttn.dto.Ttnv3UplinkMessage;
+import nl.bertriksikken.loraforwarder.util.CatchingRunnable;
+import nl.bertriksikken.metrics.Counter;
+import nl.bertriksikken.ttn.dto.Ttnv3UplinkParser;
 
 /**
  * Listener process for receiving data from MQTT.
  * 
- * Decouples the MQTT callback from listener using a single thread executor.
+ * Decouples the MQTT callback from listener using a decode stage, the MQTT
+ * callback only queues the raw message.
+ * 
+ * The client runs on an executor shared by all listeners, see {@link MqttConnectionManager}, which also runs the
+ * (re-)connect attempts. Paho's own automatic reconnect is not used, since it starts a timer thread for each client.
  */
 public final class MqttListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(MqttListener.class);
     private static final long DISCONNECT_TIMEOUT_MS = 3000;
 
-    private final MqttClient mqttClient;
+    private final String name;
+    private final MqttAsyncClient mqttClient;
     private final MqttConnectOptions options;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final DecodeStage decodeStage;
+    private final IMessageReceived callback;
+    private final ScheduledExecutorService executor;
+    private final ReconnectBackoff backoff;
+    private final Counter connectionsLost;
+    private final Ttnv3UplinkParser parser = new Ttnv3UplinkParser();
+
+    private volatile boolean running;
+    private volatile int failures;
+    // the next connect attempt, guarded by this
+    private ScheduledFuture<?> pendingConnect;
 
     /**
      * Constructor.
      * 
-     * @param config    the global TTN configuration
-     * @param appConfig the application-specific configuration
-     * @param callback  callback for message notification
+     * @param config          the global TTN configuration
+     * @param appConfig       the application-specific configuration
+     * @param decodeStage     the decode stage that runs the JSON decoding
+     * @param callback        callback for message notification
+     * @param executor        the executor shared by all MQTT clients
+     * @param backoff         the reconnect delay policy
+     * @param connectionsLost counter of lost connections
      */
-    public MqttListener(TtnConfig config, TtnAppConfig appConfig, IMessageReceived callback) {
+    MqttListener(TtnConfig config, TtnAppConfig appConfig, DecodeStage decodeStage, IMessageReceived callback,
+            ScheduledExecutorService executor, ReconnectBackoff backoff, Counter connectionsLost) {
         LOG.info("Creating MQTT client for app '{}'", appConfig.getName());
+        this.name = appConfig.getName();
+        this.decodeStage = decodeStage;
+        this.callback = callback;
+        this.executor = executor;
+        this.backoff = backoff;
+        this.connectionsLost = connectionsLost;
         try {
-            this.mqttClient = new MqttClient(config.getMqttUrl(), MqttClient.generateClientId(),
-                    new MemoryPersistence());
+            this.mqttClient = new MqttAsyncClient(config.getMqttUrl(), MqttAsyncClient.generateClientId(),
+                    new MemoryPersistence(), new ScheduledExecutorPingSender(executor), executor);
         } catch (MqttException e) {
             throw new IllegalArgumentException(e);
         }
 
-        mqttClient.setCallback(new MqttCallbackHandler(mqttClient, "v3/+/devices/+/up", callback));
+        mqttClient.setCallback(new MqttCallbackHandler(mqttClient, "v3/+/devices/+/up"));
 
-        // create connect options
+        // create connect options, reconnecting is done by this listener
         options = new MqttConnectOptions();
         options.setUserName(appConfig.getName());
         options.setPassword(appConfig.getKey().toCharArray());
-        options.setAutomaticReconnect(true);
+        options.setAutomaticReconnect(false);
     }
 
     /**
-     * Starts this module.
+     * Starts this module, connects after a delay.
      * 
-     * @throws MqttException in case something went wrong with MQTT
+     * @param delayMillis the delay before the first connect attempt
      */
-    public void start() throws MqttException {
-        LOG.info("Starting MQTT listener '{}'", options.getUserName());
-
-        mqttClient.connect(options);
+    void start(long delayMillis) {
+        LOG.info("Starting MQTT listener '{}', connecting in {} ms", name, delayMillis);
+        running = true;
+        scheduleConnect(delayMillis);
     }
 
-    public void stop() {
-        LOG.info("Stopping MQTT listener '{}'", options.getUserName());
+    /**
+     * Starts disconnecting, without waiting for it to complete.
+     * 
+     * @return the token to wait for the disconnect, null if not connected
+     */
+    IMqttToken disconnect() {
+        LOG.info("Stopping MQTT listener '{}'", name);
+        running = false;
+        cancelConnect();
         try {
-            mqttClient.disconnect(DISCONNECT_TIMEOUT_MS);
+            return mqttClient.isConnected() ? mqttClient.disconnect(DISCONNECT_TIMEOUT_MS) : null;
         } catch (MqttException e) {
             // don't care, just log
             LOG.warn("Caught exception on disconnect: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    void close() {
+        try {
+            mqttClient.close();
+        } catch (MqttException e) {
+            LOG.warn("Caught exception on close: {}", e.getMessage());
+        }
+    }
+
+    boolean isConnected() {
+        return mqttClient.isConnected();
+    }
+
+    /**
+     * @return the number of consecutive failed connect attempts
+     */
+    int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Handles a lost connection, by scheduling a reconnect after a jittered delay.
+     * 
+     * @param cause the reason the connection was lost
+     */
+    // package-private to allow testing
+    void connectionLost(Throwable cause) {
+        connectionsLost.increment();
+        long delay = backoff.reconnectDelayMillis(0);
+        LOG.warn("Connection of '{}' lost: {}, reconnecting in {} ms", name, cause.getMessage(), delay);
+        scheduleConnect(delay);
+    }
+
+    private synchronized void scheduleConnect(long delayMillis) {
+        if (running) {
+            pendingConnect = executor.schedule(new CatchingRunnable(LOG, this::connect), delayMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void cancelConnect() {
+        if (pendingConnect != null) {
+            pendingConnect.cancel(false);
+            pendingConnect = null;
+        }
+    }
+
+    private void connect() {
+        if (!running) {
+            return;
+        }
+        try {
+            mqttClient.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    failures = 0;
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable exception) {
+                    connectFailed(exception);
+                }
+            });
+        } catch (MqttException e) {
+            connectFailed(e);
+        }
+    }
+
+    private void connectFailed(Throwable cause) {
+        long delay = backoff.reconnectDelayMillis(failures);
+        failures++;
+        LOG.warn("Connect of '{}' failed ({} attempts): {}, retrying in {} ms", name, failures, cause.getMessage(),
+                delay);
+        scheduleConnect(delay);
+    }
+
+    // decodes a raw MQTT message, runs on the decode stage
+    private void handleMessage(byte[] payload) {
+        // handle message, in an exception safe manner
+        try {
+            // decode JSON, parse device EUI and payload
+            TtnUplinkMessage uplink = parser.parse(payload);
+
+            // notify listener
+            if (uplink.getPayloadLength() > 0) {
+                callback.messageReceived(uplink);
+            } else {
+                LOG.info("Ignoring empty payload");
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not parse MQTT message: '{}'", new String(payload, StandardCharsets.US_ASCII));
+        } catch (Exception e) {
+            LOG.trace("Caught unhandled uplink exception in MQTT listener", e);
+            LOG.error("Caught unhandled uplink exception in MQTT listener: {}", e.getMessage());
         }
     }
 
     /**
-     * MQTT callback handler, (re-)subscribes to the topic and forwards incoming
+     * MQTT callback handler, (re-)subscribes to the topic and queues incoming
      * messages.
      */
     private final class MqttCallbackHandler implements MqttCallbackExtended {
 
-        private final MqttClient client;
+        private final MqttAsyncClient client;
         private final String topic;
-        private final IMessageReceived listener;
 
-        private MqttCallbackHandler(MqttClient client, String topic, IMessageReceived listener) {
+        private MqttCallbackHandler(MqttAsyncClient client, String topic) {
             this.client = client;
             this.topic = topic;
-            this.listener = listener;
         }
 
         @Override
         public void connectionLost(Throwable cause) {
-            LOG.warn("Connection lost: {}", cause.getMessage());
+            MqttListener.this.connectionLost(cause);
         }
 
         @Override
-        public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+        public void messageArrived(String topic, MqttMessage mqttMessage) {
             LOG.info("Message arrived on topic '{}'", topic);
-
-            // handle message, in an exception safe manner
             try {
-                // decode JSON
-                String message = new String(mqttMessage.getPayload(), StandardCharsets.US_ASCII);
-
-                // parse device EUI and payload
-                Ttnv3UplinkMessage uplinkV3 = mapper.readValue(message, Ttnv3UplinkMessage.class);
-                TtnUplinkMessage uplink = uplinkV3.toTtnUplinkMessage();
-
-                // notify listener
-                if (uplink.getRawPayload().length > 0) {
-                    listener.messageReceived(uplink);
-                } else {
-                    LOG.info("Ignoring empty payload");
-                }
-            } catch (IOException e) {
-                LOG.warn("Could not parse MQTT message: '{}'", mqttMessage);
-            } catch (Exception e) {
-                LOG.trace("Caught unhandled uplink exception in MQTT listener", e);
-                LOG.error("Caught unhandled uplink exception in MQTT listener: {}", e.getMessage());
+                // blocks while the decode stage is full, this slows down the MQTT client
+                decodeStage.submit(topic, mqttMessage.getPayload(), MqttListener.this::handleMessage);
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while queueing message from topic '{}'", topic);
+                Thread.currentThread().interrupt();
             }
         }
 
@@ -134,7 +253,7 @@ public final class MqttListener {
         public void connectComplete(boolean reconnect, String serverURI) {
             LOG.info("Connected to '{}', subscribing to MQTT topic '{}'", serverURI, topic);
             try {
-                client.subscribe(topic);
+                client.subscribe(topic, 1);
             } catch (MqttException e) {
                 LOG.error("Caught exception while subscribing!");
             }
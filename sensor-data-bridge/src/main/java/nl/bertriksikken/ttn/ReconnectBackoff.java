@@ -0,0 +1,56 @@
+package nl.bertriksikken.ttn;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Calculates jittered delays for MQTT (re-)connects.<br>
+ * <br>
+ * The first connects of the applications are spread out, so they don't all hit the broker at once. After a lost
+ * connection, the reconnect delay doubles with each failed attempt up to a maximum, and is randomized so clients that
+ * lost their connection at the same moment (e.g. a broker restart) don't reconnect in lock-step.
+ */
+final class ReconnectBackoff {
+
+    // limits the doubling, so the delay calculation cannot overflow
+    private static final int MAX_DOUBLINGS = 30;
+
+    private final long staggerMillis;
+    private final long minMillis;
+    private final long maxMillis;
+    private final Random random;
+
+    ReconnectBackoff(Duration stagger, Duration min, Duration max, Random random) {
+        this.staggerMillis = stagger.toMillis();
+        this.minMillis = Math.max(1, min.toMillis());
+        this.maxMillis = Math.max(minMillis, max.toMillis());
+        this.random = random;
+    }
+
+    ReconnectBackoff(TtnConfig config) {
+        this(config.getMqttConnectStagger(), config.getMqttReconnectMin(), config.getMqttReconnectMax(), new Random());
+    }
+
+    /**
+     * @param index the position of the connection in the start order
+     * @return the delay before the first connect, in milliseconds
+     */
+    long initialDelayMillis(int index) {
+        return (index * staggerMillis) + jitter(staggerMillis);
+    }
+
+    /**
+     * @param failures the number of consecutive failed connect attempts
+     * @return the delay before the next connect attempt, between half and all of the current backoff, in milliseconds
+     */
+    long reconnectDelayMillis(int failures) {
+        long ceiling = Math.min(maxMillis, minMillis << Math.min(failures, MAX_DOUBLINGS));
+        long half = ceiling / 2;
+        return half + jitter(ceiling - half + 1);
+    }
+
+    private synchronized long jitter(long bound) {
+        return (bound > 0) ? random.nextLong(bound) : 0;
+    }
+
+}
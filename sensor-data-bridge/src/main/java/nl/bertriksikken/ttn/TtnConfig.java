@@ -14,12 +14,47 @@ public final class TtnConfig {
     @JsonProperty("mqtt_url")
     private String mqttUrl = "tcp://eu1.cloud.thethings.network";
 
+    // delay between the first connects of consecutive applications (milliseconds)
+    @JsonProperty("mqtt_connect_stagger")
+    private int mqttConnectStagger = 1000;
+
+    // reconnect delay after a lost connection, doubled after each failed attempt up to the maximum (seconds)
+    @JsonProperty("mqtt_reconnect_min")
+    private int mqttReconnectMin = 1;
+
+    @JsonProperty("mqtt_reconnect_max")
+    private int mqttReconnectMax = 120;
+
     @JsonProperty("identity_server_url")
     private String identityServerUrl = "https://eu1.cloud.thethings.network";
 
     @JsonProperty("identity_server_timeout")
     private int identityServerTimeout = 30;
 
+    // number of decode threads, 0 means one for each available processor
+    @JsonProperty("decode_threads")
+    private int decodeThreads = 0;
+
+    // maximum number of pending messages for each decode thread
+    @JsonProperty("decode_queue_size")
+    private int decodeQueueSize = 100;
+
+    // number of devices fetched in one request when synchronizing device attributes
+    @JsonProperty("attribute_page_size")
+    private int attributePageSize = 100;
+
+    // interval between synchronizations of only the devices changed since the previous one (minutes)
+    @JsonProperty("attribute_sync_interval")
+    private int attributeSyncInterval = 5;
+
+    // interval between synchronizations of all devices (minutes)
+    @JsonProperty("attribute_full_sync_interval")
+    private int attributeFullSyncInterval = 60;
+
+    // time before a device without relevant attributes is looked up again (minutes)
+    @JsonProperty("attribute_negative_ttl")
+    private int attributeNegativeTtl = 10;
+
     @JsonProperty("apps")
     private List<TtnAppConfig> apps = new ArrayList<>();
 
@@ -30,8 +65,17 @@ public final class TtnConfig {
     // copy constructor
     public TtnConfig(TtnConfig original) {
         this.mqttUrl = original.mqttUrl;
+        this.mqttConnectStagger = original.mqttConnectStagger;
+        this.mqttReconnectMin = original.mqttReconnectMin;
+        this.mqttReconnectMax = original.mqttReconnectMax;
         this.identityServerUrl = original.identityServerUrl;
         this.identityServerTimeout = original.identityServerTimeout;
+        this.decodeThreads = original.decodeThreads;
+        this.decodeQueueSize = original.decodeQueueSize;
+        this.attributePageSize = original.attributePageSize;
+        this.attributeSyncInterval = original.attributeSyncInterval;
+        this.attributeFullSyncInterval = original.attributeFullSyncInterval;
+        this.attributeNegativeTtl = original.attributeNegativeTtl;
         this.apps = List.copyOf(original.apps);
     }
 
@@ -43,6 +87,18 @@ public final class TtnConfig {
         return mqttUrl;
     }
 
+    public Duration getMqttConnectStagger() {
+        return Duration.ofMillis(mqttConnectStagger);
+    }
+
+    public Duration getMqttReconnectMin() {
+        return Duration.ofSeconds(mqttReconnectMin);
+    }
+
+    public Duration getMqttReconnectMax() {
+        return Duration.ofSeconds(mqttReconnectMax);
+    }
+
     public String getIdentityServerUrl() {
         return identityServerUrl;
     }
@@ -51,6 +107,30 @@ public final class TtnConfig {
         return Duration.ofSeconds(identityServerTimeout);
     }
 
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    public int getDecodeQueueSize() {
+        return decodeQueueSize;
+    }
+
+    public int getAttributePageSize() {
+        return attributePageSize;
+    }
+
+    public Duration getAttributeSyncInterval() {
+        return Duration.ofMinutes(attributeSyncInterval);
+    }
+
+    public Duration getAttributeFullSyncInterval() {
+        return Duration.ofMinutes(attributeFullSyncInterval);
+    }
+
+    public Duration getAttributeNegativeTtl() {
+        return Duration.ofMinutes(attributeNegativeTtl);
+    }
+
     public List<TtnAppConfig> getApps() {
         return List.copyOf(apps);
     }
@@ -1,7 +1,12 @@
 package nl.bertriksikken.ttn;
 
+import java.nio.ByteBuffer;
+import java.time.Instant;
 import java.util.Locale;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
 import nl.bertriksikken.nbiot.HexConverter;
 
 /**
@@ -14,28 +19,53 @@ public final class TtnUplinkMessage {
     private final String devId;
     private final String devEui;
     private final byte[] rawPayload;
-    private final String decodedFields;
+    private final JsonNode decodedPayload;
     private final int port;
+    private int fcnt = 0;
     private double rssi = Double.NaN;
     private double snr = Double.NaN;
     private int sf = 0;
+    private Instant receivedAt;
 
-    public TtnUplinkMessage(String appId, String devId, String devEui, byte[] rawPayload, String decodedFields,
+    public TtnUplinkMessage(String appId, String devId, String devEui, byte[] rawPayload, JsonNode decodedPayload,
             int port) {
+        this(appId, devId, devEui, decodedPayload, port, rawPayload.clone());
+    }
+
+    private TtnUplinkMessage(String appId, String devId, String devEui, JsonNode decodedPayload, int port,
+            byte[] rawPayload) {
         this.appId = appId;
         this.devId = devId;
         this.devEui = devEui;
-        this.rawPayload = rawPayload.clone();
-        this.decodedFields = decodedFields;
+        this.rawPayload = rawPayload;
+        // decoders and tests without a payload formatter pass null
+        this.decodedPayload = (decodedPayload != null) ? decodedPayload : MissingNode.getInstance();
         this.port = port;
     }
 
+    /**
+     * Creates an uplink message that takes over the payload array instead of copying it, for parsers that just
+     * decoded the payload. The array must not be modified afterwards.
+     */
+    public static TtnUplinkMessage wrap(String appId, String devId, String devEui, byte[] rawPayload,
+            JsonNode decodedPayload, int port) {
+        return new TtnUplinkMessage(appId, devId, devEui, decodedPayload, port, rawPayload);
+    }
+
     public void setRadioParams(double rssi, double snr, int sf) {
         this.rssi = rssi;
         this.snr = snr;
         this.sf = sf;
     }
 
+    public void setFrameCounter(int fcnt) {
+        this.fcnt = fcnt;
+    }
+
+    public void setReceivedAt(Instant receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
     public String getAppId() {
         return appId;
     }
@@ -52,14 +82,32 @@ public final class TtnUplinkMessage {
         return rawPayload.clone();
     }
 
-    public String getDecodedFields() {
-        return decodedFields;
+    /**
+     * @return a read-only view of the payload, without copying it, positioned at the start
+     */
+    public ByteBuffer getPayload() {
+        return ByteBuffer.wrap(rawPayload).asReadOnlyBuffer();
+    }
+
+    public int getPayloadLength() {
+        return rawPayload.length;
+    }
+
+    /**
+     * @return the payload as decoded by the TTN payload formatter, a missing node if there is none
+     */
+    public JsonNode getDecodedPayload() {
+        return decodedPayload;
     }
 
     public int getPort() {
         return port;
     }
 
+    public int getFrameCounter() {
+        return fcnt;
+    }
+
     public double getRSSI() {
         return rssi;
     }
@@ -72,10 +120,17 @@ public final class TtnUplinkMessage {
         return sf;
     }
 
+    /**
+     * @return the time the network received the uplink, null if unknown
+     */
+    public Instant getReceivedAt() {
+        return receivedAt;
+    }
+
     @Override
     public String toString() {
         return String.format(Locale.ROOT, "%s/%s: {data:'%s', fields:'%s'}", appId, devId,
-                HexConverter.toString(rawPayload), decodedFields);
+                HexConverter.toString(rawPayload), decodedPayload.isMissingNode() ? "" : decodedPayload);
     }
 
 }
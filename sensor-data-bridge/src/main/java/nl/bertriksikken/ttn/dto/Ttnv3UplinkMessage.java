@@ -3,6 +3,7 @@ package nl.bertriksikken.ttn.dto;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
 
 import nl.bertriksikken.ttn.TtnUplinkMessage;
 
@@ -22,15 +23,20 @@ public final class Ttnv3UplinkMessage {
         String devId = endDeviceIds.at("/device_id").asText("");
         String appId = endDeviceIds.at("/application_ids/application_id").asText("");
         String devEui = endDeviceIds.at("/dev_eui").asText("");
-        String decodedPayload = uplinkMessage.decodedPayload != null ? uplinkMessage.decodedPayload.toString() : "";
-        TtnUplinkMessage message = new TtnUplinkMessage(appId, devId, devEui, uplinkMessage.frmPayload, decodedPayload,
-                uplinkMessage.fport);
+        JsonNode decodedPayload = uplinkMessage.decodedPayload != null ? uplinkMessage.decodedPayload
+                : MissingNode.getInstance();
+        TtnUplinkMessage message = TtnUplinkMessage.wrap(appId, devId, devEui, uplinkMessage.frmPayload,
+                decodedPayload, uplinkMessage.fport);
         int sf = uplinkMessage.settings.at("/data_rate/lora/spreading_factor").asInt();
         double rssi = uplinkMessage.rxMetadata.stream().mapToDouble(m -> m.at("/rssi").asDouble()).max()
                 .orElse(Double.NaN);
         double snr = uplinkMessage.rxMetadata.stream().mapToDouble(m -> m.at("/snr").asDouble()).max()
                 .orElse(Double.NaN);
         message.setRadioParams(rssi, snr, sf);
+        message.setFrameCounter(uplinkMessage.fcnt);
+        if (uplinkMessage.receivedAt != null) {
+            message.setReceivedAt(uplinkMessage.getReceivedAt());
+        }
         return message;
     }
 
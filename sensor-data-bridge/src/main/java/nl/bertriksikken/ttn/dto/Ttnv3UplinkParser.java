@@ -0,0 +1,249 @@
+package nl.bertriksikken.ttn.dto;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+
+/**
+ * Streaming parser for TTN v3 uplink messages.<br>
+ * <br>
+ * Reads only the fields we need for a {@link TtnUplinkMessage} directly from
+ * the raw MQTT bytes and skips everything else, without building a tree for
+ * the complete message like {@link Ttnv3UplinkMessage} does.<br>
+ * <br>
+ * https://www.thethingsindustries.com/docs/reference/data-formats/#uplink-messages
+ */
+public final class Ttnv3UplinkParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Ttnv3UplinkParser.class);
+
+    // factory with an object codec, so the decoded payload can be read as a tree
+    private final JsonFactory factory = new ObjectMapper().getFactory();
+
+    /**
+     * Parses a TTN v3 uplink message.
+     *
+     * @param json the raw JSON
+     * @return the uplink message
+     * @throws IOException in case of a JSON parse problem
+     */
+    public TtnUplinkMessage parse(byte[] json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected JSON object");
+            }
+            Fields fields = new Fields();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (name.equals("end_device_ids") && (token == JsonToken.START_OBJECT)) {
+                    parseEndDeviceIds(parser, fields);
+                } else if (name.equals("uplink_message") && (token == JsonToken.START_OBJECT)) {
+                    parseUplinkMessage(parser, fields);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return fields.toTtnUplinkMessage();
+        }
+    }
+
+    private void parseEndDeviceIds(JsonParser parser, Fields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "device_id":
+                    fields.devId = parser.getValueAsString("");
+                    break;
+                case "dev_eui":
+                    fields.devEui = parser.getValueAsString("");
+                    break;
+                case "application_ids":
+                    if (token == JsonToken.START_OBJECT) {
+                        fields.appId = findText(parser, "application_id");
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    private void parseUplinkMessage(JsonParser parser, Fields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "f_port":
+                    fields.port = parser.getValueAsInt();
+                    break;
+                case "f_cnt":
+                    fields.fcnt = parser.getValueAsInt();
+                    break;
+                case "received_at":
+                    fields.receivedAt = parseInstant(parser);
+                    break;
+                case "frm_payload":
+                    if (token == JsonToken.VALUE_STRING) {
+                        fields.payload = parser.getBinaryValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "decoded_payload":
+                    if (token == JsonToken.START_OBJECT) {
+                        fields.decodedPayload = parser.readValueAsTree();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "rx_metadata":
+                    if (token == JsonToken.START_ARRAY) {
+                        parseRxMetadata(parser, fields);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "settings":
+                    if (token == JsonToken.START_OBJECT) {
+                        parseSettings(parser, fields);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    // determines the best RSSI and SNR over all gateways
+    private void parseRxMetadata(JsonParser parser, Fields fields) throws IOException {
+        JsonToken entry;
+        while (((entry = parser.nextToken()) != null) && (entry != JsonToken.END_ARRAY)) {
+            if (entry != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (name.equals("rssi") && token.isNumeric()) {
+                    fields.rssi = max(fields.rssi, parser.getDoubleValue());
+                } else if (name.equals("snr") && token.isNumeric()) {
+                    fields.snr = max(fields.snr, parser.getDoubleValue());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    // finds settings.data_rate.lora.spreading_factor
+    private void parseSettings(JsonParser parser, Fields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (name.equals("data_rate") && (token == JsonToken.START_OBJECT)) {
+                parseDataRate(parser, fields);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseDataRate(JsonParser parser, Fields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (name.equals("lora") && (token == JsonToken.START_OBJECT)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String loraName = parser.currentName();
+                    parser.nextToken();
+                    if (loraName.equals("spreading_factor")) {
+                        fields.sf = parser.getValueAsInt();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // returns the text value of the named field within the current object, skips all other fields
+    private String findText(JsonParser parser, String fieldName) throws IOException {
+        String value = "";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (name.equals(fieldName)) {
+                value = parser.getValueAsString("");
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private static Instant parseInstant(JsonParser parser) throws IOException {
+        String text = parser.getValueAsString();
+        if (text == null) {
+            parser.skipChildren();
+            return null;
+        }
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            // the timestamp is optional, so don't drop the uplink because of it
+            LOG.warn("Ignoring invalid timestamp '{}'", text);
+            return null;
+        }
+    }
+
+    private static double max(double current, double value) {
+        return Double.isNaN(current) ? value : Math.max(current, value);
+    }
+
+    // mutable holder for the fields collected during parsing
+    private static final class Fields {
+        private String appId = "";
+        private String devId = "";
+        private String devEui = "";
+        private int port;
+        private int fcnt;
+        private byte[] payload = new byte[0];
+        private JsonNode decodedPayload = MissingNode.getInstance();
+        private double rssi = Double.NaN;
+        private double snr = Double.NaN;
+        private int sf;
+        private Instant receivedAt;
+
+        TtnUplinkMessage toTtnUplinkMessage() {
+            TtnUplinkMessage message = TtnUplinkMessage.wrap(appId, devId, devEui, payload, decodedPayload, port);
+            message.setRadioParams(rssi, snr, sf);
+            message.setFrameCounter(fcnt);
+            message.setReceivedAt(receivedAt);
+            return message;
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package nl.bertriksikken.ttn.enddevice;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +33,9 @@ public final class EndDevice {
     @JsonProperty("mac_state")
     private final MACState macState = new MACState();
 
+    @JsonProperty("updated_at")
+    private String updatedAt;
+
     private EndDevice() {
         // jackson constructor
     }
@@ -64,6 +68,13 @@ public final class EndDevice {
     public MACState getMACState() {
         return macState;
     }
+
+    /**
+     * @return the time the device was last updated, null if unknown
+     */
+    public Instant getUpdatedAt() {
+        return (updatedAt != null) ? Instant.parse(updatedAt) : null;
+    }
     
     @Override
     public String toString() {
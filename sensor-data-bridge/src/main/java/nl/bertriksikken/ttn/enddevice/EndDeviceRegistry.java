@@ -2,12 +2,16 @@ package nl.bertriksikken.ttn.enddevice;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.bertriksikken.rest.HttpClientFactory;
+import nl.bertriksikken.rest.RestApiConfig;
 import nl.bertriksikken.ttn.TtnAppConfig;
 import okhttp3.OkHttpClient;
 import retrofit2.Response;
@@ -23,12 +27,14 @@ import retrofit2.converter.scalars.ScalarsConverterFactory;
 public final class EndDeviceRegistry {
 
     private static final Logger LOG = LoggerFactory.getLogger(EndDeviceRegistry.class);
+    private static final int DEFAULT_PAGE_SIZE = 100;
 
     private final IEndDeviceRegistryRestApi restApi;
     private final String applicationId;
     private final String authToken;
 
-    EndDeviceRegistry(IEndDeviceRegistryRestApi restApi, String applicationId, String apiKey) {
+    // public to allow testing of its users
+    public EndDeviceRegistry(IEndDeviceRegistryRestApi restApi, String applicationId, String apiKey) {
         this.restApi = restApi;
         this.applicationId = applicationId;
         this.authToken = "Bearer " + apiKey;
@@ -38,10 +44,11 @@ public final class EndDeviceRegistry {
         return new EndDevice(applicationId, deviceId);
     }
 
-    public static EndDeviceRegistry create(String url, Duration timeout, TtnAppConfig config) {
+    public static EndDeviceRegistry create(String url, Duration timeout, TtnAppConfig config,
+            HttpClientFactory httpClientFactory) {
         LOG.info("Creating new REST client for '{}' with timeout {}", url, timeout);
-        OkHttpClient client = new OkHttpClient().newBuilder().connectTimeout(timeout).readTimeout(timeout)
-                .writeTimeout(timeout).build();
+        // default circuit breaker settings, the identity server has no REST API configuration of its own
+        OkHttpClient client = httpClientFactory.create(new RestApiConfig(url, (int) timeout.toSeconds()));
         Retrofit retrofit = new Retrofit.Builder().baseUrl(url).addConverterFactory(ScalarsConverterFactory.create())
                 .addConverterFactory(JacksonConverterFactory.create()).client(client).build();
         IEndDeviceRegistryRestApi restApi = retrofit.create(IEndDeviceRegistryRestApi.class);
@@ -57,6 +64,27 @@ public final class EndDeviceRegistry {
         return response.body();
     }
 
+    /**
+     * Fetches one end device, telling a device that does not exist apart from a failed request.
+     *
+     * @param deviceId the device id
+     * @param fields   the fields to fetch
+     * @return the device, null if it does not exist
+     * @throws IOException if the request failed
+     */
+    public EndDevice findEndDevice(String deviceId, String... fields) throws IOException {
+        String fieldMask = String.join(",", fields);
+        Response<EndDevice> response = restApi.getEndDevice(authToken, applicationId, deviceId, fieldMask).execute();
+        if (response.code() == 404) {
+            return null;
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException(String.format(Locale.ROOT, "Request for device %s failed: %d - %s", deviceId,
+                    response.code(), response.errorBody().string()));
+        }
+        return response.body();
+    }
+
     public EndDevice getNsEndDevice(String deviceId, String... fields) throws IOException {
         String fieldMask = String.join(",", fields);
         Response<EndDevice> response = restApi.getNsEndDevice(authToken, applicationId, deviceId, fieldMask).execute();
@@ -67,14 +95,34 @@ public final class EndDeviceRegistry {
     }
 
     public List<EndDevice> listEndDevices(String... fields) throws IOException {
+        List<EndDevice> endDevices = new ArrayList<>();
+        listEndDevices(DEFAULT_PAGE_SIZE, endDevices::add, fields);
+        return endDevices;
+    }
+
+    /**
+     * Lists all end devices, one page at a time.
+     *
+     * @param pageSize the number of devices per page
+     * @param consumer receives each device, as soon as its page has been fetched
+     * @param fields   the fields to fetch
+     * @throws IOException if a page could not be fetched
+     */
+    public void listEndDevices(int pageSize, Consumer<EndDevice> consumer, String... fields) throws IOException {
         String fieldMask = String.join(",", fields);
-        Response<EndDevices> response = restApi.listEndDevices(authToken, applicationId, fieldMask).execute();
-        if (!response.isSuccessful()) {
-            LOG.warn("Request failed: {} - {}", response.message(), response.errorBody().string());
-            return Collections.emptyList();
+        for (int page = 1; ; page++) {
+            Response<EndDevices> response = restApi
+                    .listEndDevices(authToken, applicationId, fieldMask, pageSize, page).execute();
+            if (!response.isSuccessful()) {
+                throw new IOException(String.format(Locale.ROOT, "Request for page %d failed: %d - %s", page,
+                        response.code(), response.errorBody().string()));
+            }
+            List<EndDevice> endDevices = response.body().getEndDevices();
+            endDevices.forEach(consumer);
+            if (endDevices.size() < pageSize) {
+                return;
+            }
         }
-        EndDevices endDevices = response.body();
-        return endDevices.getEndDevices();
     }
 
     public EndDevice updateEndDevice(EndDevice endDevice, List<String> fields) throws IOException {
@@ -19,11 +19,13 @@ public interface IEndDeviceRegistryRestApi {
     public static final String FIELD_DESCRIPTION = "description";
     public static final String FIELD_ATTRIBUTES = "attributes";
     public static final String FIELD_VERSION_IDS = "version_ids";
+    public static final String FIELD_UPDATED_AT = "updated_at";
 
-    // end device registry
+    // end device registry, page numbers start at 1
     @GET("/api/v3/applications/{application_id}/devices")
     Call<EndDevices> listEndDevices(@Header("Authorization") String authToken,
-            @Path("application_id") String applicationId, @Query("field_mask") String fieldMask);
+            @Path("application_id") String applicationId, @Query("field_mask") String fieldMask,
+            @Query("limit") int limit, @Query("page") int page);
 
     @GET("/api/v3/applications/{application_id}/devices/{device_id}")
     Call<EndDevice> getEndDevice(@Header("Authorization") String authToken,
@@ -1,5 +1,8 @@
 package nl.bertriksikken.gls;
 
+import nl.bertriksikken.rest.HttpClientConfig;
+import nl.bertriksikken.rest.HttpClientFactory;
+
 import java.io.IOException;
 
 /**
@@ -9,7 +12,7 @@ public final class GeoLocationServiceTest {
 
     public static void main(String[] args) throws IOException {
         GeoLocationConfig config = new GeoLocationConfig();
-        GeoLocationService gls = GeoLocationService.create(config);
+        GeoLocationService gls = GeoLocationService.create(config, new HttpClientFactory(new HttpClientConfig()));
 
         GeoLocationRequest request = new GeoLocationRequest(false);
         request.add("9C:1C:12:F6:EB:C0", -45, 1);
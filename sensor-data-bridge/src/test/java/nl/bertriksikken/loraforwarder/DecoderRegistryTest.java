@@ -0,0 +1,54 @@
+package nl.bertriksikken.loraforwarder;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import nl.bertriksikken.pm.IPayloadDecoder;
+import nl.bertriksikken.pm.cayenne.TtnCayenneDecoder;
+import nl.bertriksikken.pm.sps30.Sps30Decoder;
+import nl.bertriksikken.pm.ttnulm.TtnUlmDecoder;
+import nl.bertriksikken.ttn.TtnAppConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class DecoderRegistryTest {
+
+    @Test
+    public void testDefaultDecoders() {
+        DecoderRegistry registry = DecoderRegistry.create();
+        DecoderRegistry.PortDecoders decoders = registry.resolve(createAppConfig("app", EPayloadEncoding.CAYENNE));
+
+        Assertions.assertInstanceOf(TtnCayenneDecoder.class, decoders.get(1));
+        Assertions.assertInstanceOf(TtnCayenneDecoder.class, decoders.get(255));
+        Assertions.assertInstanceOf(Sps30Decoder.class, decoders.get(30));
+        Assertions.assertNull(decoders.get(256));
+    }
+
+    @Test
+    public void testUnsupportedEncoding() {
+        DecoderRegistry registry = DecoderRegistry.create();
+        DecoderRegistry.PortDecoders decoders = registry.resolve(createAppConfig("app", EPayloadEncoding.APELDOORN));
+
+        Assertions.assertNull(decoders.get(1));
+        Assertions.assertInstanceOf(Sps30Decoder.class, decoders.get(30));
+    }
+
+    @Test
+    public void testApplicationPort() {
+        DecoderRegistry registry = DecoderRegistry.create();
+        IPayloadDecoder decoder = new TtnUlmDecoder();
+        registry.registerPort("app", 10, decoder);
+
+        Assertions.assertSame(decoder, registry.resolve(createAppConfig("app", EPayloadEncoding.CAYENNE)).get(10));
+        Assertions.assertNotSame(decoder, registry.resolve(createAppConfig("other", EPayloadEncoding.CAYENNE)).get(10));
+    }
+
+    @Test
+    public void testInvalidPort() {
+        DecoderRegistry registry = new DecoderRegistry();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.registerPort(256, new TtnUlmDecoder()));
+    }
+
+    private static TtnAppConfig createAppConfig(String name, EPayloadEncoding encoding) {
+        return new TtnAppConfig(name, "key", new TtnAppConfig.DecoderConfig(encoding, TextNode.valueOf("")));
+    }
+
+}
@@ -0,0 +1,244 @@
+package nl.bertriksikken.loraforwarder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.loraforwarder.util.FakeClock;
+import nl.bertriksikken.ttn.TtnConfig;
+import nl.bertriksikken.ttn.enddevice.EndDeviceRegistry;
+import nl.bertriksikken.ttn.enddevice.FakeEndDeviceRegistryApi;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the full and incremental synchronization of device attributes, and the on-demand lookup.
+ */
+public final class DeviceAttributeSyncTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String FULL_MASK = "ids,attributes,updated_at";
+    private static final String INCREMENTAL_MASK = "ids,updated_at";
+
+    private final FakeClock clock = new FakeClock();
+    private final FakeEndDeviceRegistryApi api = new FakeEndDeviceRegistryApi();
+    private final List<Map<String, AttributeMap>> notified = new ArrayList<>();
+    private final DeviceAttributeSync sync;
+
+    public DeviceAttributeSyncTest() throws JsonProcessingException {
+        TtnConfig config = MAPPER.readValue("{\"attribute_page_size\":2}", TtnConfig.class);
+        sync = new DeviceAttributeSync("app", new EndDeviceRegistry(api, "app", "key"), config,
+                Set.of("senscom-id"), notified::add, clock);
+    }
+
+    /**
+     * Verifies that incremental synchronizations fetch only the attributes of changed and new devices, and merge them
+     * into the attributes of the full one.
+     */
+    @Test
+    public void testIncrementalMerge() throws IOException {
+        api.putDevice("dev1", "senscom-id", "1", 10);
+        api.putDevice("dev2", "senscom-id", "2", 20);
+        api.putDevice("dev3", "senscom-id", "3", 30);
+        sync.sync();
+        Assertions.assertEquals(1, notified.size());
+        Assertions.assertEquals(Set.of("dev1", "dev2", "dev3"), latest().keySet());
+        Assertions.assertEquals(FULL_MASK, api.getListMask());
+
+        // one changed and one new device, the change is older than the most recent update seen before
+        api.putDevice("dev1", "senscom-id", "11", 15);
+        api.putDevice("dev4", "senscom-id", "4", 50);
+        api.getPages().clear();
+        clock.advance(Duration.ofMinutes(5));
+        sync.sync();
+        Assertions.assertEquals(INCREMENTAL_MASK, api.getListMask());
+        Assertions.assertEquals(List.of(1, 2, 3), api.getPages());
+        Assertions.assertEquals(2, api.getLookups());
+        Assertions.assertEquals(2, notified.size());
+        Assertions.assertEquals(Set.of("dev1", "dev2", "dev3", "dev4"), latest().keySet());
+        Assertions.assertEquals("11", latest().get("dev1").get("senscom-id"));
+
+        // nothing changed, nothing fetched and no notification
+        clock.advance(Duration.ofMinutes(5));
+        sync.sync();
+        Assertions.assertEquals(2, api.getLookups());
+        Assertions.assertEquals(2, notified.size());
+    }
+
+    /**
+     * Verifies that a removed device only disappears with the next full synchronization.
+     */
+    @Test
+    public void testFullSyncInterval() throws IOException {
+        api.putDevice("dev1", "senscom-id", "1", 10);
+        api.putDevice("dev2", "senscom-id", "2", 20);
+        sync.sync();
+
+        api.removeDevice("dev2");
+        clock.advance(Duration.ofMinutes(59));
+        sync.sync();
+        Assertions.assertEquals(INCREMENTAL_MASK, api.getListMask());
+        Assertions.assertEquals(Set.of("dev1", "dev2"), latest().keySet());
+
+        clock.advance(Duration.ofMinutes(1));
+        sync.sync();
+        Assertions.assertEquals(FULL_MASK, api.getListMask());
+        Assertions.assertEquals(Set.of("dev1"), latest().keySet());
+    }
+
+    /**
+     * Verifies that a failed request keeps the previous attributes, and that the synchronization is retried.
+     */
+    @Test
+    public void testFailedPage() throws IOException {
+        api.putDevice("dev1", "senscom-id", "1", 10);
+        api.putDevice("dev2", "senscom-id", "2", 20);
+        api.putDevice("dev3", "senscom-id", "3", 30);
+        sync.sync();
+
+        // the second page of the next full synchronization fails
+        api.putDevice("dev1", "senscom-id", "11", 40);
+        api.setFailPage(2);
+        clock.advance(Duration.ofMinutes(60));
+        Assertions.assertThrows(IOException.class, sync::sync);
+        Assertions.assertEquals(1, notified.size());
+
+        // the next attempt is a full synchronization again
+        api.setFailPage(-1);
+        clock.advance(Duration.ofMinutes(5));
+        sync.sync();
+        Assertions.assertEquals(FULL_MASK, api.getListMask());
+        Assertions.assertEquals(2, notified.size());
+        Assertions.assertEquals("11", latest().get("dev1").get("senscom-id"));
+
+        // a failed incremental synchronization also keeps the attributes
+        api.setFailPage(1);
+        clock.advance(Duration.ofMinutes(5));
+        Assertions.assertThrows(IOException.class, sync::sync);
+        Assertions.assertEquals(2, notified.size());
+
+        // a changed device that could not be fetched is fetched again by the next synchronization
+        api.setFailPage(-1);
+        api.setFailLookups(true);
+        api.putDevice("dev2", "senscom-id", "22", 50);
+        clock.advance(Duration.ofMinutes(5));
+        Assertions.assertThrows(IOException.class, sync::sync);
+        Assertions.assertEquals(2, notified.size());
+        api.setFailLookups(false);
+        clock.advance(Duration.ofMinutes(5));
+        sync.sync();
+        Assertions.assertEquals(3, notified.size());
+        Assertions.assertEquals("22", latest().get("dev2").get("senscom-id"));
+    }
+
+    /**
+     * Verifies that no device is looked up before the first full synchronization succeeded.
+     */
+    @Test
+    public void testNoLookupBeforeFullSync() throws IOException {
+        Assertions.assertFalse(sync.needsLookup("dev1"));
+
+        api.setFailPage(1);
+        Assertions.assertThrows(IOException.class, sync::sync);
+        Assertions.assertFalse(sync.needsLookup("dev1"));
+
+        api.setFailPage(-1);
+        api.putDevice("dev2", "senscom-id", "2", 20);
+        sync.sync();
+        Assertions.assertTrue(sync.needsLookup("dev1"));
+        // known device
+        Assertions.assertFalse(sync.needsLookup("dev2"));
+    }
+
+    /**
+     * Verifies that concurrent lookups of the same device share one registry request.
+     */
+    @Test
+    public void testLookupCoalescing() throws Exception {
+        sync.sync();
+        api.putDevice("dev1", "senscom-id", "1", 10);
+        CountDownLatch latch = new CountDownLatch(1);
+        api.setLookupLatch(latch);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(sync.lookup("dev1", executor));
+            }
+            latch.countDown();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, api.getLookups());
+        Assertions.assertEquals("1", latest().get("dev1").get("senscom-id"));
+        Assertions.assertFalse(sync.needsLookup("dev1"));
+
+        // a later lookup is a new request
+        sync.lookup("dev1", Runnable::run).join();
+        Assertions.assertEquals(2, api.getLookups());
+    }
+
+    /**
+     * Verifies that a device without relevant attributes is not looked up again until its negative entry expires.
+     */
+    @Test
+    public void testNegativeCache() throws IOException {
+        sync.sync();
+        api.putDevice("dev1", "other", "1", 10);
+        sync.lookup("dev1", Runnable::run).join();
+        Assertions.assertEquals(1, api.getLookups());
+        Assertions.assertEquals(1, notified.size());
+
+        clock.advance(Duration.ofMinutes(10).minusSeconds(1));
+        Assertions.assertFalse(sync.needsLookup("dev1"));
+        clock.advance(Duration.ofSeconds(1));
+        Assertions.assertTrue(sync.needsLookup("dev1"));
+
+        // an unknown device is also cached
+        sync.lookup("dev2", Runnable::run).join();
+        Assertions.assertFalse(sync.needsLookup("dev2"));
+
+        // a synchronization that finds the device removes its entry
+        api.putDevice("dev2", "senscom-id", "2", 20);
+        clock.advance(Duration.ofMinutes(60));
+        sync.sync();
+        Assertions.assertFalse(sync.needsLookup("dev2"));
+        Assertions.assertEquals("2", latest().get("dev2").get("senscom-id"));
+    }
+
+    /**
+     * Verifies that a failed lookup does not put the device in the negative cache.
+     */
+    @Test
+    public void testFailedLookup() throws IOException {
+        sync.sync();
+        api.putDevice("dev1", "senscom-id", "1", 10);
+        api.setFailLookups(true);
+        sync.lookup("dev1", Runnable::run).join();
+        Assertions.assertTrue(sync.needsLookup("dev1"));
+        Assertions.assertEquals(1, notified.size());
+
+        // the next lookup finds the attributes
+        api.setFailLookups(false);
+        sync.lookup("dev1", Runnable::run).join();
+        Assertions.assertFalse(sync.needsLookup("dev1"));
+        Assertions.assertEquals("1", latest().get("dev1").get("senscom-id"));
+    }
+
+    private Map<String, AttributeMap> latest() {
+        return notified.get(notified.size() - 1);
+    }
+
+}
@@ -0,0 +1,42 @@
+package nl.bertriksikken.loraforwarder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public final class DeviceIdMappingTest {
+
+    @Test
+    public void testUpdate() {
+        DeviceIdMapping mapping = new DeviceIdMapping("senscom-id");
+        Map<String, String> ids = mapping.update("app", Map.of(
+                "dev1", new AttributeMap(Map.of("senscom-id", " 1234 ")),
+                "dev2", new AttributeMap(Map.of("other", "5678")),
+                "dev3", new AttributeMap(Map.of("senscom-id", ""))));
+
+        Assertions.assertEquals(Map.of("dev1", "1234"), ids);
+        Assertions.assertEquals("1234", mapping.get(new AppDeviceId("app", "dev1")));
+        Assertions.assertEquals("", mapping.get(new AppDeviceId("app", "dev2")));
+        Assertions.assertEquals("", mapping.get(new AppDeviceId("app", "dev3")));
+        Assertions.assertEquals("", mapping.get(new AppDeviceId("other", "dev1")));
+    }
+
+    /**
+     * Verifies that updating one application leaves the other applications untouched.
+     */
+    @Test
+    public void testPerApplication() {
+        DeviceIdMapping mapping = new DeviceIdMapping("opensense-id");
+        mapping.update("app1", Map.of("dev", new AttributeMap(Map.of("opensense-id", "box1"))));
+        mapping.update("app2", Map.of("dev", new AttributeMap(Map.of("opensense-id", "box2"))));
+        Assertions.assertEquals("box1", mapping.get(new AppDeviceId("app1", "dev")));
+        Assertions.assertEquals("box2", mapping.get(new AppDeviceId("app2", "dev")));
+
+        // a device removed from app2 disappears, app1 is not affected
+        mapping.update("app2", Map.of());
+        Assertions.assertEquals("box1", mapping.get(new AppDeviceId("app1", "dev")));
+        Assertions.assertEquals("", mapping.get(new AppDeviceId("app2", "dev")));
+    }
+
+}
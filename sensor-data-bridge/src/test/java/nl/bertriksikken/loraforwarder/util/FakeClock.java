@@ -0,0 +1,35 @@
+package nl.bertriksikken.loraforwarder.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock for unit tests, that only moves when advanced explicitly.
+ */
+public final class FakeClock extends Clock {
+
+    private volatile Instant instant = Instant.parse("2024-01-01T00:00:00Z");
+
+    public void advance(Duration duration) {
+        instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+
+}
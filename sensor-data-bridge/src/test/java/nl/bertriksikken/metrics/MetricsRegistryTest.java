@@ -0,0 +1,92 @@
+package nl.bertriksikken.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Unit tests for the metrics registry and its Prometheus text output.
+ */
+public final class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void testCounter() {
+        Counter counter = registry.counter("uplinks_total", "Uplinks.", "app", "a");
+        counter.increment();
+        counter.add(2);
+        // same name and labels return the same counter
+        registry.counter("uplinks_total", "Uplinks.", "app", "a").increment();
+        registry.counter("uplinks_total", "Uplinks.", "app", "b").increment();
+
+        Assertions.assertEquals(4, counter.get());
+        Assertions.assertEquals(String.join("\n", "# HELP uplinks_total Uplinks.", "# TYPE uplinks_total counter",
+                "uplinks_total{app=\"a\"} 4", "uplinks_total{app=\"b\"} 1", ""), registry.format());
+    }
+
+    @Test
+    public void testCounterSupplier() {
+        registry.counter("submitted_total", "Submitted.", () -> 7L);
+        Assertions.assertEquals(String.join("\n", "# HELP submitted_total Submitted.", "# TYPE submitted_total counter",
+                "submitted_total 7", ""), registry.format());
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = registry.histogram("latency_seconds", "Latency.", new double[] { 0.1, 1 });
+        histogram.observe(0.05);
+        histogram.observe(0.1);
+        histogram.observe(0.5);
+        histogram.observe(2);
+
+        Assertions.assertEquals(4, histogram.getCount());
+        List<String> lines = registry.format().lines().toList();
+        Assertions.assertEquals("# TYPE latency_seconds histogram", lines.get(1));
+        // buckets are cumulative, a value equal to a bound belongs to that bucket
+        Assertions.assertEquals("latency_seconds_bucket{le=\"0.1\"} 2", lines.get(2));
+        Assertions.assertEquals("latency_seconds_bucket{le=\"1\"} 3", lines.get(3));
+        Assertions.assertEquals("latency_seconds_bucket{le=\"+Inf\"} 4", lines.get(4));
+        Assertions.assertEquals("latency_seconds_sum 2.65", lines.get(5));
+        Assertions.assertEquals("latency_seconds_count 4", lines.get(6));
+    }
+
+    @Test
+    public void testGauge() {
+        registry.gauge("queue_depth", "Queue depth.", () -> 3, "queue", "decode");
+        Assertions.assertTrue(registry.format().contains("queue_depth{queue=\"decode\"} 3\n"));
+    }
+
+    @Test
+    public void testUploadMetrics() {
+        UploadMetrics metrics = new UploadMetrics(registry, "destination", "senscom", "pin", "1");
+        metrics.record(System.nanoTime(), 201);
+        metrics.record(System.nanoTime(), 503);
+        metrics.record(System.nanoTime(), 0);
+
+        String text = registry.format();
+        Assertions.assertTrue(
+                text.contains("sdb_upload_responses_total{destination=\"senscom\",pin=\"1\",status=\"2xx\"} 1\n"));
+        Assertions.assertTrue(
+                text.contains("sdb_upload_responses_total{destination=\"senscom\",pin=\"1\",status=\"5xx\"} 1\n"));
+        Assertions.assertTrue(
+                text.contains("sdb_upload_responses_total{destination=\"senscom\",pin=\"1\",status=\"error\"} 1\n"));
+        Assertions.assertTrue(
+                text.contains("sdb_upload_duration_seconds_count{destination=\"senscom\",pin=\"1\"} 3\n"));
+    }
+
+    @Test
+    public void testLabelEscaping() {
+        Assertions.assertEquals("app=\"a\\\"b\\\\c\\n\"", MetricsRegistry.formatLabels("app", "a\"b\\c\n"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MetricsRegistry.formatLabels("app"));
+    }
+
+    @Test
+    public void testTypeConflict() {
+        registry.counter("metric", "Metric.");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> registry.histogram("metric", "Metric.", Histogram.LATENCY_BUCKETS));
+    }
+
+}
@@ -0,0 +1,69 @@
+package nl.bertriksikken.opensense;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.opensense.dto.SenseBox;
+import nl.bertriksikken.opensense.dto.SensorMeasurement;
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.SensorData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class SenseBoxSensorsTest {
+
+    private static final String BOX = """
+            {"name":"test","sensors":[
+             {"_id":"id-pm10","title":"PM10","unit":"ug/m3","sensorType":"SDS 011"},
+             {"_id":"id-pm25","title":"PM2.5","unit":"ug/m3","sensorType":"SDS 011"},
+             {"_id":"id-temp","title":"Temperatur","unit":"degC","sensorType":"BME280"},
+             {"_id":"id-pres","title":"Luftdruck","unit":"hPa","sensorType":"BME280"},
+             {"_id":"id-other","title":"Beleuchtungsstaerke","unit":"lx","sensorType":"TSL45315"}
+            ]}
+            """;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testMeasurements() throws JsonProcessingException {
+        SenseBoxSensors sensors = SenseBoxSensors.fromBox(mapper.readValue(BOX, SenseBox.class));
+        Assertions.assertFalse(sensors.isEmpty());
+
+        SensorData data = new SensorData();
+        data.putValue(ESensorItem.PM10, 12.3);
+        data.putValue(ESensorItem.PRESSURE, 101325.0);
+        data.putValue(ESensorItem.HUMIDITY, 45.0);
+        List<SensorMeasurement> measurements = new ArrayList<>();
+        sensors.addMeasurements(data, "2024-01-02T03:04:05.678Z", measurements);
+
+        // humidity has no sensor in this box
+        Assertions.assertEquals(2, measurements.size());
+        SensorMeasurement pm10 = measurements.get(0);
+        Assertions.assertEquals("id-pm10", pm10.getSensorId());
+        Assertions.assertEquals("12.30", pm10.getValue());
+        Assertions.assertEquals("2024-01-02T03:04:05.678Z", pm10.getCreatedAt());
+        SensorMeasurement pressure = measurements.get(1);
+        Assertions.assertEquals("id-pres", pressure.getSensorId());
+        Assertions.assertEquals("1013.25", pressure.getValue());
+    }
+
+    @Test
+    public void testNoSensors() throws JsonProcessingException {
+        SenseBoxSensors sensors = SenseBoxSensors.fromBox(mapper.readValue("{\"name\":\"empty\"}", SenseBox.class));
+        Assertions.assertTrue(sensors.isEmpty());
+    }
+
+    @Test
+    public void testSerialize() throws JsonProcessingException {
+        SensorMeasurement measurement = new SensorMeasurement("id", "1.00", "2024-01-02T03:04:05Z");
+        String json = mapper.writeValueAsString(List.of(measurement));
+        SensorMeasurement[] parsed = mapper.readValue(json, SensorMeasurement[].class);
+        Assertions.assertEquals(1, parsed.length);
+        Assertions.assertEquals("id", parsed[0].getSensorId());
+        Assertions.assertEquals("1.00", parsed[0].getValue());
+        Assertions.assertEquals("2024-01-02T03:04:05Z", parsed[0].getCreatedAt());
+    }
+
+}
@@ -44,4 +44,17 @@ public final class SensorDataTest {
         Assertions.assertEquals("{PM2_5=2.5ug/m3,PM10=10.0ug/m3,HUMIDITY=12.3%}", sensorData.toString());
     }
 
+    @Test
+    public void testOverwrite() {
+        SensorData sensorData = new SensorData();
+        Assertions.assertTrue(Double.isNaN(sensorData.getDouble(ESensorItem.PM10)));
+
+        // overwriting a value keeps the original order
+        sensorData.putValue(ESensorItem.PM10, 1.0);
+        sensorData.putValue(ESensorItem.PM2_5, 2.0);
+        sensorData.putValue(ESensorItem.PM10, 3.0);
+        Assertions.assertEquals(3.0, sensorData.getDouble(ESensorItem.PM10), 0.01);
+        Assertions.assertEquals("{PM10=3.0ug/m3,PM2_5=2.0ug/m3}", sensorData.toString());
+    }
+
 }
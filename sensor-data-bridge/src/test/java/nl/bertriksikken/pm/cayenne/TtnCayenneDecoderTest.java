@@ -0,0 +1,100 @@
+package nl.bertriksikken.pm.cayenne;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.PayloadParseException;
+import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+import nl.sikken.bertrik.cayenne.ECayennePayloadFormat;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class TtnCayenneDecoderTest {
+
+    private final TtnCayenneDecoder decoder = new TtnCayenneDecoder();
+
+    @Test
+    public void testDecode() throws PayloadParseException {
+        byte[] raw = new byte[]{0x01, 0x02, 0x00, 0x64, 0x02, 0x02, 0x00, 0x19, 0x03, 0x67, (byte) 0xFF, (byte) 0xF0,
+                0x04, 0x68, 0x77, 0x05, 115, 0x27, (byte) 0x88, 0x06, (byte) 0x88, 0x06, 0x076, 0x5f, (byte) 0xf2,
+                (byte) 0x96, 0x0a, 0x00, 0x03, (byte) 0xe8};
+        SensorData data = new SensorData();
+        decoder.decode(new TtnUplinkMessage("app", "device", "eui", raw, null, 1), data);
+
+        Assertions.assertEquals(1.0, data.getDouble(ESensorItem.PM10), 0.01);
+        Assertions.assertEquals(0.25, data.getDouble(ESensorItem.PM2_5), 0.01);
+        Assertions.assertFalse(data.has(ESensorItem.PM1_0));
+        Assertions.assertEquals(-1.6, data.getDouble(ESensorItem.TEMPERATURE), 0.01);
+        Assertions.assertEquals(59.5, data.getDouble(ESensorItem.HUMIDITY), 0.01);
+        Assertions.assertEquals(101200.0, data.getDouble(ESensorItem.PRESSURE), 10);
+        Assertions.assertEquals(42.3519, data.getDouble(ESensorItem.GPS_LAT), 0.0001);
+        Assertions.assertEquals(-87.9094, data.getDouble(ESensorItem.GPS_LON), 0.0001);
+        Assertions.assertEquals(10.0, data.getDouble(ESensorItem.GPS_ALT), 0.01);
+    }
+
+    /**
+     * Verifies that only the first item of a kind is used.
+     */
+    @Test
+    public void testFirstItemWins() throws PayloadParseException {
+        byte[] raw = new byte[]{0x01, 0x02, 0x00, 0x64, 0x01, 0x02, 0x00, 0x19};
+        SensorData data = new SensorData();
+        decoder.decode(new TtnUplinkMessage("app", "device", "eui", raw, null, 1), data);
+
+        Assertions.assertEquals(1.0, data.getDouble(ESensorItem.PM10), 0.01);
+    }
+
+    @Test
+    public void testInvalid() {
+        byte[] raw = new byte[]{0x01, 0x02, 0x00};
+        SensorData data = new SensorData();
+        Assertions.assertThrows(PayloadParseException.class,
+                () -> decoder.decode(new TtnUplinkMessage("app", "device", "eui", raw, null, 1), data));
+    }
+
+    /**
+     * Verifies that every port carries the dynamic payload by default, so existing nodes keep working.
+     */
+    @Test
+    public void testDynamicOnAllPorts() throws PayloadParseException {
+        for (int port : new int[]{1, 2, 3, 10}) {
+            Assertions.assertEquals(ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, decoder.getFormat(port));
+        }
+        Assertions.assertEquals(ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD,
+                TtnCayenneDecoder.create(TextNode.valueOf("")).getFormat(2));
+
+        byte[] raw = new byte[]{0x01, 0x02, 0x00, 0x64};
+        SensorData data = new SensorData();
+        decoder.decode(new TtnUplinkMessage("app", "device", "eui", raw, null, 2), data);
+        Assertions.assertEquals(1.0, data.getDouble(ESensorItem.PM10), 0.01);
+    }
+
+    /**
+     * Verifies that the payload format is selected by port, when enabled in the decoder properties.
+     */
+    @Test
+    public void testFormatByPort() throws PayloadParseException {
+        ObjectNode properties = JsonNodeFactory.instance.objectNode().put("port_formats", true);
+        TtnCayenneDecoder portDecoder = TtnCayenneDecoder.create(properties);
+        Assertions.assertEquals(ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, portDecoder.getFormat(1));
+        Assertions.assertEquals(ECayennePayloadFormat.DYNAMIC_SENSOR_PAYLOAD, portDecoder.getFormat(10));
+
+        // packed: PM1.0 on channel 0, PM10 on channel 1
+        byte[] packed = new byte[]{0x02, 0x00, 0x64, 0x02, 0x00, 0x19};
+        SensorData data = new SensorData();
+        portDecoder.decode(new TtnUplinkMessage("app", "device", "eui", packed, null, 2), data);
+        Assertions.assertEquals(1.0, data.getDouble(ESensorItem.PM1_0), 0.01);
+        Assertions.assertEquals(0.25, data.getDouble(ESensorItem.PM10), 0.01);
+
+        // full scale GPS
+        byte[] gps = new byte[]{31, 17, 104, -121, -3, 40, -38, 79, 0, 4, -46};
+        data = new SensorData();
+        portDecoder.decode(new TtnUplinkMessage("app", "device", "eui", gps, null, 3), data);
+        Assertions.assertEquals(52.1234567, data.getDouble(ESensorItem.GPS_LAT), 1E-9);
+        Assertions.assertEquals(-4.7654321, data.getDouble(ESensorItem.GPS_LON), 1E-9);
+        Assertions.assertEquals(12.34, data.getDouble(ESensorItem.GPS_ALT), 1E-9);
+    }
+
+}
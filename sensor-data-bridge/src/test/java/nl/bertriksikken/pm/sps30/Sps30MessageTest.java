@@ -4,6 +4,8 @@ import nl.bertriksikken.pm.PayloadParseException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+
 public final class Sps30MessageTest {
 
     @Test
@@ -17,4 +19,15 @@ public final class Sps30MessageTest {
         Sps30Message message = Sps30Message.parse(new byte[20]);
         Assertions.assertNotNull(message);
     }
+
+    @Test
+    public void testBuffer() throws PayloadParseException {
+        byte[] raw = new byte[24];
+        // PM1.0 of 12.3 ug/m3, after a 4 byte header
+        raw[4] = 0;
+        raw[5] = 123;
+        Sps30Message message = Sps30Message.parse(ByteBuffer.wrap(raw, 4, 20).slice());
+        Assertions.assertEquals(12.3, message.getPm1_0(), 0.01);
+    }
+
 }
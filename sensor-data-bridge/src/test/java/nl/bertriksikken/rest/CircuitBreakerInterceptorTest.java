@@ -0,0 +1,164 @@
+package nl.bertriksikken.rest;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the circuit breaker interceptor, against a fake interceptor chain.
+ */
+public final class CircuitBreakerInterceptorTest {
+
+    private final RestApiConfig config = new RestApiConfig("http://host", 30);
+    private final CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(config,
+            Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC));
+
+    /**
+     * Verifies that server errors open the circuit, after which requests fail fast without being sent.
+     */
+    @Test
+    public void testFailFast() throws IOException {
+        FakeChain chain = new FakeChain("http://host/path", 503);
+        for (int i = 0; i < config.getFailureThreshold(); i++) {
+            Assertions.assertEquals(503, interceptor.intercept(chain).code());
+        }
+        Assertions.assertThrows(CircuitBreakerInterceptor.CircuitOpenException.class,
+                () -> interceptor.intercept(chain));
+        Assertions.assertEquals(config.getFailureThreshold(), chain.proceeded);
+
+        // other hosts have their own circuit
+        Assertions.assertEquals(200, interceptor.intercept(new FakeChain("http://other/path", 200)).code());
+    }
+
+    @Test
+    public void testTooManyRequests() throws IOException {
+        FakeChain chain = new FakeChain("http://host/path", 429);
+        for (int i = 0; i < config.getFailureThreshold(); i++) {
+            interceptor.intercept(chain);
+        }
+        Assertions.assertThrows(CircuitBreakerInterceptor.CircuitOpenException.class,
+                () -> interceptor.intercept(chain));
+    }
+
+    /**
+     * Verifies that client errors do not count as failures of the host.
+     */
+    @Test
+    public void testClientError() throws IOException {
+        FakeChain chain = new FakeChain("http://host/path", 404);
+        for (int i = 0; i < (3 * config.getFailureThreshold()); i++) {
+            Assertions.assertEquals(404, interceptor.intercept(chain).code());
+        }
+        Assertions.assertEquals(3 * config.getFailureThreshold(), chain.proceeded);
+    }
+
+    @Test
+    public void testException() throws IOException {
+        FakeChain chain = new FakeChain("http://host/path", 200);
+        chain.exception = new SocketTimeoutException("timeout");
+        for (int i = 0; i < config.getFailureThreshold(); i++) {
+            Assertions.assertThrows(SocketTimeoutException.class, () -> interceptor.intercept(chain));
+        }
+        Assertions.assertThrows(CircuitBreakerInterceptor.CircuitOpenException.class,
+                () -> interceptor.intercept(chain));
+    }
+
+    /**
+     * Verifies that the timeout of the breaker is applied to each call.
+     */
+    @Test
+    public void testTimeouts() throws IOException {
+        FakeChain chain = new FakeChain("http://host/path", 200);
+        interceptor.intercept(chain);
+        Assertions.assertEquals(30_000, chain.connectTimeout);
+        Assertions.assertEquals(30_000, chain.readTimeout);
+        Assertions.assertEquals(30_000, chain.writeTimeout);
+    }
+
+    // chain that answers every request with the same status code, records the timeouts set on it
+    private static final class FakeChain implements Interceptor.Chain {
+        private final Request request;
+        private final int code;
+        private IOException exception;
+        private int proceeded;
+        private int connectTimeout;
+        private int readTimeout;
+        private int writeTimeout;
+
+        FakeChain(String url, int code) {
+            this.request = new Request.Builder().url(url).build();
+            this.code = code;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            proceeded++;
+            if (exception != null) {
+                throw exception;
+            }
+            return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code).message("message")
+                    .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+
+        @Override
+        public Call call() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return connectTimeout;
+        }
+
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+            connectTimeout = (int) unit.toMillis(timeout);
+            return this;
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return readTimeout;
+        }
+
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+            readTimeout = (int) unit.toMillis(timeout);
+            return this;
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return writeTimeout;
+        }
+
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+            writeTimeout = (int) unit.toMillis(timeout);
+            return this;
+        }
+    }
+
+}
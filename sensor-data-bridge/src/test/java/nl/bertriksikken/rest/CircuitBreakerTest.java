@@ -0,0 +1,136 @@
+package nl.bertriksikken.rest;
+
+import nl.bertriksikken.loraforwarder.util.FakeClock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public final class CircuitBreakerTest {
+
+    private final FakeClock clock = new FakeClock();
+    private final CircuitBreaker breaker = new CircuitBreaker("host", 3, Duration.ofSeconds(30),
+            Duration.ofSeconds(2), Duration.ofSeconds(30), clock);
+
+    /**
+     * Verifies the transitions from closed to open, half-open and back.
+     */
+    @Test
+    public void testOpenAndClose() {
+        // a success resets the failure count
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(100);
+        breaker.onFailure();
+        breaker.onFailure();
+        Assertions.assertTrue(breaker.tryAcquire());
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // third consecutive failure opens the circuit
+        breaker.onFailure();
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquire());
+
+        // one trial request after the open duration
+        clock.advance(Duration.ofSeconds(30));
+        Assertions.assertTrue(breaker.tryAcquire());
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquire());
+
+        // failed trial opens the circuit again
+        breaker.onFailure();
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        clock.advance(Duration.ofSeconds(29));
+        Assertions.assertFalse(breaker.tryAcquire());
+
+        // successful trial closes it
+        clock.advance(Duration.ofSeconds(1));
+        Assertions.assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(100);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testDisabled() {
+        CircuitBreaker disabled = new CircuitBreaker("host", 0, Duration.ofSeconds(30), Duration.ofSeconds(2),
+                Duration.ofSeconds(30), clock);
+        for (int i = 0; i < 100; i++) {
+            disabled.onFailure();
+        }
+        Assertions.assertTrue(disabled.tryAcquire());
+    }
+
+    /**
+     * Verifies that the timeout follows the observed latency, within bounds.
+     */
+    @Test
+    public void testAdaptiveTimeout() {
+        // configured timeout until there are enough samples
+        Assertions.assertEquals(30_000, breaker.getTimeoutMillis());
+        for (int i = 0; i < 16; i++) {
+            breaker.onSuccess(1000);
+        }
+        Assertions.assertEquals(30_000, breaker.getTimeoutMillis());
+
+        // a multiple of the 99th percentile
+        for (int i = 0; i < 128; i++) {
+            breaker.onSuccess(1000);
+        }
+        Assertions.assertEquals(3_000, breaker.getTimeoutMillis());
+
+        // no lower than the minimum
+        for (int i = 0; i < 128; i++) {
+            breaker.onSuccess(10);
+        }
+        Assertions.assertEquals(2_000, breaker.getTimeoutMillis());
+
+        // no higher than the configured timeout
+        for (int i = 0; i < 128; i++) {
+            breaker.onSuccess(20_000);
+        }
+        Assertions.assertEquals(30_000, breaker.getTimeoutMillis());
+    }
+
+    /**
+     * Verifies that the timeout grows back after time-outs, when the host became slower than the learned timeout.
+     */
+    @Test
+    public void testTimeoutGrowsBack() {
+        for (int i = 0; i < 128; i++) {
+            breaker.onSuccess(10);
+        }
+        Assertions.assertEquals(2_000, breaker.getTimeoutMillis());
+
+        // each time-out doubles the timeout
+        breaker.onTimeout();
+        Assertions.assertEquals(4_000, breaker.getTimeoutMillis());
+        breaker.onTimeout();
+        Assertions.assertEquals(8_000, breaker.getTimeoutMillis());
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // the trial request after opening gets the full timeout
+        breaker.onTimeout();
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertEquals(30_000, breaker.getTimeoutMillis());
+        clock.advance(Duration.ofSeconds(30));
+        Assertions.assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(5_000);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertEquals(30_000, breaker.getTimeoutMillis());
+    }
+
+    @Test
+    public void testTimeoutLimit() {
+        CircuitBreaker disabled = new CircuitBreaker("host", 0, Duration.ofSeconds(30), Duration.ofSeconds(2),
+                Duration.ofSeconds(30), clock);
+        for (int i = 0; i < 128; i++) {
+            disabled.onSuccess(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            disabled.onTimeout();
+        }
+        Assertions.assertEquals(30_000, disabled.getTimeoutMillis());
+    }
+
+}
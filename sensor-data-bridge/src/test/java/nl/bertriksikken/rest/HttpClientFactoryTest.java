@@ -0,0 +1,25 @@
+package nl.bertriksikken.rest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class HttpClientFactoryTest {
+
+    /**
+     * Verifies that clients for the same REST API share their circuit breakers.
+     */
+    @Test
+    public void testSharedInterceptor() {
+        HttpClientFactory factory = new HttpClientFactory(new HttpClientConfig());
+        try {
+            CircuitBreakerInterceptor first = factory.getInterceptor(new RestApiConfig("https://host", 30));
+            CircuitBreakerInterceptor second = factory.getInterceptor(new RestApiConfig("https://host", 30));
+            CircuitBreakerInterceptor other = factory.getInterceptor(new RestApiConfig("https://other", 30));
+            Assertions.assertSame(first, second);
+            Assertions.assertNotSame(first, other);
+        } finally {
+            factory.stop();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package nl.bertriksikken.senscom;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+public final class DecimalFormatterTest {
+
+    private static final int MAX_DIGITS = 12;
+    private static final int COUNT = 100_000;
+
+    @Test
+    public void testExamples() {
+        Assertions.assertEquals("17.4", DecimalFormatter.format(0.1 * 174, 1));
+        Assertions.assertEquals("1.01", DecimalFormatter.format(1.005, 2));
+        Assertions.assertEquals("0.3", DecimalFormatter.format(0.25, 1));
+        Assertions.assertEquals("-0.3", DecimalFormatter.format(-0.25, 1));
+        Assertions.assertEquals("0.0", DecimalFormatter.format(-0.01, 1));
+        Assertions.assertEquals("0.0", DecimalFormatter.format(-0.0, 1));
+        Assertions.assertEquals("52.02100", DecimalFormatter.format(52.021, 5));
+        Assertions.assertEquals("3", DecimalFormatter.format(2.5, 0));
+        Assertions.assertEquals("1013.0", DecimalFormatter.format(1013, 1));
+    }
+
+    @Test
+    public void testInvalid() {
+        Assertions.assertThrows(NumberFormatException.class, () -> DecimalFormatter.format(Double.NaN, 1));
+        Assertions.assertThrows(NumberFormatException.class,
+                () -> DecimalFormatter.format(Double.POSITIVE_INFINITY, 1));
+    }
+
+    /**
+     * Verifies that random values of all magnitudes are formatted like BigDecimal.
+     */
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(0);
+        for (int i = 0; i < COUNT; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(24) - 12);
+            int digits = random.nextInt(MAX_DIGITS + 1);
+            verify(value, digits);
+        }
+    }
+
+    /**
+     * Verifies that values at and right next to a rounding tie are formatted like BigDecimal.
+     */
+    @Test
+    public void testTies() {
+        Random random = new Random(0);
+        for (int i = 0; i < COUNT; i++) {
+            int digits = random.nextInt(MAX_DIGITS + 1);
+            long scaled = random.nextInt(2_000_000) - 1_000_000;
+            double tie = (scaled + 0.5) / Math.pow(10, digits);
+            verify(tie, digits);
+            verify(Math.nextUp(tie), digits);
+            verify(Math.nextDown(tie), digits);
+        }
+    }
+
+    /**
+     * Verifies that values with few decimals, like sensor values, are formatted like BigDecimal.
+     */
+    @Test
+    public void testShortValues() {
+        for (int digits = 0; digits <= MAX_DIGITS; digits++) {
+            for (int i = -20_000; i <= 20_000; i++) {
+                verify(i / 1000.0, digits);
+                verify(i * 0.001, digits);
+            }
+        }
+    }
+
+    @Test
+    public void testLargeValues() {
+        for (int digits = 0; digits <= MAX_DIGITS; digits++) {
+            verify(999_999_999.96, digits);
+            verify(-1E15, digits);
+            verify(Double.MAX_VALUE, digits);
+            verify(Double.MIN_VALUE, digits);
+        }
+    }
+
+    @Test
+    public void testAppend() {
+        StringBuilder sb = new StringBuilder("lat=");
+        DecimalFormatter.append(sb, 52.0209, 3);
+        Assertions.assertEquals("lat=52.021", sb.toString());
+    }
+
+    private static void verify(double value, int digits) {
+        String expected = BigDecimal.valueOf(value).setScale(digits, RoundingMode.HALF_UP).toString();
+        Assertions.assertEquals(expected, DecimalFormatter.format(value, digits),
+                "value " + value + ", digits " + digits);
+    }
+
+}
@@ -2,8 +2,13 @@ package nl.bertriksikken.senscom;
 
 import nl.bertriksikken.loraforwarder.AppDeviceId;
 import nl.bertriksikken.loraforwarder.AttributeMap;
+import nl.bertriksikken.metrics.MetricsRegistry;
 import nl.bertriksikken.pm.ESensorItem;
 import nl.bertriksikken.pm.SensorData;
+import nl.bertriksikken.rest.HttpClientConfig;
+import nl.bertriksikken.rest.HttpClientFactory;
+import nl.bertriksikken.spool.SpoolConfig;
+import nl.bertriksikken.spool.UploadSpool;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -24,7 +29,9 @@ public final class RunSenscomUploader {
 
     private void run() {
         SensComConfig config = new SensComConfig("http://localhost:8080", 10);
-        SensComUploader uploader = SensComUploader.create(config, "version");
+        UploadSpool spool = UploadSpool.create(new SpoolConfig(System.getProperty("java.io.tmpdir") + "/spool"));
+        SensComUploader uploader = SensComUploader.create(config, spool, new MetricsRegistry(),
+                new HttpClientFactory(new HttpClientConfig()), "version");
         uploader.start();
 
         Map<String, AttributeMap> attributes = new HashMap<>();
@@ -1,8 +1,12 @@
 package nl.bertriksikken.senscom;
 
+import nl.bertriksikken.pm.ESensorItem;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Random;
+
 public final class SensComPinTest {
 
     @Test
@@ -11,4 +15,81 @@ public final class SensComPinTest {
         Assertions.assertEquals("1", pin.getPin());
     }
 
+    // the items the routing rules depend on
+    private static final List<ESensorItem> ROUTED_ITEMS = List.of(ESensorItem.TEMPERATURE, ESensorItem.HUMIDITY,
+            ESensorItem.PRESSURE, ESensorItem.PM10, ESensorItem.PM2_5, ESensorItem.PM1_0, ESensorItem.PM4_0,
+            ESensorItem.GPS_LAT, ESensorItem.GPS_LON, ESensorItem.NOISE_LA_EQ);
+
+    /**
+     * Verifies the routing rules of all pins against the hand-written conditions, for every combination of the items
+     * the rules depend on, with the other items randomly present or absent.
+     */
+    @Test
+    public void testRoutingExhaustive() {
+        long allItems = (1L << ESensorItem.values().length) - 1;
+        long routedItems = 0;
+        for (ESensorItem item : ROUTED_ITEMS) {
+            routedItems |= 1L << item.ordinal();
+        }
+        Random random = new Random(1);
+        for (int combination = 0; combination < (1 << ROUTED_ITEMS.size()); combination++) {
+            for (int i = 0; i < 4; i++) {
+                long present = random.nextLong() & allItems & ~routedItems;
+                for (int bit = 0; bit < ROUTED_ITEMS.size(); bit++) {
+                    if ((combination & (1 << bit)) != 0) {
+                        present |= 1L << ROUTED_ITEMS.get(bit).ordinal();
+                    }
+                }
+                for (ESensComPin pin : ESensComPin.values()) {
+                    Assertions.assertEquals(expectRouted(pin, present), pin.getRule().matches(present), pin.name());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNotImplemented() {
+        Assertions.assertFalse(ESensComPin.NO2.getRule().matches(-1L));
+        Assertions.assertFalse(ESensComPin.RADIATION.getRule().matches(-1L));
+        Assertions.assertTrue(ESensComPin.NO2.getRule().getItems().isEmpty());
+    }
+
+    @Test
+    public void testItemOrder() {
+        Assertions.assertEquals(
+                List.of(ESensComItem.TEMPERATURE, ESensComItem.HUMIDITY, ESensComItem.PRESSURE),
+                ESensComPin.TEMPERATURE_HUMIDITY_PRESSURE.getRule().getItems());
+        Assertions.assertEquals(ESensComItem.PM_TPS,
+                ESensComPin.PARTICULATE_MATTER.getRule().getItems().get(9));
+    }
+
+    private static boolean expectRouted(ESensComPin pin, long present) {
+        boolean temperature = has(present, ESensorItem.TEMPERATURE);
+        boolean humidity = has(present, ESensorItem.HUMIDITY);
+        boolean pressure = has(present, ESensorItem.PRESSURE);
+        switch (pin) {
+            case PARTICULATE_MATTER:
+                return has(present, ESensorItem.PM10) || has(present, ESensorItem.PM2_5)
+                        || has(present, ESensorItem.PM1_0) || has(present, ESensorItem.PM4_0);
+            case TEMPERATURE_PRESSURE:
+                return temperature && pressure && !humidity;
+            case TEMPERATURE_HUMIDITY:
+                return temperature && humidity && !pressure;
+            case POSITION:
+                return has(present, ESensorItem.GPS_LAT) && has(present, ESensorItem.GPS_LON);
+            case TEMPERATURE_HUMIDITY_PRESSURE:
+                return temperature && humidity && pressure;
+            case TEMPERATURE:
+                return temperature && !humidity && !pressure;
+            case NOISE:
+                return has(present, ESensorItem.NOISE_LA_EQ);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean has(long present, ESensorItem item) {
+        return (present & (1L << item.ordinal())) != 0;
+    }
+
 }
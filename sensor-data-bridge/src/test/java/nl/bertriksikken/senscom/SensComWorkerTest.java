@@ -0,0 +1,58 @@
+package nl.bertriksikken.senscom;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.pm.ESensorItem;
+import nl.bertriksikken.pm.SensorData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public final class SensComWorkerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testBuildMessages() throws JsonProcessingException {
+        SensorData data = new SensorData();
+        data.putValue(ESensorItem.PM2_5, 4.11);
+        data.putValue(ESensorItem.PM10, 11.26);
+        data.putValue(ESensorItem.PM_TPS, 0.5432);
+        data.putValue(ESensorItem.TEMPERATURE, 24.6);
+        data.putValue(ESensorItem.HUMIDITY, 66.0);
+
+        Map<ESensComPin, SensComMessage> messages = SensComWorker.buildMessages("version", data);
+        Assertions.assertEquals(List.of(ESensComPin.PARTICULATE_MATTER, ESensComPin.TEMPERATURE_HUMIDITY),
+                List.copyOf(messages.keySet()));
+        Assertions.assertEquals("{\"software_version\":\"version\",\"sensordatavalues\":["
+                        + "{\"value_type\":\"P1\",\"value\":\"11.3\"},{\"value_type\":\"P2\",\"value\":\"4.1\"},"
+                        + "{\"value_type\":\"TS\",\"value\":\"0.543\"}]}",
+                MAPPER.writeValueAsString(messages.get(ESensComPin.PARTICULATE_MATTER)));
+        Assertions.assertEquals("{\"software_version\":\"version\",\"sensordatavalues\":["
+                        + "{\"value_type\":\"temperature\",\"value\":\"24.6\"},"
+                        + "{\"value_type\":\"humidity\",\"value\":\"66.0\"}]}",
+                MAPPER.writeValueAsString(messages.get(ESensComPin.TEMPERATURE_HUMIDITY)));
+    }
+
+    @Test
+    public void testPosition() {
+        SensorData data = new SensorData();
+        data.putValue(ESensorItem.GPS_LAT, 52.021);
+        data.putValue(ESensorItem.GPS_LON, 4.71);
+        Assertions.assertTrue(SensComWorker.buildMessages("version", data).containsKey(ESensComPin.POSITION));
+
+        // position 0,0 is not valid
+        data.putValue(ESensorItem.GPS_LAT, 0.0);
+        data.putValue(ESensorItem.GPS_LON, 0.0);
+        Assertions.assertEquals(0, SensComWorker.presentMask(data));
+        Assertions.assertTrue(SensComWorker.buildMessages("version", data).isEmpty());
+
+        // latitude out of range
+        data.putValue(ESensorItem.GPS_LAT, 91.0);
+        data.putValue(ESensorItem.GPS_LON, 4.71);
+        Assertions.assertTrue(SensComWorker.buildMessages("version", data).isEmpty());
+    }
+
+}
@@ -0,0 +1,237 @@
+package nl.bertriksikken.senscom;
+
+import nl.bertriksikken.loraforwarder.AppDeviceId;
+import nl.bertriksikken.metrics.MetricsRegistry;
+import nl.bertriksikken.spool.EDeliveryResult;
+import okhttp3.Dispatcher;
+import okhttp3.Request;
+import okio.Timeout;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public final class UploadEngineTest {
+
+    private static final AppDeviceId APP_DEVICE_ID = new AppDeviceId("app", "device");
+
+    private final FakeSensComApi api = new FakeSensComApi();
+    private final UploadEngine engine = new UploadEngine(api, new Dispatcher(), new MetricsRegistry(), true);
+
+    /**
+     * Verifies that uploads for the same sensor/pin wait for each other, but uploads for other pins do not.
+     */
+    @Test
+    public void testOrderPerSensorPin() {
+        CompletableFuture<EDeliveryResult> first = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.PARTICULATE_MATTER,
+                new SensComMessage("1"));
+        CompletableFuture<EDeliveryResult> second = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.PARTICULATE_MATTER,
+                new SensComMessage("2"));
+        CompletableFuture<EDeliveryResult> other = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.POSITION,
+                new SensComMessage("3"));
+
+        // only the first upload for pin 1 was sent, as well as the one for pin 9
+        Assertions.assertEquals(2, api.calls.size());
+        Assertions.assertEquals(2, engine.getInFlight());
+
+        api.calls.get(1).complete();
+        Assertions.assertTrue(other.isDone());
+        Assertions.assertFalse(first.isDone());
+
+        // completing the first upload sends the second one
+        api.calls.get(0).complete();
+        Assertions.assertTrue(first.isDone());
+        Assertions.assertEquals(3, api.calls.size());
+        Assertions.assertFalse(second.isDone());
+
+        api.calls.get(2).complete();
+        Assertions.assertTrue(second.isDone());
+        Assertions.assertEquals(0, engine.getInFlight());
+        Assertions.assertEquals(3, engine.getUploadCount());
+    }
+
+    @Test
+    public void testFailureDoesNotBlock() {
+        CompletableFuture<EDeliveryResult> first = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("1"));
+        CompletableFuture<EDeliveryResult> second = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("2"));
+
+        api.calls.get(0).fail();
+        Assertions.assertEquals(EDeliveryResult.RETRY, first.join());
+        api.calls.get(1).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, second.join());
+        Assertions.assertEquals(1, engine.getFailureCount());
+    }
+
+    /**
+     * Verifies that a newer upload replaces the one waiting for the same sensor/pin, when coalescing.
+     */
+    @Test
+    public void testCoalesce() {
+        SensComMessage newest = new SensComMessage("3");
+        CompletableFuture<EDeliveryResult> first = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("1"));
+        CompletableFuture<EDeliveryResult> second = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("2"));
+        CompletableFuture<EDeliveryResult> third = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE, newest);
+
+        Assertions.assertEquals(EDeliveryResult.SUPERSEDED, second.join());
+        Assertions.assertEquals(1, engine.getSupersededCount());
+        Assertions.assertEquals(1, api.calls.size());
+
+        // completing the first upload sends the newest one
+        api.calls.get(0).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, first.join());
+        Assertions.assertSame(newest, api.messages.get(1));
+        api.calls.get(1).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, third.join());
+        Assertions.assertEquals(2, engine.getDeliveredCount());
+
+        // idle again, so the next upload is sent right away
+        engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE, new SensComMessage("4"));
+        Assertions.assertEquals(3, api.calls.size());
+    }
+
+    /**
+     * Verifies that a replay racing with a live upload for the same sensor/pin never replaces the live one.
+     */
+    @Test
+    public void testReplayDoesNotSupersedeLive() {
+        SensComMessage live = new SensComMessage("2");
+        CompletableFuture<EDeliveryResult> first = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("1"));
+        CompletableFuture<EDeliveryResult> second = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE, live);
+
+        // a replay arriving while a live upload waits is superseded itself
+        CompletableFuture<EDeliveryResult> replay = engine.replay(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("0"));
+        Assertions.assertEquals(EDeliveryResult.SUPERSEDED, replay.join());
+        Assertions.assertFalse(second.isDone());
+
+        // the live upload is sent next
+        api.calls.get(0).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, first.join());
+        Assertions.assertSame(live, api.messages.get(1));
+
+        // also while the live upload is in progress, old data is not sent after it
+        CompletableFuture<EDeliveryResult> late = engine.replay(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("0"));
+        Assertions.assertEquals(EDeliveryResult.SUPERSEDED, late.join());
+        api.calls.get(1).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, second.join());
+        Assertions.assertEquals(2, api.calls.size());
+    }
+
+    /**
+     * Verifies that a live upload replaces a waiting replay, and that a replay is sent when nothing is pending.
+     */
+    @Test
+    public void testLiveSupersedesReplay() {
+        CompletableFuture<EDeliveryResult> replay = engine.replay(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("0"));
+        Assertions.assertEquals(1, api.calls.size());
+        CompletableFuture<EDeliveryResult> waitingReplay = engine.replay(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("1"));
+        CompletableFuture<EDeliveryResult> live = engine.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE,
+                new SensComMessage("2"));
+        Assertions.assertEquals(EDeliveryResult.SUPERSEDED, waitingReplay.join());
+
+        api.calls.get(0).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, replay.join());
+        api.calls.get(1).complete();
+        Assertions.assertEquals(EDeliveryResult.DELIVERED, live.join());
+    }
+
+    /**
+     * Verifies that all uploads are sent in order, when not coalescing.
+     */
+    @Test
+    public void testNoCoalesce() {
+        UploadEngine queueing = new UploadEngine(api, new Dispatcher(), new MetricsRegistry(), false);
+        List<SensComMessage> messages = new ArrayList<>();
+        List<CompletableFuture<EDeliveryResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            SensComMessage message = new SensComMessage("version");
+            messages.add(message);
+            futures.add(queueing.upload(APP_DEVICE_ID, "sensor", ESensComPin.NOISE, message));
+        }
+        for (int i = 0; i < 3; i++) {
+            api.calls.get(i).complete();
+        }
+        futures.forEach(future -> Assertions.assertEquals(EDeliveryResult.DELIVERED, future.join()));
+        Assertions.assertEquals(messages, api.messages);
+        Assertions.assertEquals(0, queueing.getSupersededCount());
+    }
+
+    private static final class FakeSensComApi implements ISensComApi {
+        private final List<FakeCall> calls = new ArrayList<>();
+        private final List<SensComMessage> messages = new ArrayList<>();
+
+        @Override
+        public Call<String> pushSensorData(String pin, String sensor, SensComMessage message) {
+            FakeCall call = new FakeCall();
+            calls.add(call);
+            messages.add(message);
+            return call;
+        }
+    }
+
+    // call that completes when the test says so
+    private static final class FakeCall implements Call<String> {
+        private Callback<String> callback;
+
+        void complete() {
+            callback.onResponse(this, Response.success("ok"));
+        }
+
+        void fail() {
+            callback.onFailure(this, new java.io.IOException("failed"));
+        }
+
+        @Override
+        public Response<String> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<String> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return callback != null;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+
+        @Override
+        public Call<String> clone() {
+            return new FakeCall();
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost").build();
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package nl.bertriksikken.spool;
+
+import nl.bertriksikken.loraforwarder.util.FakeClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public final class UploadSpoolTest {
+
+    private final FakeClock clock = new FakeClock();
+    private final List<String> replayed = new ArrayList<>();
+    private Path directory;
+
+    @BeforeEach
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("spool");
+    }
+
+    @AfterEach
+    public void after() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(java.io.File::delete);
+        }
+    }
+
+    @Test
+    public void testReplayInOrder() throws IOException {
+        UploadSpool spool = new UploadSpool(new SpoolConfig(directory.toString()), clock);
+        spool.register("dest", this::deliver);
+        spool.append("dest", "a", bytes("1"));
+        spool.append("dest", "b", bytes("2"));
+        spool.append("dest", "c", bytes("3"));
+
+        // limited rate
+        Assertions.assertEquals(2, spool.replay(2));
+        Assertions.assertEquals(List.of("a:1", "b:2"), replayed);
+        Assertions.assertEquals(1, spool.replay(10));
+        Assertions.assertEquals(List.of("a:1", "b:2", "c:3"), replayed);
+        Assertions.assertEquals(0, spool.getPendingCount());
+    }
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        UploadSpool spool = new UploadSpool(new SpoolConfig(directory.toString()), clock);
+        spool.register("dest", this::deliver);
+        spool.append("dest", "a", bytes("1"));
+        spool.append("dest", "b", bytes("2"));
+        spool.replay(1);
+
+        UploadSpool reopened = new UploadSpool(new SpoolConfig(directory.toString()), clock);
+        Assertions.assertEquals(1, reopened.getPendingCount());
+        reopened.register("dest", this::deliver);
+        reopened.replay(10);
+        Assertions.assertEquals(List.of("a:1", "b:2"), replayed);
+    }
+
+    @Test
+    public void testBackoff() throws IOException {
+        UploadSpool spool = new UploadSpool(new SpoolConfig(directory.toString()), clock);
+        List<String> attempts = new ArrayList<>();
+        spool.register("dest", (key, payload) -> {
+            attempts.add(key);
+            return EDeliveryResult.RETRY;
+        });
+        spool.append("dest", "a", bytes("1"));
+        spool.append("dest", "b", bytes("2"));
+
+        // after the first failure, the destination is backed off
+        Assertions.assertEquals(1, spool.replay(10));
+        Assertions.assertEquals(0, spool.replay(10));
+        clock.advance(Duration.ofSeconds(11));
+        Assertions.assertEquals(1, spool.replay(10));
+        // backoff doubled
+        clock.advance(Duration.ofSeconds(11));
+        Assertions.assertEquals(0, spool.replay(10));
+        clock.advance(Duration.ofSeconds(10));
+        Assertions.assertEquals(1, spool.replay(10));
+        Assertions.assertEquals(List.of("a", "a", "a"), attempts);
+        Assertions.assertEquals(2, spool.getPendingCount());
+    }
+
+    @Test
+    public void testExpiry() throws IOException {
+        UploadSpool spool = new UploadSpool(new SpoolConfig(directory.toString()), clock);
+        spool.register("dest", this::deliver);
+        spool.append("dest", "a", bytes("1"));
+        clock.advance(Duration.ofHours(25));
+        spool.append("dest", "b", bytes("2"));
+
+        spool.replay(10);
+        Assertions.assertEquals(List.of("b:2"), replayed);
+        Assertions.assertEquals(0, spool.getPendingCount());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        UploadSpool spool = new UploadSpool(new SpoolConfig(directory.toString()), clock);
+        spool.register("dest", this::deliver);
+        byte[] payload = new byte[300 * 1024];
+        for (int i = 0; i < 10; i++) {
+            spool.append("dest", "key", payload);
+        }
+        Assertions.assertTrue(spool.getSegmentCount() > 1);
+
+        spool.replay(100);
+        Assertions.assertEquals(1, spool.getSegmentCount());
+        Assertions.assertEquals(0, spool.getPendingCount());
+    }
+
+    private EDeliveryResult deliver(String key, byte[] payload) {
+        replayed.add(key + ":" + new String(payload, StandardCharsets.UTF_8));
+        return EDeliveryResult.DELIVERED;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
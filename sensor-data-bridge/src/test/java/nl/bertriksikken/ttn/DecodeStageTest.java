@@ -0,0 +1,89 @@
+package nl.bertriksikken.ttn;
+
+import nl.bertriksikken.loraforwarder.AppDeviceId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public final class DecodeStageTest {
+
+    private static final String TOPIC = "v3/particulatematter@ttn/devices/fijnstofmeter/up";
+
+    @Test
+    public void testParseTopic() {
+        Assertions.assertEquals(new AppDeviceId("particulatematter", "fijnstofmeter"), DecodeStage.parseTopic(TOPIC));
+        Assertions.assertEquals(new AppDeviceId("", "invalid"), DecodeStage.parseTopic("invalid"));
+    }
+
+    @Test
+    public void testSameDeviceSameWorker() {
+        int worker = DecodeStage.selectWorker(TOPIC, 8);
+        Assertions.assertTrue((worker >= 0) && (worker < 8));
+        Assertions.assertEquals(worker, DecodeStage.selectWorker(TOPIC, 8));
+    }
+
+    @Test
+    public void testOrderPreserved() throws InterruptedException {
+        DecodeStage stage = new DecodeStage(4, 2);
+        List<Byte> received = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(10);
+        stage.start();
+        try {
+            for (int i = 0; i < 10; i++) {
+                stage.submit(TOPIC, new byte[]{(byte) i}, payload -> {
+                    received.add(payload[0]);
+                    latch.countDown();
+                });
+            }
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            stage.stop();
+        }
+        Assertions.assertEquals(List.of((byte) 0, (byte) 1, (byte) 2, (byte) 3, (byte) 4, (byte) 5, (byte) 6,
+                (byte) 7, (byte) 8, (byte) 9), received);
+        Assertions.assertEquals(10, stage.getSubmitCount());
+    }
+
+    /**
+     * Verifies that stopping decodes the messages that are still queued.
+     */
+    @Test
+    public void testStopDrainsQueue() throws InterruptedException {
+        DecodeStage stage = new DecodeStage(1, 10);
+        List<Byte> received = new CopyOnWriteArrayList<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+        stage.start();
+        // the first message holds up the worker until it is released
+        stage.submit(TOPIC, new byte[]{0}, payload -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(payload[0]);
+        });
+        for (int i = 1; i < 10; i++) {
+            stage.submit(TOPIC, new byte[]{(byte) i}, payload -> received.add(payload[0]));
+        }
+        // release the worker only after stopping has started
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            blocked.countDown();
+        });
+        releaser.start();
+        stage.stop();
+        releaser.join();
+
+        Assertions.assertEquals(10, received.size());
+        Assertions.assertEquals(0, stage.getQueueDepth());
+    }
+
+}
@@ -0,0 +1,70 @@
+package nl.bertriksikken.ttn;
+
+import nl.bertriksikken.metrics.Counter;
+import nl.bertriksikken.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the scheduling of MQTT (re-)connects, without connecting to a broker.
+ */
+public final class MqttListenerTest {
+
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    private final Counter connectionsLost = new MetricsRegistry().counter("lost", "Lost connections.");
+    private final MqttListener listener;
+
+    public MqttListenerTest() {
+        executor.setRemoveOnCancelPolicy(true);
+        ReconnectBackoff backoff = new ReconnectBackoff(Duration.ofSeconds(60), Duration.ofSeconds(60),
+                Duration.ofSeconds(120), new Random(1));
+        listener = new MqttListener(new TtnConfig(), new TtnAppConfig(), new DecodeStage(1, 1), uplink -> {
+        }, executor, backoff, connectionsLost);
+    }
+
+    @AfterEach
+    public void after() {
+        listener.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies that a lost connection schedules a reconnect, after a jittered delay.
+     */
+    @Test
+    public void testConnectionLost() {
+        listener.start(60_000);
+        executor.getQueue().clear();
+
+        listener.connectionLost(new IOException("lost"));
+        Assertions.assertEquals(1, connectionsLost.get());
+        Assertions.assertEquals(1, executor.getQueue().size());
+        long delay = ((ScheduledFuture<?>) executor.getQueue().peek()).getDelay(TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(delay >= 29_000, "delay " + delay);
+        Assertions.assertTrue(delay <= 60_000, "delay " + delay);
+    }
+
+    /**
+     * Verifies that stopping cancels a pending connect, and that no reconnect is scheduled after it.
+     */
+    @Test
+    public void testStopCancelsConnect() {
+        listener.start(60_000);
+        Assertions.assertEquals(1, executor.getQueue().size());
+
+        Assertions.assertNull(listener.disconnect());
+        Assertions.assertTrue(executor.getQueue().isEmpty());
+
+        listener.connectionLost(new IOException("lost"));
+        Assertions.assertTrue(executor.getQueue().isEmpty());
+    }
+
+}
@@ -0,0 +1,57 @@
+package nl.bertriksikken.ttn;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+public final class ReconnectBackoffTest {
+
+    private final ReconnectBackoff backoff = new ReconnectBackoff(Duration.ofMillis(1000), Duration.ofSeconds(1),
+            Duration.ofSeconds(60), new Random(1));
+
+    /**
+     * Verifies that the first connects are spread out, one stagger interval for each connection.
+     */
+    @Test
+    public void testInitialDelay() {
+        for (int index = 0; index < 10; index++) {
+            for (int i = 0; i < 100; i++) {
+                long delay = backoff.initialDelayMillis(index);
+                Assertions.assertTrue(delay >= (index * 1000L), "delay " + delay);
+                Assertions.assertTrue(delay < ((index + 1) * 1000L), "delay " + delay);
+            }
+        }
+    }
+
+    @Test
+    public void testNoStagger() {
+        ReconnectBackoff noStagger = new ReconnectBackoff(Duration.ZERO, Duration.ofSeconds(1),
+                Duration.ofSeconds(60), new Random(1));
+        Assertions.assertEquals(0, noStagger.initialDelayMillis(0));
+        Assertions.assertEquals(0, noStagger.initialDelayMillis(5));
+    }
+
+    /**
+     * Verifies that the reconnect delay doubles with each failure, up to the maximum, with jitter.
+     */
+    @Test
+    public void testReconnectDelay() {
+        for (int failures = 0; failures < 100; failures++) {
+            long ceiling = Math.min(60_000, 1000L << Math.min(failures, 30));
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = backoff.reconnectDelayMillis(failures);
+                min = Math.min(min, delay);
+                max = Math.max(max, delay);
+            }
+            Assertions.assertTrue(min >= (ceiling / 2), "min " + min);
+            Assertions.assertTrue(max <= ceiling, "max " + max);
+            // randomized, so simultaneous reconnects are spread out
+            Assertions.assertTrue(max > min, "no jitter");
+        }
+    }
+
+}
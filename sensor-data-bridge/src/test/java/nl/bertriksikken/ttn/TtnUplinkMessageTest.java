@@ -1,15 +1,45 @@
 package nl.bertriksikken.ttn;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+
 public final class TtnUplinkMessageTest {
 
     @Test
     public void testString() {
-        TtnUplinkMessage message = new TtnUplinkMessage("app", "device", "eui", new byte[] { 1, 2, 3 }, "{}", 1);
+        TtnUplinkMessage message = new TtnUplinkMessage("app", "device", "eui", new byte[] { 1, 2, 3 },
+                JsonNodeFactory.instance.objectNode(), 1);
         Assertions.assertNotNull(message.toString());
         System.out.println(message);
     }
 
+    /**
+     * Verifies that a message without decoded payload can still be logged, like after a decode failure.
+     */
+    @Test
+    public void testNoDecodedPayload() {
+        TtnUplinkMessage message = new TtnUplinkMessage("app", "device", "eui", new byte[] { 1, 2, 3 }, null, 1);
+        Assertions.assertTrue(message.getDecodedPayload().isMissingNode());
+        Assertions.assertEquals("app/device: {data:'010203', fields:''}", message.toString());
+    }
+
+    @Test
+    public void testPayloadView() {
+        byte[] payload = new byte[] { 1, 2, 3 };
+        TtnUplinkMessage message = TtnUplinkMessage.wrap("app", "device", "eui", payload,
+                JsonNodeFactory.instance.objectNode(), 1);
+
+        ByteBuffer bb = message.getPayload();
+        Assertions.assertTrue(bb.isReadOnly());
+        Assertions.assertEquals(3, bb.remaining());
+        Assertions.assertEquals(3, message.getPayloadLength());
+        // each view starts at the beginning
+        bb.get();
+        Assertions.assertEquals(1, message.getPayload().get());
+        Assertions.assertArrayEquals(payload, message.getRawPayload());
+    }
+
 }
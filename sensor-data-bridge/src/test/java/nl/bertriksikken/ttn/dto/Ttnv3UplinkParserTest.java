@@ -0,0 +1,102 @@
+package nl.bertriksikken.ttn.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.ttn.TtnUplinkMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Unit tests for the streaming TTN v3 uplink parser.
+ */
+public final class Ttnv3UplinkParserTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Ttnv3UplinkParser parser = new Ttnv3UplinkParser();
+
+    @Test
+    public void testDecode() throws IOException {
+        TtnUplinkMessage message = parser.parse(readResource("/ttnv3_mqtt_message.json"));
+
+        Assertions.assertEquals("particulatematter", message.getAppId());
+        Assertions.assertEquals("fijnstofmeter", message.getDevId());
+        Assertions.assertEquals("0000547AF1BF713C", message.getDevEui());
+        Assertions.assertEquals(19, message.getRawPayload().length);
+        Assertions.assertEquals(1, message.getPort());
+        Assertions.assertEquals(7, message.getFrameCounter());
+        Assertions.assertEquals(7, message.getSF());
+        Assertions.assertEquals(-58.0, message.getRSSI(), 0.01);
+        Assertions.assertEquals(8.75, message.getSNR(), 0.01);
+        Assertions.assertTrue(message.getDecodedPayload().isMissingNode());
+        Assertions.assertEquals(Instant.parse("2021-02-04T22:12:45.550581007Z"), message.getReceivedAt());
+    }
+
+    @Test
+    public void testDecodeBestGateway() throws IOException {
+        TtnUplinkMessage message = parser.parse(readResource("/ttnv3_json_message.json"));
+
+        Assertions.assertEquals("ttn-soundkit", message.getAppId());
+        Assertions.assertEquals(15, message.getPort());
+        Assertions.assertEquals(1234, message.getFrameCounter());
+        Assertions.assertEquals(9, message.getSF());
+        Assertions.assertEquals(-97.0, message.getRSSI(), 0.01);
+        Assertions.assertEquals(2.25, message.getSNR(), 0.01);
+        Assertions.assertEquals(35.5, message.getDecodedPayload().at("/la/avg").asDouble(), 0.01);
+    }
+
+    /**
+     * Verifies that the streaming parser gives the same result as the tree-based parser.
+     */
+    @Test
+    public void testSameAsTreeParser() throws IOException {
+        for (String name : new String[]{"/ttnv3_mqtt_message.json", "/ttnv3_json_message.json"}) {
+            byte[] json = readResource(name);
+            TtnUplinkMessage expected = mapper.readValue(json, Ttnv3UplinkMessage.class).toTtnUplinkMessage();
+            TtnUplinkMessage actual = parser.parse(json);
+
+            Assertions.assertEquals(expected.getAppId(), actual.getAppId());
+            Assertions.assertEquals(expected.getDevId(), actual.getDevId());
+            Assertions.assertEquals(expected.getDevEui(), actual.getDevEui());
+            Assertions.assertArrayEquals(expected.getRawPayload(), actual.getRawPayload());
+            Assertions.assertEquals(expected.getDecodedPayload(), actual.getDecodedPayload());
+            Assertions.assertEquals(expected.getPort(), actual.getPort());
+            Assertions.assertEquals(expected.getFrameCounter(), actual.getFrameCounter());
+            Assertions.assertEquals(expected.getRSSI(), actual.getRSSI(), 0.01);
+            Assertions.assertEquals(expected.getSNR(), actual.getSNR(), 0.01);
+            Assertions.assertEquals(expected.getSF(), actual.getSF());
+            Assertions.assertEquals(expected.getReceivedAt(), actual.getReceivedAt());
+        }
+    }
+
+    /**
+     * Verifies that an invalid timestamp does not drop the uplink.
+     */
+    @Test
+    public void testInvalidTimestamp() throws IOException {
+        String json = "{\"end_device_ids\":{\"device_id\":\"dev\"},\"received_at\":\"yesterday\","
+                + "\"uplink_message\":{\"f_port\":1,\"frm_payload\":\"AQI=\"}}";
+        TtnUplinkMessage message = parser.parse(json.getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertNull(message.getReceivedAt());
+        Assertions.assertEquals("dev", message.getDevId());
+        Assertions.assertEquals(2, message.getPayloadLength());
+    }
+
+    @Test
+    public void testInvalid() {
+        Assertions.assertThrows(IOException.class,
+                () -> parser.parse("[1,2,3]".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertThrows(IOException.class,
+                () -> parser.parse("{\"end_device_ids\":{".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private byte[] readResource(String name) throws IOException {
+        try (InputStream is = getClass().getResourceAsStream(name)) {
+            return is.readAllBytes();
+        }
+    }
+
+}
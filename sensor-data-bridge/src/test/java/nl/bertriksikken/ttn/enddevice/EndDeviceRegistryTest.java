@@ -0,0 +1,70 @@
+package nl.bertriksikken.ttn.enddevice;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the paged listing of end devices.
+ */
+public final class EndDeviceRegistryTest {
+
+    private final FakeEndDeviceRegistryApi api = new FakeEndDeviceRegistryApi();
+    private final EndDeviceRegistry registry = new EndDeviceRegistry(api, "app", "key");
+
+    @Test
+    public void testListPaged() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            api.putDevice("dev" + i, "senscom-id", "dev" + i, i);
+        }
+        List<EndDevice> devices = new ArrayList<>();
+        registry.listEndDevices(2, devices::add, IEndDeviceRegistryRestApi.FIELD_IDS);
+
+        Assertions.assertEquals(5, devices.size());
+        Assertions.assertEquals("dev1", devices.get(0).getDeviceId());
+        Assertions.assertEquals("dev5", devices.get(4).getDeviceId());
+        // 3 pages, the last one not full
+        Assertions.assertEquals(List.of(1, 2, 3), api.getPages());
+    }
+
+    @Test
+    public void testListExactPages() throws IOException {
+        for (int i = 1; i <= 4; i++) {
+            api.putDevice("dev" + i, "senscom-id", "dev" + i, i);
+        }
+        Assertions.assertEquals(4, registry.listEndDevices().size());
+
+        // an empty page ends the listing
+        api.getPages().clear();
+        registry.listEndDevices(2, device -> {
+        });
+        Assertions.assertEquals(List.of(1, 2, 3), api.getPages());
+    }
+
+    /**
+     * Verifies that a device that does not exist is told apart from a failed request.
+     */
+    @Test
+    public void testFindEndDevice() throws IOException {
+        api.putDevice("dev1", "senscom-id", "dev1", 1);
+        Assertions.assertEquals("dev1", registry.findEndDevice("dev1", IEndDeviceRegistryRestApi.FIELD_IDS)
+                .getDeviceId());
+        Assertions.assertEquals("ids", api.getLookupMask());
+        Assertions.assertNull(registry.findEndDevice("dev2"));
+
+        api.setFailLookups(true);
+        Assertions.assertThrows(IOException.class, () -> registry.findEndDevice("dev1"));
+    }
+
+    @Test
+    public void testFailure() {
+        api.putDevice("dev1", "senscom-id", "dev1", 1);
+        api.setFailPage(1);
+        Assertions.assertThrows(IOException.class, () -> registry.listEndDevices(1, device -> {
+        }));
+    }
+
+}
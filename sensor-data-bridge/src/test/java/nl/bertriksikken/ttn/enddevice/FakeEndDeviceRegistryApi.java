@@ -0,0 +1,158 @@
+package nl.bertriksikken.ttn.enddevice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.mock.Calls;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Device registry for unit tests, keeps its devices in memory and records the requests made to it.<br>
+ * <br>
+ * Devices are listed in the order they were first added, the field mask is recorded but not applied.
+ */
+public final class FakeEndDeviceRegistryApi implements IEndDeviceRegistryRestApi {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, String> devices = new LinkedHashMap<>();
+    private final List<Integer> pages = new ArrayList<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private volatile String listMask;
+    private volatile String lookupMask;
+    private volatile int failPage = -1;
+    private volatile boolean failLookups;
+    private volatile CountDownLatch lookupLatch = new CountDownLatch(0);
+
+    /**
+     * Adds or updates a device, with a single attribute.
+     *
+     * @param deviceId  the device id
+     * @param attribute the attribute name
+     * @param value     the attribute value
+     * @param updatedAt the update time of the device, in seconds since the epoch
+     */
+    public synchronized void putDevice(String deviceId, String attribute, String value, long updatedAt) {
+        devices.put(deviceId, String.format(Locale.ROOT,
+                "{\"ids\":{\"device_id\":\"%s\"},\"attributes\":{\"%s\":\"%s\"},\"updated_at\":\"%s\"}", deviceId,
+                attribute, value, Instant.ofEpochSecond(updatedAt)));
+    }
+
+    public synchronized void removeDevice(String deviceId) {
+        devices.remove(deviceId);
+    }
+
+    /**
+     * @return the pages requested so far, can be cleared
+     */
+    public List<Integer> getPages() {
+        return pages;
+    }
+
+    public String getListMask() {
+        return listMask;
+    }
+
+    public String getLookupMask() {
+        return lookupMask;
+    }
+
+    /**
+     * @return the number of single device requests
+     */
+    public int getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @param failPage the page that fails with a server error, -1 for none
+     */
+    public void setFailPage(int failPage) {
+        this.failPage = failPage;
+    }
+
+    /**
+     * @param failLookups whether single device requests fail with a server error
+     */
+    public void setFailLookups(boolean failLookups) {
+        this.failLookups = failLookups;
+    }
+
+    /**
+     * @param lookupLatch latch that single device requests wait for
+     */
+    public void setLookupLatch(CountDownLatch lookupLatch) {
+        this.lookupLatch = lookupLatch;
+    }
+
+    @Override
+    public synchronized Call<EndDevices> listEndDevices(String authToken, String applicationId, String fieldMask,
+            int limit, int page) {
+        listMask = fieldMask;
+        pages.add(page);
+        if (page == failPage) {
+            return error(500);
+        }
+        List<String> all = new ArrayList<>(devices.values());
+        int from = Math.min((page - 1) * limit, all.size());
+        int to = Math.min(from + limit, all.size());
+        return Calls.response(parse("{\"end_devices\":[" + String.join(",", all.subList(from, to)) + "]}",
+                EndDevices.class));
+    }
+
+    @Override
+    public Call<EndDevice> getEndDevice(String authToken, String applicationId, String deviceId, String fieldMask) {
+        lookupMask = fieldMask;
+        lookups.incrementAndGet();
+        try {
+            lookupLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failLookups) {
+            return error(500);
+        }
+        String json;
+        synchronized (this) {
+            json = devices.get(deviceId);
+        }
+        return (json != null) ? Calls.response(parse(json, EndDevice.class)) : error(404);
+    }
+
+    @Override
+    public Call<EndDevice> updateEndDevice(String authToken, String applicationId, String deviceId,
+            UpdateEndDeviceRequest request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Call<EndDevice> getNsEndDevice(String authToken, String applicationId, String deviceId,
+            String fieldMask) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static <T> Call<T> error(int code) {
+        return Calls.response(Response.error(code, ResponseBody.create(MediaType.get("text/plain"), "error")));
+    }
+
+    private static <T> T parse(String json, Class<T> clazz) {
+        try {
+            return MAPPER.readValue(json, clazz);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
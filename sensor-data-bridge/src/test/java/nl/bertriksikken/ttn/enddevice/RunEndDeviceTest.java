@@ -8,6 +8,8 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.bertriksikken.rest.HttpClientConfig;
+import nl.bertriksikken.rest.HttpClientFactory;
 import nl.bertriksikken.ttn.TtnAppConfig;
 import nl.bertriksikken.ttn.TtnConfig;
 import nl.bertriksikken.ttn.dto.UplinkMessage;
@@ -25,7 +27,7 @@ public final class RunEndDeviceTest {
         TtnConfig ttnConfig = new TtnConfig();
         TtnAppConfig appConfig = new TtnAppConfig();
         EndDeviceRegistry registry = EndDeviceRegistry.create(ttnConfig.getIdentityServerUrl(), Duration.ofSeconds(10),
-                appConfig);
+                appConfig, new HttpClientFactory(new HttpClientConfig()));
         List<EndDevice> endDevices = registry.listEndDevices();
         LOG.info("Found {} end devices", endDevices.size());
 